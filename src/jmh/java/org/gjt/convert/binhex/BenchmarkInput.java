@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package org.gjt.convert.binhex;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.gjt.convert.binhex.BinHex4InputStream.Header;
+
+
+/**
+ * BenchmarkInput. Generates the encoded input of the benchmarks.
+ * <p>
+ * The input is written to a temporary file first, a chunk at a time, so that
+ * even 1 GB inputs can be made without holding them in memory. Files up to
+ * {@link #inMemoryLimit} are then loaded, so the benchmarks measure decoding
+ * and not the file system; bigger ones are read from the file.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (umjammer)
+ * @version 0.00 2026/10/16 umjammer initial version <br>
+ */
+final class BenchmarkInput {
+
+    /** inputs bigger than this are streamed from their temporary file */
+    static final long inMemoryLimit = 256L << 20;
+
+    /** what the decoded data fork looks like */
+    enum Content {
+        /** random bytes, nothing for the RLE to do */
+        random {
+            void fill(byte[] b, Random r) {
+                r.nextBytes(b);
+            }
+        },
+        /** ASCII text, an occasional short run */
+        text {
+            void fill(byte[] b, Random r) {
+                String[] words = { "the ", "BinHex ", "file ", "fork ", "of ", "a ", "Macintosh ", "resource ", "\r", "--  ", "1000 " };
+                int i = 0;
+                while (i < b.length) {
+                    String w = words[r.nextInt(words.length)];
+                    for (int j = 0; j < w.length() && i < b.length; j++)
+                        b[i++] = (byte) w.charAt(j);
+                }
+            }
+        },
+        /** runs of 1 to 300 equal bytes, 0x90 included, like bitmaps and zero-filled resources */
+        runs {
+            void fill(byte[] b, Random r) {
+                int i = 0;
+                while (i < b.length) {
+                    byte v = r.nextInt(8) == 0 ? (byte) 0x90 : (byte) r.nextInt(4);
+                    int run = 1 + r.nextInt(300);
+                    for (int j = 0; j < run && i < b.length; j++)
+                        b[i++] = v;
+                }
+            }
+        };
+
+        abstract void fill(byte[] b, Random r);
+    }
+
+    /** line separators by parameter name */
+    static String lineSeparator(String name) {
+        switch (name) {
+        case "LF": return "\n";
+        case "CRLF": return "\r\n";
+        case "CR": return "\r";
+        default: throw new IllegalArgumentException(name);
+        }
+    }
+
+    final long size;
+    final Path file;
+    private final byte[] bytes;
+
+    private BenchmarkInput(long size, Path file) throws IOException {
+        this.size = size;
+        this.file = file;
+        this.bytes = Files.size(file) <= inMemoryLimit ? Files.readAllBytes(file) : null;
+    }
+
+    /** Hqx7 text with a data fork of <code>size</code> bytes */
+    static BenchmarkInput hqx7(long size, Content content, String lineSeparator) throws IOException {
+        Path file = tempFile(".hqx");
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)) {
+            write(new BinHex4OutputStream(out, header(size), lineSeparator), size, content);
+        }
+        return new BenchmarkInput(size, file);
+    }
+
+    /** Hqx8 bytes with a data fork of <code>size</code> bytes */
+    static BenchmarkInput hqx8(long size, Content content) throws IOException {
+        Path file = tempFile(".hqx8");
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16)) {
+            write(new BinHex4OutputStream(out, header(size), true), size, content);
+        }
+        return new BenchmarkInput(size, file);
+    }
+
+    /** the decoded data fork itself, at most {@link #inMemoryLimit} bytes */
+    static byte[] data(int size, Content content) {
+        byte[] b = new byte[size];
+        content.fill(b, new Random(size));
+        return b;
+    }
+
+    /** a fresh stream over the whole input */
+    InputStream open() throws IOException {
+        if (bytes != null)
+            return new ByteArrayInputStream(bytes);
+        return new BufferedInputStream(Files.newInputStream(file), 1 << 16);
+    }
+
+    private static Header header(long size) {
+        return new Header("bench", "TEXT", "ttxt", 0, size, 0);
+    }
+
+    private static void write(BinHex4OutputStream out, long size, Content content) throws IOException {
+        Random r = new Random(size);
+        byte[] chunk = new byte[1 << 20];
+        for (long left = size; left > 0; ) {
+            int n = (int) Math.min(chunk.length, left);
+            content.fill(chunk, r);
+            out.write(chunk, 0, n);
+            left -= n;
+        }
+        out.close();
+    }
+
+    static Path tempFile(String suffix) throws IOException {
+        Path file = Files.createTempFile("jbinhex-bench", suffix);
+        file.toFile().deleteOnExit();
+        return file;
+    }
+}
+
+/* */
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package org.gjt.convert.binhex;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * CRC16Benchmark. The CRC engines that RLE_CRCInputStream uses, on their own,
+ * a byte at a time and over a whole array.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (umjammer)
+ * @version 0.00 2026/10/16 umjammer initial version <br>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CRC16Benchmark {
+
+    @Param({"1024", "1048576", "67108864"})
+    public int size;
+
+    @Param({"bitwise", "table", "slicingBy8"})
+    public String engine;
+
+    private CRC16 crc16;
+    private byte[] data;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        switch (engine) {
+        case "bitwise": crc16 = CRC16.bitwise; break;
+        case "table": crc16 = CRC16.table; break;
+        case "slicingBy8": crc16 = CRC16.slicingBy8; break;
+        default: throw new IllegalArgumentException(engine);
+        }
+        data = BenchmarkInput.data(size, BenchmarkInput.Content.random);
+    }
+
+    @Benchmark
+    public int singleByte() {
+        int crc = 0;
+        for (byte b : data)
+            crc = crc16.update(crc, b);
+        return crc;
+    }
+
+    @Benchmark
+    public int bulk() {
+        return crc16.update(0, data, 0, data.length);
+    }
+}
+
+/* */
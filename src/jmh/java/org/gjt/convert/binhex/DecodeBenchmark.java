@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package org.gjt.convert.binhex;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * DecodeBenchmark. Decodes a whole file through each layer of the decoder,
+ * a byte at a time and a buffer at a time.
+ * <p>
+ * The sizes are those of the decoded data fork. 1 GB is not in the default
+ * list because a run takes long; add it with
+ * <code>-p size=1073741824</code>.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (umjammer)
+ * @version 0.00 2026/10/16 umjammer initial version <br>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DecodeBenchmark {
+
+    /** Hqx7 text, as found in mail */
+    @State(Scope.Benchmark)
+    public static class Hqx7 {
+
+        @Param({"1024", "1048576", "67108864"})
+        public long size;
+
+        @Param({"random", "text", "runs"})
+        public String content;
+
+        @Param({"LF", "CRLF", "CR"})
+        public String lineSeparator;
+
+        BenchmarkInput input;
+
+        /** where DeBinHex writes the data fork */
+        Path out;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            input = BenchmarkInput.hqx7(size, BenchmarkInput.Content.valueOf(content), BenchmarkInput.lineSeparator(lineSeparator));
+            out = BenchmarkInput.tempFile(".data");
+        }
+    }
+
+    /** Hqx8 bytes, the input of the RLE and CRC layer on its own */
+    @State(Scope.Benchmark)
+    public static class Hqx8 {
+
+        @Param({"1024", "1048576", "67108864"})
+        public long size;
+
+        @Param({"random", "text", "runs"})
+        public String content;
+
+        BenchmarkInput input;
+
+        @Setup(Level.Trial)
+        public void setup() throws IOException {
+            input = BenchmarkInput.hqx8(size, BenchmarkInput.Content.valueOf(content));
+        }
+    }
+
+    @Benchmark
+    public long hqx7ToHqx8Bulk(Hqx7 state) throws IOException {
+        return readBulk(new Hqx7_to_Hqx8InputStream(state.input.open()));
+    }
+
+    @Benchmark
+    public long hqx7ToHqx8SingleByte(Hqx7 state) throws IOException {
+        return readSingleByte(new Hqx7_to_Hqx8InputStream(state.input.open()));
+    }
+
+    @Benchmark
+    public long rleCrcBulk(Hqx8 state) throws IOException {
+        return readBulk(new RLE_CRCInputStream(state.input.open(), true));
+    }
+
+    @Benchmark
+    public long rleCrcSingleByte(Hqx8 state) throws IOException {
+        return readSingleByte(new RLE_CRCInputStream(state.input.open(), true));
+    }
+
+    @Benchmark
+    public long binHex4Bulk(Hqx7 state) throws IOException {
+        return readBulk(new BinHex4InputStream(state.input.open()));
+    }
+
+    @Benchmark
+    public long binHex4SingleByte(Hqx7 state) throws IOException {
+        return readSingleByte(new BinHex4InputStream(state.input.open()));
+    }
+
+    /** the command-line tool's work, including writing the data fork to a file */
+    @Benchmark
+    public void deBinHexAction(Hqx7 state) throws IOException {
+        DeBinHex.action(state.input.open(), false, true, state.out.toString(), false, null);
+    }
+
+    private static long readBulk(InputStream in) throws IOException {
+        try {
+            byte[] b = new byte[8192];
+            long total = 0;
+            int n;
+            while ((n = in.read(b)) >= 0)
+                total += n + b[0];
+            return total;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static long readSingleByte(InputStream in) throws IOException {
+        try {
+            long total = 0;
+            int c;
+            while ((c = in.read()) >= 0)
+                total += c;
+            return total;
+        } finally {
+            in.close();
+        }
+    }
+}
+
+/* */
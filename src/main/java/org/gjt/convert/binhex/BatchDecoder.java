@@ -0,0 +1,364 @@
+/*
+  JBinHex
+  Copyright (C) 2026, the JBinHex contributors
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License
+  as published by the Free Software Foundation; either version 2
+  of the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+*/
+
+package org.gjt.convert.binhex;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ Decodes many BinHex files concurrently, for example all .hqx files in a
+ directory tree, in one JVM.
+ <p>
+ Each file is decoded like <code>DeBinHex</code> does: the forks are
+ written to files named after the file name in the BinHex header, with
+ &quot;.resource&quot; appended for the resource fork. They go to the
+ directory of the BinHex file, or to one output directory. A file that
+ can't be decoded doesn't stop the others; it is reported and counted in
+ the Summary that <code>run</code> returns.
+ <p>
+ The files are decoded on virtual threads when the Java runtime has them,
+ otherwise on a pool of platform threads. Either way, at most
+ <code>threads</code> files are decoded at the same time.
+
+ @author JBinHex contributors
+ */
+public class BatchDecoder {
+
+    /**
+     Counts of a batch run.
+     */
+    public static class Summary
+    {
+        /**
+         Returns the number of files whose forks were written.
+         */
+        public long getSucceeded()
+        {
+            return succeeded;
+        }
+
+        /**
+         Returns the number of files with a CRC that doesn't match.
+         */
+        public long getCRCFailures()
+        {
+            return crcFailures;
+        }
+
+        /**
+         Returns the number of files that couldn't be decoded for another
+         reason, such as a truncated or unreadable file.
+         */
+        public long getFailures()
+        {
+            return failures;
+        }
+
+        /**
+         Returns the total size of the BinHex files.
+         */
+        public long getBytesIn()
+        {
+            return bytesIn;
+        }
+
+        /**
+         Returns the total size of the forks that were written.
+         */
+        public long getBytesOut()
+        {
+            return bytesOut;
+        }
+
+        /**
+         Returns the wall-clock time of the run in nanoseconds.
+         */
+        public long getElapsedNanos()
+        {
+            return elapsedNanos;
+        }
+
+        public String toString()
+        {
+            double seconds = Math.max(elapsedNanos, 1) / 1e9;
+            long files = succeeded + crcFailures + failures;
+            return String.format(Locale.ROOT,
+                    "%d files: %d decoded, %d CRC failures, %d other failures; "
+                    + "%.1f MB in %.1f s, %.1f MB/s, %.0f files/s",
+                    files, succeeded, crcFailures, failures,
+                    bytesIn / 1e6, seconds, bytesIn / 1e6 / seconds, files / seconds);
+        }
+
+        private long succeeded;
+        private long crcFailures;
+        private long failures;
+        private long bytesIn;
+        private long bytesOut;
+        private long elapsedNanos;
+    }
+
+    /**
+     Constructs a BatchDecoder that writes the forks that are asked for.
+     */
+    public BatchDecoder(boolean doData, boolean doResource)
+    {
+        this.doData = doData;
+        this.doResource = doResource;
+    }
+
+    /**
+     Sets the number of files that are decoded at the same time. The default
+     is the number of processors.
+     */
+    public void setThreads(int threads)
+    {
+        if(threads <= 0)
+            throw new IllegalArgumentException("threads must be positive");
+        this.threads = threads;
+    }
+
+    /**
+     Makes all forks go to one directory instead of to the directory of each
+     BinHex file. Two BinHex files with the same name in their header then
+     can't both be decoded; the second one fails.
+     */
+    public void setOutputDirectory(Path outputDirectory)
+    {
+        this.outputDirectory = outputDirectory;
+    }
+
+    /**
+     If <code>sync</code> is true, each fork file is on the storage device,
+     like after <code>fsync</code>, before its BinHex file counts as
+     decoded. The default is false.
+     */
+    public void setSync(boolean sync)
+    {
+        this.sync = sync;
+    }
+
+    /**
+     If <code>verifyOnly</code> is true, only the CRCs of each file are
+     checked, with <code>BinHex4InputStream.verify</code>, and no files are
+     written. The default is false.
+     */
+    public void setVerifyOnly(boolean verifyOnly)
+    {
+        this.verifyOnly = verifyOnly;
+    }
+
+    /**
+     Sets where the files that fail are reported, one line each. The default
+     is <code>System.err</code>.
+     */
+    public void setLog(PrintStream log)
+    {
+        this.log = log;
+    }
+
+    /**
+     Decodes all files in <code>inputs</code>. A directory stands for all
+     files ending in &quot;.hqx&quot; in its tree. The inputs are taken one at
+     a time as workers become free, so they can come from a long list that
+     is read while decoding.
+     */
+    public Summary run(Iterable<? extends Path> inputs) throws IOException, InterruptedException
+    {
+        long start = System.nanoTime();
+        claimed.clear();
+        for(AtomicLong count : new AtomicLong[] { succeeded, crcFailures, failures, bytesIn, bytesOut })
+            count.set(0);
+        Semaphore free = new Semaphore(threads);
+        ExecutorService executor = newExecutor(threads);
+        try {
+            for(Path input : inputs)
+            {
+                if(!Files.isDirectory(input))
+                {
+                    submit(executor, free, input);
+                    continue;
+                }
+                try(Stream<Path> tree = Files.walk(input))
+                {
+                    Iterator<Path> i = tree.iterator();
+                    while(i.hasNext())
+                    {
+                        Path file = i.next();
+                        if(Files.isRegularFile(file)
+                                && file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".hqx"))
+                            submit(executor, free, file);
+                    }
+                } catch(UncheckedIOException e)
+                {
+                    throw e.getCause();
+                }
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+
+        Summary summary = new Summary();
+        summary.succeeded = succeeded.get();
+        summary.crcFailures = crcFailures.get();
+        summary.failures = failures.get();
+        summary.bytesIn = bytesIn.get();
+        summary.bytesOut = bytesOut.get();
+        summary.elapsedNanos = System.nanoTime() - start;
+        return summary;
+    }
+
+    private void submit(ExecutorService executor, final Semaphore free, final Path input)
+            throws InterruptedException
+    {
+        free.acquire();
+        executor.execute(new Runnable() {
+            public void run()
+            {
+                try {
+                    decode(input);
+                } finally {
+                    free.release();
+                }
+            }
+        });
+    }
+
+    private void decode(Path input)
+    {
+        try {
+            bytesIn.addAndGet(Files.size(input));
+            BinHex4InputStream binhex = new BinHex4InputStream(input);
+            try {
+                if(verifyOnly)
+                {
+                    CRCStatus status = binhex.verify();
+                    if(!status.isValid())
+                    {
+                        crcFailures.incrementAndGet();
+                        report(input, status.toString());
+                        return;
+                    }
+                    succeeded.incrementAndGet();
+                    return;
+                }
+                BinHex4InputStream.Header header = binhex.getHeader();
+                String name = safeFileName(header.getFileName());
+                Path dir = outputDirectory != null ? outputDirectory
+                        : input.toAbsolutePath().getParent();
+                String dataOut = null, resourceOut = null;
+                if(doData)
+                    dataOut = claim(dir.resolve(DeBinHex.dataFileName(name)));
+                if(doResource)
+                    resourceOut = claim(dir.resolve(DeBinHex.resourceFileName(name)));
+                DeBinHex.extract(binhex, doData, dataOut, doResource, resourceOut, sync);
+                bytesOut.addAndGet((doData ? header.getDataLength() : 0)
+                        + (doResource ? header.getResourceLength() : 0));
+            } finally {
+                binhex.close();
+            }
+            succeeded.incrementAndGet();
+        } catch(CRCException e)
+        {
+            crcFailures.incrementAndGet();
+            report(input, e.getMessage());
+        } catch(IOException | RuntimeException e)
+        {
+            failures.incrementAndGet();
+            report(input, e.getMessage());
+        }
+    }
+
+    /**
+     Reserves an output file for one input, so that two inputs never write
+     the same file at the same time.
+     */
+    private String claim(Path out) throws IOException
+    {
+        if(!claimed.add(out.toAbsolutePath().normalize()))
+            throw new IOException("Output file " + out + " is also written for another input");
+        return out.toString();
+    }
+
+    private void report(Path input, String message)
+    {
+        synchronized(log)
+        {
+            log.println(input + ": " + message);
+        }
+    }
+
+    /**
+     Makes a file name from a BinHex header usable as a single file name in
+     a directory: Macintosh file names may contain a slash, and must not
+     make the output end up elsewhere.
+     */
+    static String safeFileName(String fileName)
+    {
+        String name = fileName.replace('/', ':').replace('\\', ':').replace('\0', '_');
+        if(name.isEmpty() || name.equals(".") || name.equals(".."))
+            name = "_" + name;
+        return name;
+    }
+
+    /**
+     A virtual thread per file where the runtime has them, a pool of
+     platform threads otherwise.
+     */
+    private static ExecutorService newExecutor(int threads)
+    {
+        try {
+            Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService)m.invoke(null);
+        } catch(ReflectiveOperationException e)
+        {
+            return Executors.newFixedThreadPool(threads);
+        }
+    }
+
+    private final boolean doData;
+    private final boolean doResource;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private Path outputDirectory;
+    private boolean sync;
+    private boolean verifyOnly;
+    private PrintStream log = System.err;
+
+    private final Set<Path> claimed = ConcurrentHashMap.newKeySet();
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong crcFailures = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong bytesIn = new AtomicLong();
+    private final AtomicLong bytesOut = new AtomicLong();
+}
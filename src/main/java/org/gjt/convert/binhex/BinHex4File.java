@@ -0,0 +1,179 @@
+/*
+  JBinHex
+  Copyright (C) 2026, the JBinHex contributors
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License
+  as published by the Free Software Foundation; either version 2
+  of the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+*/
+
+package org.gjt.convert.binhex;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.gjt.convert.binhex.BinHex4InputStream.Header;
+
+/**
+ Random access to the forks of a BinHex4 file that is stored in a seekable
+ place, such as a file.
+ <p>
+ The first time a fork is opened, the file is decoded up to the start of that
+ fork, and the decoder state there is remembered. After that, opening the
+ fork again restarts decoding right at that point. Forks can be opened in any
+ order, any number of times, and the streams returned are independent of each
+ other, so they can be read at the same time from different threads.
+
+ @author JBinHex contributors
+ */
+public class BinHex4File implements Closeable {
+
+    /**
+     Opens a file that contains 7-bit Hqx7 encoded data.
+     */
+    public BinHex4File(Path path) throws IOException
+    {
+        this(FileChannel.open(path, StandardOpenOption.READ), false);
+    }
+
+    /**
+     Uses a RandomAccessFile that contains 7-bit Hqx7 encoded data, starting
+     at its current file pointer. The file is closed when this object is
+     closed.
+     */
+    public BinHex4File(RandomAccessFile file) throws IOException
+    {
+        this(file.getChannel(), false);
+    }
+
+    /**
+     Uses a channel that contains 7-bit Hqx7 encoded data, starting at its
+     current position. The channel is closed when this object is closed.
+     */
+    public BinHex4File(SeekableByteChannel channel) throws IOException
+    {
+        this(channel, false);
+    }
+
+    /**
+     Uses a channel that contains either 7-bit Hqx7 encoded data or pure
+     8-bit data in Hqx8 format, starting at its current position.
+
+     @param channel
+            the data source. FileChannels are memory-mapped, other channels
+            are read through a buffer.
+     @param eightBit
+            if true, the channel must hold 8-bit data in Hqx8 format.
+            If false, the channel must hold 7-bit data in Hqx7 format.
+     */
+    public BinHex4File(SeekableByteChannel channel, boolean eightBit) throws IOException
+    {
+        this.channel = channel;
+        this.eightBit = eightBit;
+        scanner = new HqxDecoder(newSource(channel.position()), eightBit);
+    }
+
+    /**
+     Returns the header section of this BinHex file.
+     */
+    public synchronized Header getHeader() throws IOException
+    {
+        return scanner.readHeader();
+    }
+
+    /**
+     Opens a stream that reads the data fork from its start. The data fork's
+     CRC is checked when the last byte is read. Closing the stream does not
+     close this object.
+     */
+    public BinHex4InputStream openDataFork() throws IOException
+    {
+        return openFork(HqxDecoder.sectionDataFork);
+    }
+
+    /**
+     Opens a stream that reads the resource fork from its start. The first
+     time this is called, the data fork is decoded to find the start of the
+     resource fork, and its CRC is checked. Closing the stream does not close
+     this object.
+     */
+    public BinHex4InputStream openResourceFork() throws IOException
+    {
+        return openFork(HqxDecoder.sectionResourceFork);
+    }
+
+    /**
+     Makes the streams opened from now on add checkpoints to
+     <code>index</code> while they decode, and use them in
+     <code>BinHex4InputStream.seek</code>. See SeekIndex.
+     */
+    public synchronized void setSeekIndex(SeekIndex index)
+    {
+        this.index = index;
+        scanner.setSeekIndex(index);
+    }
+
+    /**
+     Closes the underlying channel. Streams opened from this object can't be
+     read anymore.
+     */
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+
+    private BinHex4InputStream openFork(int section) throws IOException
+    {
+        HqxDecoder.Checkpoint start;
+        Header header;
+        SeekIndex index;
+        synchronized(this)
+        {
+            header = scanner.readHeader();
+            while(scanner.forkStart(section) == null)
+                scanner.skipSection();
+            start = scanner.forkStart(section);
+            index = this.index;
+        }
+
+        HqxDecoder hqxIn = new HqxDecoder(newSource(start.offset), eightBit);
+        hqxIn.restore(start, header);
+        BinHex4InputStream in = new BinHex4InputStream(hqxIn, header);
+        if(index != null)
+            in.setSeekIndex(index);
+        return in;
+    }
+
+    private HqxSource newSource(long position) throws IOException
+    {
+        if(channel instanceof FileChannel)
+            return new HqxSource.Mapped((FileChannel)channel, position,
+                    HqxSource.Mapped.sz_window, false);
+        return new HqxSource.Channel(channel, position, HqxDecoder.sz_streamBuf, false);
+    }
+
+    private final SeekableByteChannel channel;
+    private final boolean eightBit;
+
+    /**
+     The decoder that finds the starts of the forks, once.
+     */
+    private final HqxDecoder scanner;
+
+    private SeekIndex   index;
+}
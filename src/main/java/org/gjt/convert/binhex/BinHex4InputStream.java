@@ -22,6 +22,11 @@ package org.gjt.convert.binhex;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.NoSuchAlgorithmException;
 
 /**
  This class completely decodes a BinHex4 file in three parts: the header,
@@ -31,9 +36,10 @@ import java.io.InputStream;
  can select from which fork this stream will read. However, because this stream
  obtains the BinHex4 file through a stream, one can only read the forks in the
  order that they are in the BinHex4 file, which is: first the data fork, then 
- the resource fork. A future version of this class that obtains it's data from
- a RandomAccessFile may be able to switch to reading from data and resource
- fork at any time.
+ the resource fork. When this stream is constructed from a Path or a
+ FileChannel, it remembers where each fork started the first time it passes
+ there, and can switch back to the data fork at any time. To read the forks
+ in any order, or at the same time, use BinHex4File.
 
  <p>
  Lacks something that translates between Unicode and the Mac character
@@ -126,6 +132,60 @@ public class BinHex4InputStream extends InputStream {
             resourceLength = read32bits(in);
         }
 
+        /**
+         Constructs a header for encoding a file with BinHex4OutputStream.
+         The strings are converted with the locale-default character
+         converter, like <code>getFileName</code> does the other way.
+
+         @param type
+                the four character file type, such as "TEXT"
+         @param creator
+                the four character creator type, such as "ttxt"
+         @exception IllegalArgumentException
+                if the file name is longer than 255 bytes, if the type or the
+                creator is not four bytes long, or if a length doesn't fit in
+                32 bits
+         */
+        public Header(String fileName, String type, String creator, int flags,
+                long dataLength, long resourceLength)
+        {
+            this.fileName = fileName.getBytes();
+            this.type = type.getBytes();
+            this.creator = creator.getBytes();
+            this.flags = flags & 0xffff;
+            this.dataLength = dataLength;
+            this.resourceLength = resourceLength;
+            if(this.fileName.length > 255)
+                throw new IllegalArgumentException("file name longer than 255 bytes");
+            if(this.type.length != 4 || this.creator.length != 4)
+                throw new IllegalArgumentException("type and creator must be four bytes");
+            if((dataLength >>> 32) != 0 || (resourceLength >>> 32) != 0)
+                throw new IllegalArgumentException("fork lengths must fit in 32 bits");
+        }
+
+        /**
+         Returns this header in the Hqx8 format, without its CRC.
+         */
+        byte[] toBytes()
+        {
+            byte[] b = new byte[1 + fileName.length + HqxDecoder.headerFixedLength];
+            int i = 0;
+            b[i++] = (byte)fileName.length;
+            System.arraycopy(fileName, 0, b, i, fileName.length);
+            i += fileName.length;
+            b[i++] = (byte)version;
+            System.arraycopy(type, 0, b, i, 4);
+            System.arraycopy(creator, 0, b, i + 4, 4);
+            i += 8;
+            b[i++] = (byte)(flags >>> 8);
+            b[i++] = (byte)flags;
+            for(int shift = 24; shift >= 0; shift -= 8)
+                b[i++] = (byte)(dataLength >>> shift);
+            for(int shift = 24; shift >= 0; shift -= 8)
+                b[i++] = (byte)(resourceLength >>> shift);
+            return b;
+        }
+
         /**
          Returns the name this file had before encoding in BinHex.
          <p>
@@ -224,13 +284,18 @@ public class BinHex4InputStream extends InputStream {
      */
     public BinHex4InputStream(InputStream source)
     {
-        hqxIn = new RLE_CRCInputStream(source);
+        this(source, false);
     }
 
     /**
      Constructs a BinHex4InputStream from a stream that is either a source
      of 7-bit Hqx7 encoded data or of pure 8-bit data in Hqx8 format. The
      flag eightBit tells this class what to expect.
+     <p>
+     The data is decoded by a single-pass engine that does the work of
+     Hqx7_to_Hqx8InputStream and RLE_CRCInputStream without the copying
+     between the two, and writes the decoded bytes directly into the arrays
+     passed to <code>read</code>.
 
      @param source
             the data source
@@ -240,7 +305,108 @@ public class BinHex4InputStream extends InputStream {
      */
     public BinHex4InputStream(InputStream source, boolean eightBit)
     {
-        hqxIn = new RLE_CRCInputStream(source, eightBit);
+        hqxIn = new HqxDecoder(source, eightBit);
+    }
+
+    /**
+     Constructs a BinHex4InputStream like
+     <code>BinHex4InputStream(source, eightBit)</code>, with buffer sizes,
+     buffer pool and CRC engine taken from <code>options</code>. The
+     buffers go back to the pool when this stream is closed. If the options
+     ask for pipelining, reading and decoding the source run on their own
+     threads; see <code>DecoderOptions.setPipelined</code>.
+     */
+    public BinHex4InputStream(InputStream source, boolean eightBit, DecoderOptions options)
+    {
+        hqxIn = options.isPipelined()
+                ? new PipelinedDecoder(source, eightBit, options)
+                : new HqxDecoder(source, eightBit, options);
+    }
+
+    /**
+     Constructs a BinHex4InputStream that decodes 7-bit Hqx7 encoded data
+     from a file. The file is memory-mapped, a window at a time, so there
+     are no read calls and no copying into stream buffers. Files larger
+     than 2 GB are no problem.
+     */
+    public BinHex4InputStream(Path path) throws IOException
+    {
+        this(mapped(path));
+    }
+
+    /**
+     Opens a file for the memory-mapped source, closing it again if the
+     source can't be set up.
+     */
+    private static HqxDecoder mapped(Path path) throws IOException
+    {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new HqxDecoder(new HqxSource.Mapped(channel, channel.position(),
+                    HqxSource.Mapped.sz_window), false);
+        } catch(IOException | RuntimeException e)
+        {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     Constructs a BinHex4InputStream that decodes 7-bit Hqx7 encoded data
+     from a channel, starting at its current position. The channel is
+     memory-mapped as described at <code>BinHex4InputStream(Path)</code>,
+     and closed when this stream is closed.
+     */
+    public BinHex4InputStream(FileChannel channel) throws IOException
+    {
+        this(channel, false);
+    }
+
+    /**
+     Constructs a memory-mapped BinHex4InputStream from a channel that holds
+     either 7-bit Hqx7 encoded data or pure 8-bit data in Hqx8 format.
+
+     @param channel
+            the data source, read from its current position
+     @param eightBit
+            if true, the channel must hold 8-bit data in Hqx8 format.
+            If false, the channel must hold 7-bit data in Hqx7 format.
+     */
+    public BinHex4InputStream(FileChannel channel, boolean eightBit) throws IOException
+    {
+        hqxIn = new HqxDecoder(new HqxSource.Mapped(channel, channel.position(),
+                HqxSource.Mapped.sz_window), eightBit);
+    }
+
+    /**
+     Constructs a BinHex4InputStream around an already configured engine.
+     */
+    BinHex4InputStream(HqxDecoder hqxIn)
+    {
+        this.hqxIn = hqxIn;
+    }
+
+    /**
+     Constructs a BinHex4InputStream around an engine that was restored to
+     the start of one of the forks.
+     */
+    BinHex4InputStream(HqxDecoder hqxIn, Header header)
+    {
+        this(hqxIn, header, true);
+    }
+
+    /**
+     @param owner
+            if false, <code>close</code> leaves the engine open, so that its
+            creator can go on using it
+     */
+    BinHex4InputStream(HqxDecoder hqxIn, Header header, boolean owner)
+    {
+        this.hqxIn = hqxIn;
+        this.owner = owner;
+        this.header = header;
+        switchState(hqxIn.section() == HqxDecoder.sectionResourceFork
+                ? stateInResourceFork : stateInDataFork);
     }
 
     /**
@@ -258,9 +424,7 @@ public class BinHex4InputStream extends InputStream {
         try {
             if(streamState != stateBeforeHeader)
                     throw new IOException("Wrong stream state, cannot read the header now.");
-            hqxIn.resetCRC();
-            header = new Header(hqxIn);
-            checkDataCRC();
+            header = hqxIn.readHeader();
             switchState(stateInDataFork);
         } catch(IOException e)
         {
@@ -275,17 +439,8 @@ public class BinHex4InputStream extends InputStream {
             throw new IllegalStateException(
                     "Cannot switch state with header == null or in errorState");
 
-        if(newState == stateInDataFork)
-        {
-            bytesLeftInFork = header.dataLength;
-            hqxIn.resetCRC();
-            hardEndOfFork = false;
-            seenEndOfFork = false;
-        }
-        else if(newState == stateInResourceFork)
+        if(newState == stateInDataFork || newState == stateInResourceFork)
         {
-            bytesLeftInFork = header.resourceLength;
-            hqxIn.resetCRC();
             hardEndOfFork = false;
             seenEndOfFork = false;
         }
@@ -304,9 +459,15 @@ public class BinHex4InputStream extends InputStream {
         else if(streamState == stateBeforeHeader)
             readHeader();
         else if(streamState == stateInResourceFork)
-            throw new IOException(
-                    "Sorry, no random access. Cannot switch back from "
-                    + "resource to data fork.");
+        {
+            HqxDecoder.Checkpoint start = hqxIn.forkStart(HqxDecoder.sectionDataFork);
+            if(!hqxIn.isSeekable() || start == null)
+                throw new IOException(
+                        "Sorry, no random access. Cannot switch back from "
+                        + "resource to data fork.");
+            hqxIn.restore(start, header);
+            switchState(stateInDataFork);
+        }
         else if(streamState != stateInDataFork)
             throw new IllegalStateException("Stream is in unknown state.");
     }
@@ -334,6 +495,17 @@ public class BinHex4InputStream extends InputStream {
     }
 
     public int read() throws IOException
+    {
+        int r = read(singleByte, 0, 1);
+        return (r == -1) ? -1 : singleByte[0] & 0xff;
+    }
+
+    public int read(byte[] b) throws IOException
+    {
+        return read(b, 0, b.length);
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException
     {
         if(streamState == stateBeforeHeader)
             useDataFork();
@@ -349,80 +521,276 @@ public class BinHex4InputStream extends InputStream {
         } else if(hardEndOfFork)
             throw new EOFException("End of fork");
 
-        if(bytesLeftInFork == 0)
+        if(hqxIn.section() != currentFork() || len == 0)
         {
+            if(hqxIn.section() == currentFork())
+                return 0;
             hardEndOfFork = true;
             return -1;
         }
 
-        int b = hqxIn.read();
-        if(b == -1)
-            throw new EOFException("Physical end-of-file before end of fork");
-
-        bytesLeftInFork--;
-
-        if(bytesLeftInFork == 0)
+        // Reads at least one byte, unless the fork is empty. Reading the
+        // last byte of the fork also checks the fork's CRC.
+        int r = hqxIn.read(b, off, len);
+        if(r == 0)
         {
-            // The fork was completely read, now check the fork's CRC
-            checkDataCRC();
+            hardEndOfFork = true;
+            return -1;
         }
-        return b;
+        return r;
     }
 
-    public int read(byte[] b) throws IOException
+    /**
+     Skips bytes of the current fork. Run-length encoded sequences are
+     skipped without expanding them, so skipping highly compressible data is
+     cheap. Skipping to the end of the fork still checks the fork's CRC.
+     */
+    public long skip(long n) throws IOException
     {
-        return read(b, 0, b.length);
+        if(streamState == stateBeforeHeader)
+            useDataFork();
+        if(seenEndOfFork || hardEndOfFork || n <= 0 || hqxIn.section() != currentFork())
+            return 0;
+        return hqxIn.skip(n);
     }
 
-    public int read(byte[] b, int off, int len) throws IOException
+    /**
+     Decodes the rest of the file in one pass and pushes it to
+     <code>handler</code>: the header, then the data fork and the resource
+     fork in chunks straight from the decode buffer, then the CRCs. Use this
+     to send both forks to different places without reading the data fork
+     completely before the resource fork can be reached.
+     <p>
+     This is meant to be called instead of reading; if part of the data fork
+     was already read, only the rest of it is pushed. Afterwards the stream
+     is at the end of the resource fork.
+     */
+    public void decode(BinHexHandler handler) throws IOException
     {
-        if(seenEndOfFork)
+        if(streamState == stateError)
+            throw new IOException("Stream is already in error state");
+        if(streamState == stateBeforeHeader)
+            readHeader();
+        handler.header(header);
+
+        byte[] buffer = hqxIn.acquireBuffer();
+        try {
+            ByteBuffer chunk = ByteBuffer.wrap(buffer);
+            while(hqxIn.section() != HqxDecoder.sectionEnd)
+            {
+                int fork = hqxIn.section();
+                int n = hqxIn.read(buffer, 0, buffer.length);
+                if(n == 0)
+                    continue;
+                chunk.clear();
+                chunk.limit(n);
+                if(fork == HqxDecoder.sectionDataFork)
+                    handler.dataFork(chunk);
+                else
+                    handler.resourceFork(chunk);
+            }
+        } catch(IOException e)
         {
-            // If this method is called a second time AFTER a -1, the
-            // caller must know for itself and be ready to get an EOFException.
-            // So set seenEOF to false again, and nextDecodedByte will throw
-            // one of these.
-            seenEndOfFork = false;
-            return -1;
-        } else if(hardEndOfFork)
-            throw new EOFException("End of fork");
+            switchState(stateError);
+            throw e;
+        } finally {
+            hqxIn.releaseBuffer(buffer);
+        }
+        switchState(stateInResourceFork);
+        handler.end(new CRCStatus(hqxIn.calculatedCRC, hqxIn.storedCRC));
+    }
 
-        if(bytesLeftInFork == 0)
+    /**
+     Decodes the rest of the file only to check its CRCs. The decoded bytes
+     are not copied anywhere, and runs are not even expanded, so this is
+     the fastest way to find out whether a file is intact.
+     <p>
+     A fork whose CRC doesn't match is reported in the returned CRCStatus
+     instead of being thrown, so the other fork is checked as well. A wrong
+     header CRC is still thrown as a CRCException, because without the
+     header the forks can't be found. If the stream was made with pipelined
+     DecoderOptions, its decoder thread is ahead of this call, so a wrong
+     fork CRC is thrown too. Afterwards the stream is at the end of the
+     resource fork.
+     */
+    public CRCStatus verify() throws IOException
+    {
+        if(streamState == stateError)
+            throw new IOException("Stream is already in error state");
+        if(streamState == stateBeforeHeader)
+            readHeader();
+
+        hqxIn.setFailOnForkCRC(false);
+        try {
+            while(hqxIn.section() != HqxDecoder.sectionEnd)
+                hqxIn.skipSection();
+        } catch(IOException e)
         {
-            hardEndOfFork = true;
-            return -1;
+            switchState(stateError);
+            throw e;
+        } finally {
+            hqxIn.setFailOnForkCRC(true);
         }
+        switchState(stateInResourceFork);
+        return new CRCStatus(hqxIn.calculatedCRC, hqxIn.storedCRC);
+    }
 
-        if(len == 0)
-            return 0;
+    /**
+     Makes this stream calculate digests of the data fork and the resource
+     fork while it decodes them, in the same pass, a decoded block at a
+     time. Forks that are skipped, for example by
+     <code>useResourceFork</code> or <code>verify</code>, are decoded
+     completely for their digests.
+     <p>
+     A fork only gets its digests if it is decoded from its first byte to
+     its last in order, so this must be called before reading from a fork
+     starts. Seeking forward decodes in order too, but a seek that restarts
+     decoding from a checkpoint in the middle of a fork leaves that fork
+     without digests. Pipelined decoding is not supported.
+
+     @param algorithms
+            MessageDigest algorithm names, such as "SHA-256" or "MD5", or
+            <code>XXHash64.algorithm</code> for a fast non-cryptographic hash
+     @exception NoSuchAlgorithmException
+            if one of the algorithms is not available
+     */
+    public void setDigests(String... algorithms) throws NoSuchAlgorithmException
+    {
+        if(hqxIn instanceof PipelinedDecoder)
+            throw new IllegalStateException("Digests can't be calculated by a pipelined decoder");
+        hqxIn.setDigests(new ForkDigests(algorithms));
+    }
+
+    /**
+     Returns a digest of the data fork, as soon as its last byte was
+     decoded, or null if it isn't complete, wasn't decoded in order, or
+     <code>algorithm</code> was not passed to <code>setDigests</code>.
+     */
+    public byte[] getDataForkDigest(String algorithm)
+    {
+        return digest(HqxDecoder.sectionDataFork, algorithm);
+    }
 
-        int toRead = (len > bytesLeftInFork) ? (int)bytesLeftInFork : len;
+    /**
+     Returns a digest of the resource fork, like
+     <code>getDataForkDigest</code>.
+     */
+    public byte[] getResourceForkDigest(String algorithm)
+    {
+        return digest(HqxDecoder.sectionResourceFork, algorithm);
+    }
 
-        int r = hqxIn.read(b, off, toRead);
-        if(r <= 0)
-            throw new EOFException("Physical end-of-file before end of fork");
+    private byte[] digest(int section, String algorithm)
+    {
+        ForkDigests digests = hqxIn.getDigests();
+        return (digests != null) ? digests.get(section, algorithm) : null;
+    }
+
+    /**
+     Makes this stream add a checkpoint to <code>index</code> every
+     <code>index.getInterval()</code> bytes of each fork it decodes, and use
+     the checkpoints in it when seeking. The index may have been loaded from
+     a sidecar file, but must have been built from the same encoded data.
+     */
+    public void setSeekIndex(SeekIndex index)
+    {
+        this.index = index;
+        hqxIn.setSeekIndex(index);
+    }
 
-        bytesLeftInFork -= r;
+    /**
+     Moves to a position in the current fork. Seeking forward is always
+     possible, by decoding up to that position. Seeking backward is only
+     possible if this stream was constructed from a Path or a FileChannel,
+     or opened from a BinHex4File.
+     <p>
+     With a seek index, decoding restarts at the nearest checkpoint before
+     the position, so that the cost of a seek is at most the index interval
+     instead of the distance from the start of the fork. Reading the fork up
+     to its end after a seek still checks the fork's CRC.
+
+     @param position
+            the number of bytes from the start of the fork, at most the fork
+            length
+     */
+    public void seek(long position) throws IOException
+    {
+        if(streamState == stateBeforeHeader)
+            useDataFork();
+        else if(streamState == stateError)
+            throw new IOException("Stream is already in error state");
 
-        if(bytesLeftInFork <= 0)
+        int fork = currentFork();
+        long length = (fork == HqxDecoder.sectionResourceFork)
+                ? header.resourceLength : header.dataLength;
+        if(position < 0 || position > length)
+            throw new IOException("Cannot seek to " + position
+                    + ", the fork is " + length + " bytes long");
+
+        long current = (hqxIn.section() == fork) ? length - hqxIn.sectionLeft() : length;
+        HqxDecoder.Checkpoint cp = (index != null) ? index.floor(fork, position) : null;
+        if(cp == null)
+            cp = hqxIn.forkStart(fork);
+        if(hqxIn.isSeekable() && cp != null
+                && (position < current || cp.position > current))
         {
-            // The fork was completely read, now check the fork's CRC
-            checkDataCRC();
+            hqxIn.restore(cp, header);
+            current = cp.position;
         }
-        return r;
+        else if(position < current)
+            throw new IOException("Sorry, no random access. Cannot seek backwards.");
+
+        switchState(streamState);
+        if(current < position)
+            hqxIn.skip(position - current);
     }
 
-    private void checkDataCRC() throws IOException
+    /**
+     Closes the source of this stream.
+     */
+    public void close() throws IOException
+    {
+        if(owner)
+            hqxIn.close();
+    }
+
+    /**
+     Makes this stream decode another BinHex4 file from <code>source</code>,
+     as if it was newly constructed with it, but without allocating new
+     buffers. The Hqx7/Hqx8 mode and the options stay the same, a seek index
+     is dropped. The previous source is not closed; if this stream was
+     closed, its buffers are taken from the pool again.
+     <p>
+     This is for callers that decode many files after each other, such as
+     worker threads that each keep one stream.
+     */
+    public void reset(InputStream source)
+    {
+        hqxIn.reset(source);
+        streamState = stateBeforeHeader;
+        header = null;
+        index = null;
+        seenEndOfFork = false;
+        hardEndOfFork = false;
+    }
+
+    /**
+     The section of the decoder that corresponds with the stream state.
+     */
+    private int currentFork()
     {
-        int calculatedCRC = hqxIn.getCRC();
-        int readCRC = read16bits(hqxIn);
-        if(calculatedCRC != readCRC)
-            throw new IOException("Incorrect CRC (calculated:"+calculatedCRC+" != file:"+readCRC+")");
+        return (streamState == stateInResourceFork)
+                ? HqxDecoder.sectionResourceFork : HqxDecoder.sectionDataFork;
     }
 
     private void skipToEndOfFork() throws IOException
     {
-        skip(bytesLeftInFork);
+        HqxDecoder.Checkpoint start = hqxIn.forkStart(HqxDecoder.sectionResourceFork);
+        if(hqxIn.isSeekable() && start != null)
+            // Been there before
+            hqxIn.restore(start, header);
+        else if(hqxIn.section() == HqxDecoder.sectionDataFork)
+            hqxIn.skipSection();
     }
 
     private static long read32bits(InputStream in) throws IOException
@@ -455,21 +823,30 @@ public class BinHex4InputStream extends InputStream {
     private int             streamState = stateBeforeHeader;
 
     /**
-     How many bytes are left to read in the current fork; only valid when
-     streamState != beforeHeader
+     The header of the BinHex4 file; only available when streamState != beforeHeader
      */
-    private long            bytesLeftInFork;
+    private Header          header;
 
     /**
-     The header of the BinHex4 file; only available when streamState != beforeHeader
+     The engine that decodes the source, checks the CRCs and keeps track of
+     the sections.
      */
-    private Header          header;
+    private HqxDecoder      hqxIn;
+
+    /**
+     False if closing this stream must not close the engine.
+     */
+    private boolean         owner = true;
+
+    /**
+     Used by read() as a place to decode into.
+     */
+    private final byte[]    singleByte = new byte[1];
 
     /**
-     The input stream, conveniently cast to type RLE_CRCInputStream so the CRC
-     related methods can be easily called.
+     Checkpoints for seek, if any.
      */
-    private RLE_CRCInputStream hqxIn;
+    private SeekIndex       index;
 
     /**
      read(byte[]) sets this if it cannot return -1 immediately. Read calls
@@ -0,0 +1,187 @@
+/*
+  JBinHex
+  Copyright (C) 2026, the JBinHex contributors
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License
+  as published by the Free Software Foundation; either version 2
+  of the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+*/
+
+package org.gjt.convert.binhex;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.gjt.convert.binhex.BinHex4InputStream.Header;
+
+/**
+ Encodes a file in BinHex4 format; the reverse of BinHex4InputStream.
+ The header, which is written right away, gives the lengths of both forks,
+ so they must be known in advance. By default, all the OutputStream methods
+ write to the data fork. After <code>useResourceFork</code>, they write to
+ the resource fork. The CRC of each section is written when the section is
+ complete.
+ <pre>
+    Header header = new Header("ReadMe", "TEXT", "ttxt", 0, data.length, 0);
+    BinHex4OutputStream out = new BinHex4OutputStream(file, header);
+    out.write(data);
+    out.close();
+ </pre>
+ The chain of streams underneath, RLE_CRCOutputStream and
+ Hqx8_to_Hqx7OutputStream, works on buffers, so writing large arrays is
+ fast.
+
+ @author JBinHex contributors
+ */
+public class BinHex4OutputStream extends OutputStream {
+
+    private final static int stateInDataFork = 1;
+    private final static int stateInResourceFork = 2;
+    private final static int stateDone = 3;
+
+    /**
+     Constructs a BinHex4OutputStream that writes 7-bit Hqx7 encoded data,
+     as used in mail and on the Internet, to <code>out</code>.
+     */
+    public BinHex4OutputStream(OutputStream out, Header header) throws IOException
+    {
+        this(out, header, false);
+    }
+
+    /**
+     Constructs a BinHex4OutputStream that writes either 7-bit Hqx7 encoded
+     data or pure 8-bit data in Hqx8 format to <code>out</code>.
+     */
+    public BinHex4OutputStream(OutputStream out, Header header, boolean eightBit) throws IOException
+    {
+        this(new RLE_CRCOutputStream(out, eightBit), header);
+    }
+
+    /**
+     Constructs a BinHex4OutputStream that writes 7-bit Hqx7 encoded data
+     with lines that end in <code>lineSeparator</code>.
+     */
+    public BinHex4OutputStream(OutputStream out, Header header, String lineSeparator) throws IOException
+    {
+        this(new RLE_CRCOutputStream(new Hqx8_to_Hqx7OutputStream(out, lineSeparator), true), header);
+    }
+
+    private BinHex4OutputStream(RLE_CRCOutputStream rleOut, Header header) throws IOException
+    {
+        this.rleOut = rleOut;
+        this.header = header;
+        rleOut.write(header.toBytes());
+        rleOut.writeCRC();
+        left = header.dataLength;
+    }
+
+    /**
+     Selects the engine that calculates the CRCs of the forks.
+     */
+    public void setCRC16(CRC16 crc16)
+    {
+        rleOut.setCRC16(crc16);
+    }
+
+    /**
+     Returns the header that was written.
+     */
+    public Header getHeader()
+    {
+        return header;
+    }
+
+    /**
+     Ends the data fork and makes the following writes go to the resource
+     fork.
+
+     @exception IOException
+        if fewer bytes were written to the data fork than the header says,
+        or if the resource fork was already selected
+     */
+    public void useResourceFork() throws IOException
+    {
+        if(streamState != stateInDataFork)
+            throw new IOException("Already past the data fork");
+        endFork();
+        left = header.resourceLength;
+    }
+
+    public void write(int b) throws IOException
+    {
+        singleByte[0] = (byte)b;
+        write(singleByte, 0, 1);
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+        if(len > left)
+            throw new IOException(streamState == stateDone ? "Stream already finished"
+                    : "More bytes than the length of the "
+                    + (streamState == stateInDataFork ? "data" : "resource")
+                    + " fork in the header");
+        rleOut.write(b, off, len);
+        left -= len;
+    }
+
+    public void flush() throws IOException
+    {
+        rleOut.flush();
+    }
+
+    /**
+     Ends the forks that have not been ended yet and writes the closing :,
+     without closing the underlying stream.
+
+     @exception IOException
+        if fewer bytes were written to a fork than the header says
+     */
+    public void finish() throws IOException
+    {
+        if(streamState == stateDone)
+            return;
+        if(streamState == stateInDataFork)
+            useResourceFork();
+        endFork();
+        rleOut.finish();
+    }
+
+    public void close() throws IOException
+    {
+        try {
+            finish();
+        } finally {
+            rleOut.close();
+        }
+    }
+
+    private void endFork() throws IOException
+    {
+        if(left != 0)
+            throw new IOException((streamState == stateInDataFork ? "Data" : "Resource")
+                    + " fork is " + left + " bytes shorter than in the header");
+        rleOut.writeCRC();
+        streamState++;
+    }
+
+    private final RLE_CRCOutputStream rleOut;
+    private final Header header;
+    private int         streamState = stateInDataFork;
+
+    /**
+     The number of bytes that the current fork still needs.
+     */
+    private long        left;
+
+    private final byte[] singleByte = new byte[1];
+}
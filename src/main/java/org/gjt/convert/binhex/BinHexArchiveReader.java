@@ -0,0 +1,132 @@
+/*
+  JBinHex
+  Copyright (C) 2026, the JBinHex contributors
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License
+  as published by the Free Software Foundation; either version 2
+  of the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+*/
+
+package org.gjt.convert.binhex;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.gjt.convert.binhex.BinHex4InputStream.Header;
+
+/**
+ Reads all BinHex4 files that are stored after each other in one Hqx7
+ stream, such as the attachments in a mailbox or a digest, in one pass.
+ Like <code>ZipInputStream.getNextEntry</code>, <code>nextEntry</code>
+ searches for the id line of the next file and returns a stream that reads
+ that file; the text in between is skipped.
+ <pre>
+    BinHexArchiveReader reader = new BinHexArchiveReader(mbox);
+    BinHex4InputStream entry;
+    while((entry = reader.nextEntry()) != null)
+    {
+        Header header = entry.getHeader();
+        // read the data fork from entry, and maybe the resource fork
+    }
+    reader.close();
+ </pre>
+ All entries share the buffer of the reader, so the input is read only
+ once.
+
+ @author JBinHex contributors
+ */
+public class BinHexArchiveReader implements Closeable {
+
+    /**
+     Constructs a reader for 7-bit Hqx7 encoded files in <code>source</code>.
+     */
+    public BinHexArchiveReader(InputStream source)
+    {
+        this(source, new DecoderOptions());
+    }
+
+    /**
+     Constructs a reader for 7-bit Hqx7 encoded files in <code>source</code>,
+     with buffers and CRC engine from <code>options</code>. The maximum
+     header scan of the options applies to the text before each file.
+     */
+    public BinHexArchiveReader(InputStream source, DecoderOptions options)
+    {
+        hqxIn = new HqxDecoder(source, false, options);
+    }
+
+    /**
+     Finds the next BinHex4 file and returns a stream for it, positioned at
+     the start of its data fork. What remains of the previous file is
+     skipped first, and its CRCs are still checked. The stream of the
+     previous file can't be used anymore after this call. Closing the
+     stream of an entry does not close the reader.
+
+     @return
+        the stream for the next file, or null if there are no more
+     @exception IOException
+        if the previous file or the header of the next one is corrupted.
+        After such an exception, the next call searches on for the file
+        after that.
+     */
+    public BinHex4InputStream nextEntry() throws IOException
+    {
+        if(started)
+        {
+            if(!skipped)
+            {
+                skipped = true;
+                if(hqxIn.getHeader() == null)
+                    hqxIn.readHeader();
+                while(hqxIn.section() != HqxDecoder.sectionEnd)
+                    hqxIn.skipSection();
+            }
+            hqxIn.nextArchive();
+        }
+        started = true;
+        skipped = false;
+        if(!hqxIn.findArchive())
+        {
+            skipped = true;
+            return null;
+        }
+
+        skipped = true;
+        Header header = hqxIn.readHeader();
+        skipped = false;
+        return new BinHex4InputStream(hqxIn, header, false);
+    }
+
+    /**
+     Closes the underlying stream.
+     */
+    public void close() throws IOException
+    {
+        hqxIn.close();
+    }
+
+    private final HqxDecoder hqxIn;
+
+    /**
+     True once an entry was searched for.
+     */
+    private boolean     started;
+
+    /**
+     True if the current entry must not be skipped anymore, because the
+     search for the next one must start right away: it was skipped
+     already, it failed, or there was none.
+     */
+    private boolean     skipped;
+}
@@ -0,0 +1,185 @@
+/*
+  JBinHex
+  Copyright (C) 2026, the JBinHex contributors
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License
+  as published by the Free Software Foundation; either version 2
+  of the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+*/
+
+package org.gjt.convert.binhex;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.gjt.convert.binhex.BinHex4InputStream.Header;
+
+/**
+ Decodes BinHex4 data from ByteBuffers, in the style of
+ <code>java.nio.charset.CharsetDecoder</code>. This is for callers that
+ already have their data in buffers and don't want to copy it into an
+ InputStream and back.
+ <p>
+ A decoder is stateful: the caller feeds it input buffers one after the other,
+ and it decodes the forks into output buffers. Each call to
+ <code>decode</code> reports why it stopped:
+ <ul>
+ <li><code>UNDERFLOW</code>: all input was consumed, supply more.
+ <li><code>OVERFLOW</code>: the output buffer is full, drain it.
+ <li><code>HEADER</code>: the header was decoded and its CRC checked, it is
+     available from <code>getHeader</code>. The following output is the data
+     fork.
+ <li><code>DATA_FORK_END</code>: the data fork ended and its CRC checked.
+     The output buffer holds the end of the data fork; the following output
+     is the resource fork.
+ <li><code>RESOURCE_FORK_END</code>: the resource fork ended and its CRC
+     checked. Nothing more will be decoded.
+ </ul>
+ Because a call never continues past a section boundary, the output of one
+ call always belongs to one fork. Heap and direct buffers are both supported;
+ heap output buffers are decoded into without intermediate copies.
+
+ @author JBinHex contributors
+ */
+public class BinHexDecoder {
+
+    /**
+     The reasons for <code>decode</code> to return.
+     */
+    public enum Result {
+        UNDERFLOW, OVERFLOW, HEADER, DATA_FORK_END, RESOURCE_FORK_END
+    }
+
+    /**
+     Constructs a decoder for 7-bit data in Hqx7 format.
+     */
+    public BinHexDecoder()
+    {
+        this(false);
+    }
+
+    /**
+     Constructs a decoder for either 7-bit Hqx7 data or 8-bit Hqx8 data.
+
+     @param eightBit
+            if true, the input is 8-bit data in Hqx8 format.
+            If false, the input is 7-bit data in Hqx7 format.
+     */
+    public BinHexDecoder(boolean eightBit)
+    {
+        this(eightBit, new DecoderOptions());
+    }
+
+    /**
+     Constructs a decoder that uses the CRC engine of <code>options</code>,
+     and its output buffer size for direct output buffers.
+     */
+    public BinHexDecoder(boolean eightBit, DecoderOptions options)
+    {
+        this.options = options;
+        engine = new HqxDecoder(eightBit, options);
+    }
+
+    /**
+     Decodes as much as possible from <code>in</code> into <code>out</code>,
+     and tells why it stopped. Only the data and resource fork bytes are
+     written to <code>out</code>.
+
+     @exception IOException
+        on illegal characters and CRC mismatches, or if the closing : was
+        found before the resource fork ended
+     */
+    public Result decode(ByteBuffer in, ByteBuffer out) throws IOException
+    {
+        int section = engine.section();
+        while(section != HqxDecoder.sectionEnd)
+        {
+            int n;
+            if(out.hasArray())
+            {
+                n = engine.decode(in, out.array(), out.arrayOffset() + out.position(), out.remaining());
+                out.position(out.position() + n);
+            }
+            else
+            {
+                if(scratch == null)
+                    scratch = new byte[options.getOutputBufferSize()];
+                n = engine.decode(in, scratch, 0, Math.min(out.remaining(), scratch.length));
+                out.put(scratch, 0, n);
+            }
+
+            if(engine.section() != section)
+                return boundary(engine.section());
+            if(engine.isEndSeen())
+                throw engine.endOfData();
+            if(!out.hasRemaining() && engine.sectionLeft() > 0
+                    && section != HqxDecoder.sectionHeader)
+                return Result.OVERFLOW;
+            if(!in.hasRemaining())
+                return Result.UNDERFLOW;
+        }
+        return Result.RESOURCE_FORK_END;
+    }
+
+    /**
+     Like <code>decode(in, out)</code>, but if <code>endOfInput</code> is true
+     the caller promises there is no more input after <code>in</code>.
+     Running out of input before the resource fork ended then throws the
+     EOFException that BinHex4InputStream would have thrown.
+     */
+    public Result decode(ByteBuffer in, ByteBuffer out, boolean endOfInput) throws IOException
+    {
+        Result result = decode(in, out);
+        if(result == Result.UNDERFLOW && endOfInput)
+            throw engine.endOfInput();
+        return result;
+    }
+
+    /**
+     Returns the header, or null if <code>decode</code> hasn't returned
+     <code>HEADER</code> yet.
+     */
+    public Header getHeader()
+    {
+        return engine.getHeader();
+    }
+
+    /**
+     Forgets all state, so that this decoder can decode another BinHex4 file.
+     */
+    public void reset()
+    {
+        engine.reset();
+    }
+
+    private static Result boundary(int newSection)
+    {
+        if(newSection == HqxDecoder.sectionDataFork)
+            return Result.HEADER;
+        else if(newSection == HqxDecoder.sectionResourceFork)
+            return Result.DATA_FORK_END;
+        return Result.RESOURCE_FORK_END;
+    }
+
+    private final DecoderOptions options;
+
+    /**
+     The engine that does the actual decoding.
+     */
+    private final HqxDecoder engine;
+
+    /**
+     Output goes through here when the output buffer has no accessible array.
+     */
+    private byte[]      scratch;
+}
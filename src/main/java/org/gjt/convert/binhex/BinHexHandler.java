@@ -0,0 +1,68 @@
+/*
+  JBinHex
+  Copyright (C) 2026, the JBinHex contributors
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License
+  as published by the Free Software Foundation; either version 2
+  of the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+*/
+
+package org.gjt.convert.binhex;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.gjt.convert.binhex.BinHex4InputStream.Header;
+
+/**
+ Receives the parts of a BinHex4 file as they are decoded, in one pass over
+ the input. See <code>BinHex4InputStream.decode(BinHexHandler)</code>.
+ <p>
+ The methods are called in the order of the file: <code>header</code>
+ once, <code>dataFork</code> for each chunk of the data fork,
+ <code>resourceFork</code> for each chunk of the resource fork, and
+ <code>end</code> once, after the CRC of the resource fork was checked.
+ Empty forks produce no chunks.
+ <p>
+ A chunk is a view on the decoder's own buffer; it is only valid during the
+ call. A handler that needs the bytes later must copy them.
+
+ @author JBinHex contributors
+ */
+public interface BinHexHandler {
+
+    /**
+     Called when the header was decoded and its CRC checked.
+     */
+    void header(Header header) throws IOException;
+
+    /**
+     Called with the next decoded bytes of the data fork, between the
+     chunk's position and limit.
+     */
+    void dataFork(ByteBuffer chunk) throws IOException;
+
+    /**
+     Called with the next decoded bytes of the resource fork, between the
+     chunk's position and limit.
+     */
+    void resourceFork(ByteBuffer chunk) throws IOException;
+
+    /**
+     Called when both forks were decoded.
+
+     @param crcStatus
+            the CRCs of the three sections
+     */
+    void end(CRCStatus crcStatus) throws IOException;
+}
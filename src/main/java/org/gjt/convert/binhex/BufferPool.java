@@ -0,0 +1,143 @@
+/*
+  JBinHex
+  Copyright (C) 2026, the JBinHex contributors
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License
+  as published by the Free Software Foundation; either version 2
+  of the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+*/
+
+package org.gjt.convert.binhex;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ Hands out the byte arrays that decoders use as buffers, and takes them back
+ when a decoder is closed. Pooling them means that decoding many small files
+ after each other does not allocate new buffers for each file.
+ <p>
+ Three kinds are available: <code>allocating</code>, which allocates a new
+ array every time and does not pool at all, <code>PerThread</code>, which
+ keeps a few arrays for each thread, and <code>Shared</code>, which keeps a
+ bounded number of arrays for all threads together.
+
+ @author JBinHex contributors
+ */
+public abstract class BufferPool {
+
+    /**
+     Allocates a new array for every request and lets the garbage collector
+     take care of released ones. This is the default.
+     */
+    public final static BufferPool allocating = new BufferPool() {
+        public byte[] acquire(int size)
+        {
+            return new byte[size];
+        }
+
+        public void release(byte[] buffer)
+        {
+        }
+    };
+
+    /**
+     Returns an array of at least <code>size</code> bytes. Its contents are
+     undefined.
+     */
+    public abstract byte[] acquire(int size);
+
+    /**
+     Gives an array that was returned by <code>acquire</code> back to the
+     pool. The caller must not use it anymore afterwards.
+     */
+    public abstract void release(byte[] buffer);
+
+    /**
+     Keeps up to a fixed number of released arrays for each thread. Acquiring
+     and releasing need no synchronization, but an array released on another
+     thread than the one that acquired it ends up in that other thread's pool.
+     */
+    public static class PerThread extends BufferPool
+    {
+        /**
+         @param maxPerThread
+                the maximum number of arrays that are kept for each thread
+         */
+        public PerThread(int maxPerThread)
+        {
+            this.maxPerThread = maxPerThread;
+        }
+
+        public byte[] acquire(int size)
+        {
+            ArrayDeque<byte[]> free = pool.get();
+            for(int i = free.size(); i > 0; i--)
+            {
+                byte[] buffer = free.pollFirst();
+                if(buffer.length >= size)
+                    return buffer;
+                free.addLast(buffer);
+            }
+            return new byte[size];
+        }
+
+        public void release(byte[] buffer)
+        {
+            ArrayDeque<byte[]> free = pool.get();
+            if(free.size() < maxPerThread)
+                free.addFirst(buffer);
+        }
+
+        private final int maxPerThread;
+
+        private final ThreadLocal<ArrayDeque<byte[]>> pool = new ThreadLocal<ArrayDeque<byte[]>>() {
+            protected ArrayDeque<byte[]> initialValue()
+            {
+                return new ArrayDeque<byte[]>();
+            }
+        };
+    }
+
+    /**
+     Keeps up to a fixed number of released arrays for all threads together.
+     When the pool is full, released arrays are left to the garbage
+     collector, so memory use stays bounded.
+     */
+    public static class Shared extends BufferPool
+    {
+        /**
+         @param maxBuffers
+                the maximum number of arrays that are kept
+         */
+        public Shared(int maxBuffers)
+        {
+            free = new ArrayBlockingQueue<byte[]>(maxBuffers);
+        }
+
+        public byte[] acquire(int size)
+        {
+            byte[] buffer = free.poll();
+            // An array that is too small is dropped; with one buffer size
+            // per application that rarely happens.
+            return (buffer != null && buffer.length >= size) ? buffer : new byte[size];
+        }
+
+        public void release(byte[] buffer)
+        {
+            free.offer(buffer);
+        }
+
+        private final ArrayBlockingQueue<byte[]> free;
+    }
+}
@@ -0,0 +1,270 @@
+/*
+  JBinHex
+  Copyright (C) 2026, the JBinHex contributors
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License
+  as published by the Free Software Foundation; either version 2
+  of the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+*/
+
+package org.gjt.convert.binhex;
+
+/**
+ Calculates the CRC-16 that BinHex4 uses to protect each of its sections.
+ This is the CCITT polynomial 0x1021 with an initial value of 0 and no
+ final xor, also known as CRC-16/XMODEM.
+ <p>
+ Peter Lewis' article describes the CRC in its "augmented" form: the
+ message bits are shifted into the register and two extra 0 bytes are
+ processed at the end. The engines in this class keep the register in the
+ equivalent non-augmented form, so after processing the message the
+ register already holds the value that the augmented form only reaches
+ after the two 0 bytes. <code>RLE_CRCInputStream.getCRC</code> takes care
+ of that difference.
+ <p>
+ Three engines are available, which all calculate exactly the same values:
+ <code>bitwise</code>, the textbook shift-and-xor loop, <code>table</code>,
+ which processes a byte at a time with a 256-entry table, and
+ <code>slicingBy8</code>, which processes eight bytes at a time with eight
+ tables and falls back to the single table for the tail of a range.
+
+ @author JBinHex contributors
+ */
+public abstract class CRC16 {
+
+    /**
+     The CCITT generator polynomial, without the implicit x^16 term.
+     */
+    final static int polynomial = 0x1021;
+
+    /**
+     Slicing tables. <code>crcTable[0]</code> is the classic byte-at-a-time
+     table; <code>crcTable[k]</code> gives the CRC contribution of a byte that
+     is followed by k more bytes.
+     */
+    final static int[][] crcTable = new int[8][256];
+
+    static {
+        for(int i = 0; i < 256; i++)
+        {
+            int crc = i << 8;
+            for(int j = 0; j < 8; j++)
+            {
+                crc = ((crc & 0x8000) != 0) ? (crc << 1) ^ polynomial : crc << 1;
+            }
+            crcTable[0][i] = crc & 0xffff;
+        }
+        for(int k = 1; k < crcTable.length; k++)
+        {
+            for(int i = 0; i < 256; i++)
+            {
+                int crc = crcTable[k - 1][i];
+                crcTable[k][i] = ((crc << 8) ^ crcTable[0][crc >>> 8]) & 0xffff;
+            }
+        }
+    }
+
+    /**
+     <code>zeroPowers[i]</code> is the 16x16 matrix over GF(2) that advances
+     a register over 2^i zero bytes, stored as its 16 columns. Because the
+     CRC is linear, advancing over a run of bytes can be done with these in
+     O(log n) instead of O(n).
+     */
+    final static int[][] zeroPowers = new int[64][16];
+
+    static {
+        for(int j = 0; j < 16; j++)
+        {
+            int crc = 1 << j;
+            zeroPowers[0][j] = ((crc << 8) ^ crcTable[0][crc >>> 8]) & 0xffff;
+        }
+        for(int i = 1; i < zeroPowers.length; i++)
+        {
+            for(int j = 0; j < 16; j++)
+                zeroPowers[i][j] = multiply(zeroPowers[i - 1], zeroPowers[i - 1][j]);
+        }
+    }
+
+    /**
+     Processes one bit at a time. Slow, but obviously correct; it is the
+     reference the other engines are checked against.
+     */
+    public final static CRC16 bitwise = new CRC16() {
+        public int update(int crc, int b)
+        {
+            crc ^= (b & 0xff) << 8;
+            for(int i = 0; i < 8; i++)
+            {
+                crc = ((crc & 0x8000) != 0) ? (crc << 1) ^ polynomial : crc << 1;
+            }
+            return crc & 0xffff;
+        }
+
+        public int update(int crc, byte[] b, int off, int len)
+        {
+            for(int i = off, max = off + len; i < max; i++)
+                crc = update(crc, b[i]);
+            return crc;
+        }
+    };
+
+    /**
+     Processes one byte at a time using a 256-entry table.
+     */
+    public final static CRC16 table = new CRC16() {
+        public int update(int crc, int b)
+        {
+            return ((crc << 8) ^ crcTable[0][((crc >>> 8) ^ b) & 0xff]) & 0xffff;
+        }
+
+        public int update(int crc, byte[] b, int off, int len)
+        {
+            return updateTable(crc, b, off, off + len);
+        }
+    };
+
+    /**
+     Processes eight bytes at a time using the slicing-by-8 technique. This is
+     the fastest engine for ranges of more than a handful of bytes.
+     */
+    public final static CRC16 slicingBy8 = new CRC16() {
+        public int update(int crc, int b)
+        {
+            return ((crc << 8) ^ crcTable[0][((crc >>> 8) ^ b) & 0xff]) & 0xffff;
+        }
+
+        public int update(int crc, byte[] b, int off, int len)
+        {
+            final int[] t0 = crcTable[0], t1 = crcTable[1], t2 = crcTable[2],
+                    t3 = crcTable[3], t4 = crcTable[4], t5 = crcTable[5],
+                    t6 = crcTable[6], t7 = crcTable[7];
+            int i = off;
+            for(int max = off + len - 7; i < max; i += 8)
+            {
+                // The 16-bit register only overlaps the first two bytes.
+                crc = t7[((crc >>> 8) ^ b[i]) & 0xff]
+                        ^ t6[(crc ^ b[i + 1]) & 0xff]
+                        ^ t5[b[i + 2] & 0xff]
+                        ^ t4[b[i + 3] & 0xff]
+                        ^ t3[b[i + 4] & 0xff]
+                        ^ t2[b[i + 5] & 0xff]
+                        ^ t1[b[i + 6] & 0xff]
+                        ^ t0[b[i + 7] & 0xff];
+            }
+            return updateTable(crc, b, i, off + len);
+        }
+    };
+
+    /**
+     Returns the engine that is used when nobody asks for a particular one.
+     */
+    public static CRC16 getDefault()
+    {
+        return slicingBy8;
+    }
+
+    /**
+     Returns the CRC register after processing one more byte.
+
+     @param crc
+            the current 16-bit register value, 0 at the start of a section
+     @param b
+            the byte to process; only the low eight bits are used
+     */
+    public abstract int update(int crc, int b);
+
+    /**
+     Returns the CRC register after processing <code>len</code> bytes from
+     <code>b</code>, starting at <code>off</code>.
+     */
+    public abstract int update(int crc, byte[] b, int off, int len);
+
+    /**
+     Returns the CRC register after processing <code>n</code> zero bytes, in
+     O(log n) time.
+     */
+    public static int zeros(int crc, long n)
+    {
+        for(int i = 0; n != 0; i++, n >>>= 1)
+        {
+            if((n & 1) != 0)
+                crc = multiply(zeroPowers[i], crc);
+        }
+        return crc;
+    }
+
+    /**
+     Returns the CRC register after processing <code>n</code> times the same
+     byte, in O(log n) time. This is what a run-length encoded sequence
+     does to the CRC, without expanding it.
+     */
+    public static int repeat(int crc, int b, long n)
+    {
+        // Since the CRC is linear, the register part and the data part can
+        // be done separately: crc(x, data) = crc(x, zeros) ^ crc(0, data).
+        return zeros(crc, n) ^ repeatFromZero(b & 0xff, n);
+    }
+
+    /**
+     Returns the CRC register of two ranges after each other, from the
+     register of the first range and the register of the second range
+     started at 0. This is what lets ranges be processed separately, for
+     example on different threads, in O(log len2) time.
+     */
+    public static int combine(int crc1, int crc2, long len2)
+    {
+        return zeros(crc1, len2) ^ crc2;
+    }
+
+    /**
+     The CRC of <code>n</code> times the byte <code>b</code>, starting
+     from 0. Goes over the bits of n from the lowest, with the CRC of a
+     block of 2^i times b, doubled with one multiplication per bit:
+     block(2m) = zeros(block(m), m) ^ block(m). The blocks of the bits that
+     are set are appended to the result the same way.
+     */
+    private static int repeatFromZero(int b, long n)
+    {
+        int run = 0;
+        int block = crcTable[0][b];
+        for(int i = 0; n != 0; i++, n >>>= 1)
+        {
+            if((n & 1) != 0)
+                run = multiply(zeroPowers[i], run) ^ block;
+            block = multiply(zeroPowers[i], block) ^ block;
+        }
+        return run;
+    }
+
+    /**
+     Multiplies a matrix, stored as columns, with a vector.
+     */
+    private static int multiply(int[] matrix, int vector)
+    {
+        int result = 0;
+        for(int j = 0; vector != 0; j++, vector >>>= 1)
+        {
+            if((vector & 1) != 0)
+                result ^= matrix[j];
+        }
+        return result;
+    }
+
+    private static int updateTable(int crc, byte[] b, int from, int to)
+    {
+        final int[] t0 = crcTable[0];
+        for(int i = from; i < to; i++)
+            crc = ((crc << 8) ^ t0[((crc >>> 8) ^ b[i]) & 0xff]) & 0xffff;
+        return crc;
+    }
+}
@@ -0,0 +1,76 @@
+/*
+  JBinHex
+  Copyright (C) 2026, the JBinHex contributors
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License
+  as published by the Free Software Foundation; either version 2
+  of the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+*/
+
+package org.gjt.convert.binhex;
+
+import java.io.IOException;
+
+/**
+ Thrown when the CRC calculated over a section of a BinHex4 file is not the
+ one stored in the file after it. Other decoding errors are thrown as plain
+ IOExceptions, so this tells a damaged file apart from one that can't be
+ read at all.
+
+ @author JBinHex contributors
+ */
+public class CRCException extends IOException {
+
+    private final static long serialVersionUID = 1L;
+
+    private final static String[] sectionNames = {
+        "header", "data fork", "resource fork"
+    };
+
+    CRCException(int section, int calculated, int stored)
+    {
+        super("Incorrect CRC (calculated:"+calculated+" != file:"+stored+")");
+        this.section = section;
+        this.calculated = calculated;
+        this.stored = stored;
+    }
+
+    /**
+     Returns the section whose CRC is wrong: "header", "data fork" or
+     "resource fork".
+     */
+    public String getSection()
+    {
+        return sectionNames[section];
+    }
+
+    /**
+     Returns the CRC calculated over the decoded bytes of the section.
+     */
+    public int getCalculatedCRC()
+    {
+        return calculated;
+    }
+
+    /**
+     Returns the CRC stored in the file after the section.
+     */
+    public int getStoredCRC()
+    {
+        return stored;
+    }
+
+    private final int section;
+    private final int calculated;
+    private final int stored;
+}
@@ -0,0 +1,119 @@
+/*
+  JBinHex
+  Copyright (C) 2026, the JBinHex contributors
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License
+  as published by the Free Software Foundation; either version 2
+  of the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+*/
+
+package org.gjt.convert.binhex;
+
+/**
+ The CRCs of the header, the data fork and the resource fork of a decoded
+ BinHex4 file: the ones calculated over the decoded bytes, and the ones
+ stored in the file.
+
+ @author JBinHex contributors
+ */
+public final class CRCStatus {
+
+    CRCStatus(int[] calculated, int[] stored)
+    {
+        this.calculated = calculated.clone();
+        this.stored = stored.clone();
+    }
+
+    /**
+     Returns the CRC stored in the file after the header.
+     */
+    public int getHeaderCRC()
+    {
+        return stored[HqxDecoder.sectionHeader];
+    }
+
+    /**
+     Returns the CRC stored in the file after the data fork.
+     */
+    public int getDataForkCRC()
+    {
+        return stored[HqxDecoder.sectionDataFork];
+    }
+
+    /**
+     Returns the CRC stored in the file after the resource fork.
+     */
+    public int getResourceForkCRC()
+    {
+        return stored[HqxDecoder.sectionResourceFork];
+    }
+
+    /**
+     Returns the CRC calculated over the decoded bytes of the header.
+     */
+    public int getCalculatedHeaderCRC()
+    {
+        return calculated[HqxDecoder.sectionHeader];
+    }
+
+    /**
+     Returns the CRC calculated over the decoded bytes of the data fork.
+     */
+    public int getCalculatedDataForkCRC()
+    {
+        return calculated[HqxDecoder.sectionDataFork];
+    }
+
+    /**
+     Returns the CRC calculated over the decoded bytes of the resource fork.
+     */
+    public int getCalculatedResourceForkCRC()
+    {
+        return calculated[HqxDecoder.sectionResourceFork];
+    }
+
+    /**
+     Returns true if each calculated CRC equals the stored one.
+     */
+    public boolean isValid()
+    {
+        for(int i = 0; i < stored.length; i++)
+        {
+            if(calculated[i] != stored[i])
+                return false;
+        }
+        return true;
+    }
+
+    public String toString()
+    {
+        return "CRCStatus[header = " + toString(HqxDecoder.sectionHeader)
+                + ", dataFork = " + toString(HqxDecoder.sectionDataFork)
+                + ", resourceFork = " + toString(HqxDecoder.sectionResourceFork)
+                + ", valid = " + isValid() + "]";
+    }
+
+    /**
+     The stored CRC of a section, and the calculated one if it differs.
+     */
+    private String toString(int section)
+    {
+        String s = Integer.toHexString(stored[section]);
+        if(calculated[section] != stored[section])
+            s += " (calculated " + Integer.toHexString(calculated[section]) + ")";
+        return s;
+    }
+
+    private final int[] calculated;
+    private final int[] stored;
+}
@@ -19,12 +19,19 @@
 
 package org.gjt.convert.binhex;
 
+import java.io.BufferedReader;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.io.InputStreamReader;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
 
 /**
  Command line program to decode binhex files from the harddisk or from
@@ -62,6 +69,26 @@ import java.net.URL;
   <LI><CODE>-h</CODE> to only show the header of the BinHex file
   on <CODE>stdout</CODE>. The decoding options are ignored.
 
+  <LI><CODE>-t</CODE> to only check the CRCs of the header and both
+  forks. Nothing is written; the stored and calculated CRC of each
+  section are shown on <CODE>stdout</CODE>, and the exit status is 1 if
+  one of them doesn't match.
+
+  <LI><CODE>-s</CODE> to wait until the decoded files are on the
+  storage device before exiting, like <CODE>fsync</CODE>.
+
+  <LI><CODE>-b</CODE> to decode many files at once. The files and
+  directories to decode follow the options; if there are none, their names
+  are read from <CODE>stdin</CODE>, one per line. In a directory, all
+  files ending in &quot;<CODE>.hqx</CODE>&quot; are decoded. The forks
+  are written next to each file with the names from its BinHex header,
+  or in the directory given with <CODE>-o &lt;dir&gt;</CODE>.
+  <CODE>-j &lt;n&gt;</CODE> sets the number of files decoded at the
+  same time. <CODE>-d</CODE>, <CODE>-r</CODE>, <CODE>-s</CODE> and
+  <CODE>-t</CODE> work as above, except that <CODE>-t</CODE> only shows
+  the files whose CRCs are wrong; the other options are ignored. A
+  summary is printed at the end.
+
   </MENU>
 
  @author Erwin Bolwidt
@@ -71,6 +98,11 @@ public class DeBinHex
 
     public static void main(String[] args) throws Exception
     {
+        if(findOption("-b", args))
+        {
+            batch(args);
+            return;
+        }
         String inFile = findValueOption("-f", args);
         InputStream binhexIn = System.in;
         if(inFile != null)
@@ -90,6 +122,13 @@ public class DeBinHex
             action(binhexIn, true, false, null, false, null);
             return;
         }
+        if(findOption("-t", args))
+        {
+            CRCStatus status = verify(binhexIn);
+            if(!status.isValid())
+                System.exit(1);
+            return;
+        }
         String dataFile = null;
         String resourceFile = null;
         boolean doData = false;
@@ -106,9 +145,61 @@ public class DeBinHex
             // The user didn't specify anything to do, so let's do the data
             // fork.
             doData = true;
-        action(binhexIn, false, doData, dataFile, doResource, resourceFile);
+        action(binhexIn, false, doData, dataFile, doResource, resourceFile,
+                findOption("-s", args));
     }
 
+    /**
+     Decodes the files and directories named on the command line, or listed
+     one per line on stdin if there are none, with a BatchDecoder.
+     */
+    private static void batch(String[] args) throws Exception
+    {
+        boolean doResource = findOption("-r", args);
+        boolean doData = findOption("-d", args) || !doResource;
+        BatchDecoder decoder = new BatchDecoder(doData, doResource);
+        String threads = findValueOption("-j", args);
+        if(threads != null)
+            decoder.setThreads(Integer.parseInt(threads));
+        decoder.setSync(findOption("-s", args));
+        decoder.setVerifyOnly(findOption("-t", args));
+        String outputDirectory = findValueOption("-o", args);
+        if(outputDirectory != null)
+            decoder.setOutputDirectory(Paths.get(outputDirectory));
+
+        List<Path> inputs = new ArrayList<Path>();
+        for(int i = 0; i < args.length; i++)
+        {
+            if(valueOptions.contains(args[i]))
+                i++;
+            else if(!args[i].startsWith("-"))
+                inputs.add(Paths.get(args[i]));
+        }
+        Iterable<Path> list = inputs;
+        if(inputs.isEmpty())
+        {
+            final BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+            list = new Iterable<Path>() {
+                public Iterator<Path> iterator()
+                {
+                    return in.lines().filter(line -> !line.trim().isEmpty())
+                            .map(line -> Paths.get(line.trim())).iterator();
+                }
+            };
+        }
+
+        BatchDecoder.Summary summary = decoder.run(list);
+        System.out.println(summary);
+        if(summary.getCRCFailures() + summary.getFailures() > 0)
+            System.exit(1);
+    }
+
+    /**
+     The options that are followed by a value.
+     */
+    private final static List<String> valueOptions =
+            Arrays.asList("-f", "-u", "-df", "-rf", "-j", "-o");
+
     private static String findValueOption(String name, String[] args)
     {
         for(int i = 0; i < args.length; i++)
@@ -140,6 +231,19 @@ public class DeBinHex
             InputStream binhexIn, boolean justHeader,
             boolean doData, String dataOut,
             boolean doResource, String resourceOut) throws IOException
+    {
+        action(binhexIn, justHeader, doData, dataOut, doResource, resourceOut, false);
+    }
+
+    /**
+     Like the other <code>action</code>, but if <code>sync</code> is true,
+     waits until each fork file is on the storage device, like
+     <code>fsync</code>.
+     */
+    public static void action(
+            InputStream binhexIn, boolean justHeader,
+            boolean doData, String dataOut,
+            boolean doResource, String resourceOut, boolean sync) throws IOException
     {
         BinHex4InputStream binhex;
 
@@ -151,19 +255,100 @@ public class DeBinHex
             return;
         }
 
+        extract(binhex, doData, dataOut, doResource, resourceOut, sync);
+    }
+
+    /**
+     Checks the CRCs of a BinHex file without writing anything, and prints
+     the stored and the calculated CRC of each section.
+     */
+    public static CRCStatus verify(InputStream binhexIn) throws IOException
+    {
+        BinHex4InputStream binhex = new BinHex4InputStream(binhexIn);
+        try {
+            CRCStatus status = binhex.verify();
+            System.out.println(binhex.getHeader().getFileName());
+            print("header", status.getHeaderCRC(), status.getCalculatedHeaderCRC());
+            print("data fork", status.getDataForkCRC(), status.getCalculatedDataForkCRC());
+            print("resource fork", status.getResourceForkCRC(), status.getCalculatedResourceForkCRC());
+            System.out.println(status.isValid() ? "OK" : "CRC error");
+            return status;
+        } finally {
+            binhex.close();
+        }
+    }
+
+    private static void print(String section, int stored, int calculated)
+    {
+        System.out.println(String.format("  %-14s stored %04x, calculated %04x%s",
+                section + ":", stored, calculated, stored == calculated ? "" : "  <- wrong"));
+    }
+
+    /**
+     Writes the forks of <code>binhex</code> to files. A null file name
+     means the name from the BinHex header, with &quot;.resource&quot;
+     appended for the resource fork. If <code>sync</code> is true, each
+     file is on the storage device before this returns.
+     */
+    static void extract(BinHex4InputStream binhex,
+            boolean doData, String dataOut,
+            boolean doResource, String resourceOut, boolean sync) throws IOException
+    {
         String fileName = binhex.getHeader().getFileName();
 
         if(doData && dataOut == null)
-            dataOut = fileName;
+            dataOut = dataFileName(fileName);
 
         if(doResource && resourceOut == null)
-            resourceOut = fileName.concat(".resource");
+            resourceOut = resourceFileName(fileName);
+
+        if(doData && doResource)
+        {
+            // Both forks in one pass, straight to their files. The resource
+            // fork's file is only created when decoding gets there, so that
+            // nothing is created for it if the data fork fails.
+            final ForkOutput dataStream = new ForkOutput(dataOut, sync);
+            final String resourceFile = resourceOut;
+            final ForkOutput[] resourceStream = new ForkOutput[1];
+            try {
+                binhex.decode(new BinHexHandler() {
+                    public void header(BinHex4InputStream.Header header) { }
+                    public void dataFork(ByteBuffer chunk) throws IOException
+                    {
+                        dataStream.write(chunk);
+                    }
+                    public void resourceFork(ByteBuffer chunk) throws IOException
+                    {
+                        openResource().write(chunk);
+                    }
+                    public void end(CRCStatus crcStatus) throws IOException
+                    {
+                        // An empty resource fork still gets its file
+                        openResource();
+                    }
+                    private ForkOutput openResource() throws IOException
+                    {
+                        if(resourceStream[0] == null)
+                            resourceStream[0] = new ForkOutput(resourceFile, sync);
+                        return resourceStream[0];
+                    }
+                });
+            } finally {
+                try {
+                    if(resourceStream[0] != null)
+                        resourceStream[0].close();
+                } finally {
+                    dataStream.close();
+                }
+            }
+            return;
+        }
 
         if(doData)
         {
-            FileOutputStream out = new FileOutputStream(dataOut);
+            ForkOutput out = new ForkOutput(dataOut, sync);
             try {
-                pump(binhex, out);
+                out.copy(binhex);
             } finally {
                 out.close();
             }
@@ -171,26 +356,34 @@ public class DeBinHex
 
         if(doResource)
         {
-            FileOutputStream out = new FileOutputStream(resourceOut);
+            // Get past the data fork first, so that nothing is created if
+            // that fails
             binhex.useResourceFork();
+            ForkOutput out = new ForkOutput(resourceOut, sync);
             try {
-                pump(binhex, out);
+                out.copy(binhex);
             } finally {
                 out.close();
             }
         }
     }
 
-    private static void pump(InputStream in, OutputStream out) throws IOException
+    /**
+     The name of the file the data fork is written to, from the file name in
+     the BinHex header.
+     */
+    static String dataFileName(String fileName)
     {
-        byte[] buf = new byte[1024];
-        while(true)
-        {
-            int r = in.read(buf);
-            if(r <= 0)
-                return;
-            out.write(buf, 0, r);
-        }
+        return fileName;
+    }
+
+    /**
+     The name of the file the resource fork is written to, from the file name
+     in the BinHex header.
+     */
+    static String resourceFileName(String fileName)
+    {
+        return fileName.concat(".resource");
     }
 
 }
@@ -0,0 +1,381 @@
+/*
+  JBinHex
+  Copyright (C) 2026, the JBinHex contributors
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License
+  as published by the Free Software Foundation; either version 2
+  of the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+*/
+
+package org.gjt.convert.binhex;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.gjt.convert.binhex.BinHex4InputStream.Header;
+
+/**
+ A cache of decoded BinHex files on local disk, keyed by the content of the
+ encoded file. When the same file arrives again, its forks and header come
+ straight from the cache instead of being decoded again.
+ <p>
+ The key is the SHA-256 digest of the encoded bytes together with their
+ length. It is calculated while the input is read, which is faster than
+ decoding, and decoding only happens on a miss. A cryptographic digest is
+ used because the encoded files may come from anyone: with a plain 64-bit
+ hash, a crafted file could be made to collide with another one and be
+ served the other one's forks.
+ <p>
+ Each entry is a directory with the header and both forks. When the
+ entries together are bigger than the maximum size, the least recently
+ used ones are removed. Entries survive a restart; their last use is
+ remembered in the modification time of their directory.
+ <p>
+ Instances are safe for use by multiple threads, but only one instance
+ should use a directory at a time.
+
+ @author JBinHex contributors
+ */
+public class DecodeCache {
+
+    private final static String headerFile = "header";
+    private final static String dataFile = "data";
+    private final static String resourceFile = "resource";
+
+    /**
+     The outcome of <code>decode</code>: the decoded file, which may have
+     come from the cache.
+     */
+    public static final class Result
+    {
+        Result(Header header, Path entry, String key, boolean hit)
+        {
+            this.header = header;
+            this.entry = entry;
+            this.key = key;
+            this.hit = hit;
+        }
+
+        /**
+         Returns true if the file was served from the cache without being
+         decoded.
+         */
+        public boolean isCacheHit()
+        {
+            return hit;
+        }
+
+        /**
+         Returns the key of the encoded file in the cache.
+         */
+        public String getKey()
+        {
+            return key;
+        }
+
+        public Header getHeader()
+        {
+            return header;
+        }
+
+        /**
+         Opens the decoded data fork. Read it soon: an entry that is evicted
+         while its forks are open can't be opened anymore.
+         */
+        public InputStream openDataFork() throws IOException
+        {
+            return Files.newInputStream(entry.resolve(dataFile));
+        }
+
+        /**
+         Opens the decoded resource fork, like <code>openDataFork</code>.
+         */
+        public InputStream openResourceFork() throws IOException
+        {
+            return Files.newInputStream(entry.resolve(resourceFile));
+        }
+
+        private final Header header;
+        private final Path entry;
+        private final String key;
+        private final boolean hit;
+    }
+
+    /**
+     Opens a cache in a directory, which is created if it doesn't exist.
+     Entries that are already there are kept, as far as they fit in
+     <code>maxSize</code>.
+
+     @param maxSize
+            the maximum number of bytes of the decoded forks in the cache
+     */
+    public DecodeCache(Path directory, long maxSize) throws IOException
+    {
+        if(maxSize < 0)
+            throw new IllegalArgumentException("maxSize must not be negative");
+        this.directory = Files.createDirectories(directory);
+        this.maxSize = maxSize;
+
+        List<Path> found = new ArrayList<Path>();
+        try(DirectoryStream<Path> dir = Files.newDirectoryStream(directory))
+        {
+            for(Path entry : dir)
+            {
+                if(entry.getFileName().toString().startsWith("tmp-"))
+                    // Left by a crash
+                    delete(entry);
+                else if(isComplete(entry))
+                    found.add(entry);
+                else if(Files.exists(entry.resolve(headerFile))
+                        || Files.exists(entry.resolve(dataFile))
+                        || Files.exists(entry.resolve(resourceFile)))
+                    // Damaged after it was moved in place
+                    delete(entry);
+            }
+        }
+        final Map<Path, FileTime> used = new HashMap<Path, FileTime>();
+        for(Path entry : found)
+            used.put(entry, Files.getLastModifiedTime(entry));
+        found.sort((a, b) -> used.get(a).compareTo(used.get(b)));
+        for(Path entry : found)
+            add(entry.getFileName().toString(), size(entry));
+        evict();
+    }
+
+    /**
+     Returns the decoded BinHex file in <code>encoded</code>, from the cache
+     if the same encoded bytes were decoded before, otherwise by decoding
+     them and adding the result to the cache. The stream is read to its end,
+     but not closed.
+     */
+    public Result decode(InputStream encoded) throws IOException
+    {
+        Path spool = Files.createTempFile(directory, "tmp-", ".hqx");
+        try {
+            MessageDigest hash = newDigest();
+            long length = 0;
+            try(OutputStream out = Files.newOutputStream(spool))
+            {
+                byte[] b = new byte[DecoderOptions.defaultInputBufferSize];
+                int r;
+                while((r = encoded.read(b)) > 0)
+                {
+                    hash.update(b, 0, r);
+                    out.write(b, 0, r);
+                    length += r;
+                }
+            }
+            return lookup(key(hash, length), spool);
+        } finally {
+            Files.deleteIfExists(spool);
+        }
+    }
+
+    /**
+     Like <code>decode(InputStream)</code>, for an encoded file that is
+     already on disk, so it needs no copy.
+     */
+    public Result decode(Path encoded) throws IOException
+    {
+        MessageDigest hash = newDigest();
+        long length = 0;
+        try(InputStream in = Files.newInputStream(encoded))
+        {
+            byte[] b = new byte[DecoderOptions.defaultInputBufferSize];
+            int r;
+            while((r = in.read(b)) > 0)
+            {
+                hash.update(b, 0, r);
+                length += r;
+            }
+        }
+        return lookup(key(hash, length), encoded);
+    }
+
+    /**
+     Returns the number of times a file was served from the cache.
+     */
+    public synchronized long getHits()
+    {
+        return hits;
+    }
+
+    /**
+     Returns the number of times a file had to be decoded.
+     */
+    public synchronized long getMisses()
+    {
+        return misses;
+    }
+
+    /**
+     Returns the number of bytes of the decoded forks in the cache.
+     */
+    public synchronized long getSize()
+    {
+        return size;
+    }
+
+    private Result lookup(String key, Path encoded) throws IOException
+    {
+        Path entry = directory.resolve(key);
+        synchronized(this)
+        {
+            if(entries.get(key) != null)
+            {
+                Header header = readHeader(entry);
+                Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+                hits++;
+                return new Result(header, entry, key, true);
+            }
+            misses++;
+        }
+
+        // Decode outside the lock, into a directory of its own, and move it
+        // in place when it is complete.
+        Path tmp = Files.createTempDirectory(directory, "tmp-");
+        Header header;
+        try {
+            BinHex4InputStream binhex = new BinHex4InputStream(encoded);
+            try {
+                header = binhex.getHeader();
+                DeBinHex.extract(binhex, true, tmp.resolve(dataFile).toString(),
+                        true, tmp.resolve(resourceFile).toString(), false);
+            } finally {
+                binhex.close();
+            }
+            Files.write(tmp.resolve(headerFile), header.toBytes());
+
+            synchronized(this)
+            {
+                if(entries.get(key) == null)
+                {
+                    try {
+                        Files.move(tmp, entry, StandardCopyOption.ATOMIC_MOVE);
+                    } catch(FileAlreadyExistsException e)
+                    {
+                        // Left by an earlier instance, but not in the index
+                        delete(entry);
+                        Files.move(tmp, entry, StandardCopyOption.ATOMIC_MOVE);
+                    }
+                    add(key, header.getDataLength() + header.getResourceLength());
+                    evict();
+                }
+            }
+        } finally {
+            delete(tmp);
+        }
+        return new Result(header, entry, key, false);
+    }
+
+    private static MessageDigest newDigest()
+    {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch(NoSuchAlgorithmException e) {
+            // Every Java platform has SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String key(MessageDigest hash, long length)
+    {
+        StringBuilder sb = new StringBuilder();
+        for(byte b : hash.digest())
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        return sb.append('-').append(length).toString();
+    }
+
+    private static Header readHeader(Path entry) throws IOException
+    {
+        return new Header(new ByteArrayInputStream(Files.readAllBytes(entry.resolve(headerFile))));
+    }
+
+    private void add(String key, long entrySize)
+    {
+        entries.put(key, entrySize);
+        size += entrySize;
+    }
+
+    /**
+     Removes the least recently used entries until the rest fits. The most
+     recently used entry stays, even if it doesn't fit on its own, so that
+     the Result that was just made for it can be read.
+     */
+    private void evict() throws IOException
+    {
+        Iterator<Map.Entry<String, Long>> i = entries.entrySet().iterator();
+        while(size > maxSize && entries.size() > 1)
+        {
+            Map.Entry<String, Long> e = i.next();
+            i.remove();
+            size -= e.getValue();
+            delete(directory.resolve(e.getKey()));
+        }
+    }
+
+    private static boolean isComplete(Path entry)
+    {
+        return Files.isRegularFile(entry.resolve(headerFile))
+                && Files.isRegularFile(entry.resolve(dataFile))
+                && Files.isRegularFile(entry.resolve(resourceFile));
+    }
+
+    private static long size(Path entry) throws IOException
+    {
+        return Files.size(entry.resolve(dataFile)) + Files.size(entry.resolve(resourceFile));
+    }
+
+    /**
+     Deletes a file, or a directory with the files in it.
+     */
+    private static void delete(Path path) throws IOException
+    {
+        if(Files.isDirectory(path))
+        {
+            try(DirectoryStream<Path> dir = Files.newDirectoryStream(path))
+            {
+                for(Path file : dir)
+                    Files.deleteIfExists(file);
+            }
+        }
+        Files.deleteIfExists(path);
+    }
+
+    private final Path directory;
+    private final long maxSize;
+
+    /**
+     The size of each entry, the least recently used first.
+     */
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+    private long size;
+    private long hits;
+    private long misses;
+}
@@ -0,0 +1,176 @@
+/*
+  JBinHex
+  Copyright (C) 2026, the JBinHex contributors
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License
+  as published by the Free Software Foundation; either version 2
+  of the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+*/
+
+package org.gjt.convert.binhex;
+
+/**
+ Settings for the buffers and the CRC engine of a decoder. An options object
+ can be shared by any number of decoders, as long as it is not changed while
+ they are in use.
+ <pre>
+    DecoderOptions options = new DecoderOptions();
+    options.setInputBufferSize(64 * 1024);
+    options.setBufferPool(new BufferPool.PerThread(4));
+    BinHex4InputStream in = new BinHex4InputStream(source, false, options);
+ </pre>
+
+ @author JBinHex contributors
+ */
+public class DecoderOptions {
+
+    /**
+     The default size of buffers that hold encoded input.
+     */
+    public final static int defaultInputBufferSize = HqxDecoder.sz_streamBuf;
+
+    /**
+     The default size of buffers that hold decoded output.
+     */
+    public final static int defaultOutputBufferSize = 8 * 1024;
+
+    /**
+     Returns the size of the buffers that encoded input is read into.
+     */
+    public int getInputBufferSize()
+    {
+        return inputBufferSize;
+    }
+
+    /**
+     Sets the size of the buffers that encoded input is read into. Bigger
+     buffers mean fewer read calls on the source stream.
+     */
+    public void setInputBufferSize(int inputBufferSize)
+    {
+        if(inputBufferSize <= 0)
+            throw new IllegalArgumentException("buffer size must be positive");
+        this.inputBufferSize = inputBufferSize;
+    }
+
+    /**
+     Returns the size of the buffers that decoded bytes are written into
+     internally, when skipping and when pushing chunks to a BinHexHandler.
+     */
+    public int getOutputBufferSize()
+    {
+        return outputBufferSize;
+    }
+
+    /**
+     Sets the size of the buffers that decoded bytes are written into
+     internally. This is also the largest chunk that a BinHexHandler gets.
+     */
+    public void setOutputBufferSize(int outputBufferSize)
+    {
+        if(outputBufferSize <= 0)
+            throw new IllegalArgumentException("buffer size must be positive");
+        this.outputBufferSize = outputBufferSize;
+    }
+
+    /**
+     Returns the pool that buffers are taken from.
+     */
+    public BufferPool getBufferPool()
+    {
+        return bufferPool;
+    }
+
+    /**
+     Sets the pool that buffers are taken from and given back to when a
+     decoder is closed. The default, <code>BufferPool.allocating</code>,
+     does not pool.
+     */
+    public void setBufferPool(BufferPool bufferPool)
+    {
+        if(bufferPool == null)
+            throw new NullPointerException("bufferPool");
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     Returns the engine that calculates the CRCs.
+     */
+    public CRC16 getCRC16()
+    {
+        return crc16;
+    }
+
+    /**
+     Sets the engine that calculates the CRCs.
+     */
+    public void setCRC16(CRC16 crc16)
+    {
+        if(crc16 == null)
+            throw new NullPointerException("crc16");
+        this.crc16 = crc16;
+    }
+
+    /**
+     Returns true if decoding from a stream is spread over several threads.
+     */
+    public boolean isPipelined()
+    {
+        return pipelined;
+    }
+
+    /**
+     If true, a BinHex4InputStream constructed from an InputStream reads its
+     source on one thread, decodes on another, and hands the decoded bytes
+     to the thread that reads the stream, through small rings of blocks of
+     the input and output buffer sizes. This speeds up decoding of big files
+     on machines with spare cores, especially with buffer sizes of 64 KB or
+     more. Exceptions are still thrown by the stream's methods. The buffer
+     pool is not used for the rings. The default is false.
+     */
+    public void setPipelined(boolean pipelined)
+    {
+        this.pipelined = pipelined;
+    }
+
+    /**
+     Returns the maximum number of bytes that are searched for the BinHex4
+     id line.
+     */
+    public long getMaxHeaderScan()
+    {
+        return maxHeaderScan;
+    }
+
+    /**
+     Sets the maximum number of bytes before the "(This file must be
+     converted with BinHex" line. If the line doesn't start within this
+     distance, decoding fails with an EOFException, so that input that is
+     not BinHex4 is rejected without reading all of it. The default is
+     <code>Long.MAX_VALUE</code>, no limit. Not used for Hqx8 data, which
+     has no id line.
+     */
+    public void setMaxHeaderScan(long maxHeaderScan)
+    {
+        if(maxHeaderScan < 0)
+            throw new IllegalArgumentException("maximum must not be negative");
+        this.maxHeaderScan = maxHeaderScan;
+    }
+
+    private boolean     pipelined;
+    private long        maxHeaderScan = Long.MAX_VALUE;
+    private int         inputBufferSize = defaultInputBufferSize;
+    private int         outputBufferSize = defaultOutputBufferSize;
+    private BufferPool  bufferPool = BufferPool.allocating;
+    private CRC16       crc16 = CRC16.getDefault();
+}
@@ -0,0 +1,117 @@
+/*
+  JBinHex
+  Copyright (C) 2026, the JBinHex contributors
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License
+  as published by the Free Software Foundation; either version 2
+  of the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+*/
+
+package org.gjt.convert.binhex;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ The digests a decoder calculates over the data fork and the resource fork
+ while it decodes them, a decoded block at a time. A fork only gets its
+ digests if it was decoded from its first byte to its last in order.
+
+ @author JBinHex contributors
+ */
+final class ForkDigests {
+
+    /**
+     @param algorithms
+            MessageDigest algorithm names, such as "SHA-256" or "MD5", or
+            <code>XXHash64.algorithm</code>
+     */
+    ForkDigests(String[] algorithms) throws NoSuchAlgorithmException
+    {
+        this.algorithms = algorithms.clone();
+        for(int f = 0; f < digests.length; f++)
+        {
+            digests[f] = new MessageDigest[algorithms.length];
+            for(int i = 0; i < algorithms.length; i++)
+                digests[f][i] = XXHash64.algorithm.equalsIgnoreCase(algorithms[i])
+                        ? new XXHash64() : MessageDigest.getInstance(algorithms[i]);
+        }
+    }
+
+    /**
+     Adds decoded bytes of a fork.
+     */
+    void update(int section, byte[] b, int off, int len)
+    {
+        int f = section - HqxDecoder.sectionDataFork;
+        if(!valid[f])
+            return;
+        for(MessageDigest digest : digests[f])
+            digest.update(b, off, len);
+    }
+
+    /**
+     Called when the last byte of a fork was decoded.
+     */
+    void end(int section)
+    {
+        int f = section - HqxDecoder.sectionDataFork;
+        if(!valid[f])
+            return;
+        results[f] = new byte[algorithms.length][];
+        for(int i = 0; i < algorithms.length; i++)
+            results[f][i] = digests[f][i].digest();
+        valid[f] = false;
+    }
+
+    /**
+     Starts over on a fork, which will get its digests if decoding
+     continues from its first byte.
+     */
+    void restart(int section, boolean atStart)
+    {
+        int f = section - HqxDecoder.sectionDataFork;
+        for(MessageDigest digest : digests[f])
+            digest.reset();
+        valid[f] = atStart;
+        if(atStart)
+            results[f] = null;
+    }
+
+    /**
+     Returns a digest of a completed fork, or null if the fork was not
+     completely decoded in order, or the algorithm was not asked for.
+     */
+    byte[] get(int section, String algorithm)
+    {
+        byte[][] result = results[section - HqxDecoder.sectionDataFork];
+        if(result != null)
+        {
+            for(int i = 0; i < algorithms.length; i++)
+            {
+                if(algorithms[i].equalsIgnoreCase(algorithm))
+                    return result[i].clone();
+            }
+        }
+        return null;
+    }
+
+    private final String[] algorithms;
+    private final MessageDigest[][] digests = new MessageDigest[2][];
+    private final boolean[] valid = { true, true };
+
+    /**
+     The digests of each completed fork, in the order of the algorithms.
+     */
+    private final byte[][][] results = new byte[2][][];
+}
@@ -0,0 +1,147 @@
+/*
+  JBinHex
+  Copyright (C) 2026, the JBinHex contributors
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License
+  as published by the Free Software Foundation; either version 2
+  of the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+*/
+
+package org.gjt.convert.binhex;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ Writes a decoded fork to a file through a FileChannel, in big batches, so
+ that a fork of gigabytes takes a few thousand write calls instead of
+ millions.
+ <p>
+ The batch buffers come from a pool shared by all instances, so decoding
+ many files after each other doesn't allocate one for each.
+
+ @author JBinHex contributors
+ */
+class ForkOutput implements Closeable {
+
+    /**
+     The size of the batches that are written.
+     */
+    final static int sz_batch = 1024 * 1024;
+
+    /**
+     The batch buffers of the instances that were closed.
+     */
+    private final static BufferPool pool = new BufferPool.Shared(16);
+
+    /**
+     Opens a file for a fork, replacing it if it exists.
+
+     @param sync
+            if true, <code>close</code> waits until the file's content is
+            on the storage device
+     */
+    ForkOutput(String file, boolean sync) throws IOException
+    {
+        channel = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        this.sync = sync;
+        buffer = ByteBuffer.wrap(pool.acquire(sz_batch));
+    }
+
+    /**
+     Writes the remaining bytes of <code>chunk</code>.
+     */
+    void write(ByteBuffer chunk) throws IOException
+    {
+        if(buffer.position() == 0 && chunk.remaining() >= buffer.capacity())
+        {
+            // Already a big batch; no need to copy it.
+            writeFully(chunk);
+            return;
+        }
+        while(chunk.hasRemaining())
+        {
+            int n = Math.min(chunk.remaining(), buffer.remaining());
+            ByteBuffer part = chunk.duplicate();
+            part.limit(part.position() + n);
+            buffer.put(part);
+            chunk.position(chunk.position() + n);
+            if(!buffer.hasRemaining())
+                flush();
+        }
+    }
+
+    /**
+     Copies the rest of the current fork of <code>in</code>, reading
+     straight into the batch buffer.
+     */
+    void copy(InputStream in) throws IOException
+    {
+        while(true)
+        {
+            if(!buffer.hasRemaining())
+                flush();
+            int r = in.read(buffer.array(), buffer.position(), buffer.remaining());
+            if(r <= 0)
+                return;
+            buffer.position(buffer.position() + r);
+        }
+    }
+
+    /**
+     Writes what is buffered and closes the file.
+     */
+    public void close() throws IOException
+    {
+        if(closed)
+            return;
+        closed = true;
+        try {
+            flush();
+            if(sync)
+                channel.force(true);
+        } finally {
+            channel.close();
+            pool.release(buffer.array());
+        }
+    }
+
+    private void flush() throws IOException
+    {
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+    }
+
+    private void writeFully(ByteBuffer b) throws IOException
+    {
+        while(b.hasRemaining())
+            written += channel.write(b, written);
+    }
+
+    private final FileChannel channel;
+    private final boolean sync;
+    private final ByteBuffer buffer;
+    private boolean closed;
+
+    /**
+     The number of bytes written to the file so far.
+     */
+    private long written;
+}
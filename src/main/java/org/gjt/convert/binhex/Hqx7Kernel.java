@@ -0,0 +1,90 @@
+/*
+  JBinHex
+  Copyright (C) 2026, the JBinHex contributors
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License
+  as published by the Free Software Foundation; either version 2
+  of the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+*/
+
+package org.gjt.convert.binhex;
+
+import java.nio.ByteBuffer;
+
+/**
+ The inner loop of Hqx7 decoding: turns runs of valid characters into 8-bit
+ bytes, four characters into three bytes at a time. Anything else, such as
+ line breaks, the closing : or illegal characters, is left to the caller's
+ slow path.
+ <p>
+ This is the version for Java 8, which looks up one character at a time.
+ The jar is a multi-release jar; on Java 9 and later a version of this
+ class from <code>META-INF/versions/9</code> is used instead, which checks
+ and packs eight characters at a time in a long. Setting the system
+ property <code>org.gjt.convert.binhex.scalar</code> to true makes that
+ version use this loop too, for comparison.
+
+ @author JBinHex contributors
+ */
+final class Hqx7Kernel {
+
+    /**
+     Describes the implementation, for diagnostics and benchmarks.
+     */
+    final static String name = "scalar";
+
+    private Hqx7Kernel()
+    {
+    }
+
+    /**
+     Decodes groups of four valid characters from <code>in</code> into
+     <code>out</code>, starting at <code>pos</code>. Stops at the first group
+     that contains anything else, when less than four characters are left,
+     when the output has no room for another three bytes, or, if
+     <code>stopAtRLE</code> is true, at a group that decodes to the RLE
+     character 0x90. The input position is advanced past the groups that
+     were decoded.
+
+     @return
+        the index in <code>out</code> after the last byte written
+     */
+    static int decode(ByteBuffer in, byte[] out, int pos, int max, boolean stopAtRLE)
+    {
+        final byte[] table = Hqx7_to_Hqx8InputStream.sixBitTable;
+        final int invalid = Hqx7_to_Hqx8InputStream.invalidEntry;
+        final int rle = RLE_CRCInputStream.rleChar;
+        int p = in.position();
+        for(int last = in.limit() - 4; p <= last && max - pos >= 3; p += 4)
+        {
+            int v0 = table[in.get(p) & 0x7f];
+            int v1 = table[in.get(p + 1) & 0x7f];
+            int v2 = table[in.get(p + 2) & 0x7f];
+            int v3 = table[in.get(p + 3) & 0x7f];
+            // Valid entries are 0..63, so only invalidEntry has bit 6 set.
+            if(((v0 | v1 | v2 | v3) & invalid) != 0)
+                break;
+            int b0 = (v0 << 2) | (v1 >>> 4);
+            int b1 = ((v1 << 4) | (v2 >>> 2)) & 0xff;
+            int b2 = ((v2 << 6) | v3) & 0xff;
+            if(stopAtRLE && (b0 == rle || b1 == rle || b2 == rle))
+                break;
+            out[pos] = (byte)b0;
+            out[pos + 1] = (byte)b1;
+            out[pos + 2] = (byte)b2;
+            pos += 3;
+        }
+        in.position(p);
+        return pos;
+    }
+}
@@ -23,6 +23,7 @@ import java.io.EOFException;
 import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 
 /**
  Converts a 7-bit encoded binhex4.0 data stream to a 8-bit encoded
@@ -30,11 +31,11 @@ import java.io.InputStream;
  a resource fork, and still needs to have any Run-Length Encoded (RLE) 
  sequences expanded.
  <p>
- This class does not (yet) support segmented files. It
- is however very liberal about whitespace: any is allowed. So you could cat
- all segmented files together and remove the "--- end of part NN ---" and
- the beginning-of-next-part identifier "---" lines from the resulting file
- before decoding.
+ This class does not support segmented files itself. It is however very
+ liberal about whitespace: any is allowed. So segmented files can be read
+ through SegmentedHqxInputStream, which joins the parts and removes the
+ "--- end of part NN ---" and the beginning-of-next-part identifier "---"
+ lines.
 
  @author Erwin Bolwidt
  */
@@ -92,39 +93,139 @@ public class Hqx7_to_Hqx8InputStream extends FilterInputStream {
     public Hqx7_to_Hqx8InputStream(InputStream source)
     {
         super(source);
+        streamBuffer = new byte[sz_streamBuf];
     }
 
-    private void skipHeader() throws IOException
+    /**
+     Constructs a Hqx7_to_Hqx8InputStream whose stream buffer comes from the
+     pool of <code>options</code>, and goes back to it on close.
+     */
+    public Hqx7_to_Hqx8InputStream(InputStream source, DecoderOptions options)
     {
-        int b, c = nextStreamByte();
+        super(source);
+        pool = options.getBufferPool();
+        streamBuffer = pool.acquire(options.getInputBufferSize());
+        maxHeaderScan = options.getMaxHeaderScan();
+    }
 
-        while(true)
+    /**
+     Finds the first ( in the remaining bytes of <code>in</code> that is at
+     the start of a line, which is where the id line can start. Only the
+     bytes around a ( are looked at more closely, so long stretches of text
+     before the id line are skipped quickly. The position of
+     <code>in</code> is not changed.
+
+     @param prev
+            the byte before the position of <code>in</code>, or a line
+            break at the start of the input
+     @return
+        the index of the (, or -1 if there is none
+     */
+    static int findIdStart(ByteBuffer in, int prev)
+    {
+        int from = in.position(), to = in.limit();
+        if(in.hasArray())
         {
-            for(int i = 0, l = binhexHeaderId.length(); c != -1; c = nextStreamByte(), i++)
+            final byte[] b = in.array();
+            final int off = in.arrayOffset();
+            for(int i = from + off, max = to + off; i < max; i++)
             {
-                if(i == l) {
-                    skipHeaderAfterId();
-                    return;
+                while(b[i] != '(')
+                {
+                    if(++i == max)
+                        return -1;
                 }
-                if(c != binhexHeaderId.charAt(i))
-                    // Try again at the next line.
-                    break;
+                if(isLineBreak(i == from + off ? prev : b[i - 1]))
+                    return i - off;
             }
+            return -1;
+        }
+        for(int i = from; i < to; i++)
+        {
+            if(in.get(i) == '(' && isLineBreak(i == from ? prev : in.get(i - 1)))
+                return i;
+        }
+        return -1;
+    }
 
-            if(c == -1)
-                throw new EOFException("Couldn't find start of Hqx7 part");
+    private static boolean isLineBreak(int b)
+    {
+        return b == '\n' || b == '\r';
+    }
 
-            do {
-                b = nextStreamByte();
-                if(b == -1)
-                    throw new EOFException("Couldn't find start of Hqx7 part");
-            } while(b != '\n' && b != '\r');
+    public void close() throws IOException
+    {
+        if(pool != null)
+        {
+            pool.release(streamBuffer);
+            pool = null;
+        }
+        // The buffer may be in use by another stream by now
+        streamBuffer = null;
+        streamView = null;
+        super.close();
+    }
 
-            c = nextStreamByte();
-            // Allow MS-DOS type linebreaks too
-            if(c == '\n' && b == '\r')
-                c = nextStreamByte();
+    public long skip(long n) throws IOException
+    {
+        ensureOpen();
+        return super.skip(n);
+    }
+
+    private void ensureOpen() throws IOException
+    {
+        if(streamBuffer == null)
+            throw new IOException("Stream closed");
+    }
+
+    private void skipHeader() throws IOException
+    {
+        long scanned = 0;
+        int prev = '\n';
 
+        while(true)
+        {
+            // Make sure the buffer has data, without consuming it
+            if(nextStreamByte() == -1)
+                throw new EOFException("Couldn't find start of Hqx7 part");
+            sbIndex--;
+
+            if(streamView == null)
+                streamView = ByteBuffer.wrap(streamBuffer);
+            streamView.limit(sbFilled);
+            streamView.position(sbIndex);
+            int p = findIdStart(streamView, prev);
+            int end = (p == -1) ? sbFilled : p;
+            scanned += end - sbIndex;
+            if(scanned > maxHeaderScan)
+                throw new EOFException("Couldn't find start of Hqx7 part in the first "
+                        + maxHeaderScan + " bytes");
+            if(p == -1)
+            {
+                prev = streamBuffer[sbFilled - 1];
+                sbIndex = sbFilled;
+                continue;
+            }
+
+            sbIndex = p;
+            int c = -1;
+            for(int i = 0, l = binhexHeaderId.length(); i < l; i++)
+            {
+                c = nextStreamByte();
+                if(c == -1)
+                    throw new EOFException("Couldn't find start of Hqx7 part");
+                if(c != binhexHeaderId.charAt(i))
+                    break;
+                scanned++;
+                if(i == l - 1)
+                {
+                    skipHeaderAfterId();
+                    return;
+                }
+            }
+            // Try again at the next line.
+            scanned++;
+            prev = c;
         }
     }
 
@@ -242,6 +343,7 @@ public class Hqx7_to_Hqx8InputStream extends FilterInputStream {
 
     public int read() throws IOException
     {
+        ensureOpen();
         if(!headerDone)
         {
             skipHeader();
@@ -267,6 +369,7 @@ public class Hqx7_to_Hqx8InputStream extends FilterInputStream {
 
     public int read(byte[] b, int off, int len) throws IOException
     {
+        ensureOpen();
         if(!headerDone)
         {
             skipHeader();
@@ -283,8 +386,19 @@ public class Hqx7_to_Hqx8InputStream extends FilterInputStream {
             return -1;
         }
 
-        for(int i = off, max = off+len; i < max; i++)
+        for(int i = off, max = off+len; i < max; )
         {
+            // Fast path: whole groups of four characters straight from the
+            // stream buffer. Only possible when no bits are pending.
+            if(bitsLeft == 0 && !hardEOF)
+            {
+                i = decodeQuads(b, i, max);
+                if(i == max)
+                    break;
+            }
+
+            // Slow path: line breaks, the closing : character, illegal
+            // characters and groups that straddle the stream buffer end.
             int t = nextDecodedByte();
             if(t == -1) {
                 if(i == off)
@@ -293,11 +407,36 @@ public class Hqx7_to_Hqx8InputStream extends FilterInputStream {
                 seenEOF = true;
                 return i - off;
             }
-            b[i] = (byte)t;
+            b[i++] = (byte)t;
         }
         return len;
     }
 
+    /**
+     Decodes as many groups of four valid characters into three bytes as
+     possible, directly from the stream buffer. Stops at the first group
+     that contains anything else (whitespace, the : delimiter or an illegal
+     character), when less than four characters are buffered, or when the
+     output has no room for another three bytes. The caller's slow path
+     deals with whatever stopped it.
+
+     @return
+        the index in <code>b</code> after the last byte written
+     */
+    private int decodeQuads(byte[] b, int i, int max)
+    {
+        if(sbFilled - sbIndex < 4)
+            return i;
+        if(streamView == null)
+            streamView = ByteBuffer.wrap(streamBuffer);
+        streamView.limit(sbFilled);
+        streamView.position(sbIndex);
+        // Only whole groups go to the kernel, so bitBuffer stays empty.
+        i = Hqx7Kernel.decode(streamView, b, i, max, false);
+        sbIndex = streamView.position();
+        return i;
+    }
+
     /**
      A buffer for a maximum of two times six bits.
      */
@@ -310,7 +449,22 @@ public class Hqx7_to_Hqx8InputStream extends FilterInputStream {
     /**
      Bytes that were read from the stream but not all yet processed.
      */
-    private byte[]  streamBuffer = new byte[sz_streamBuf];
+    private byte[]  streamBuffer;
+
+    /**
+     Where streamBuffer came from, if it must be given back.
+     */
+    private BufferPool pool;
+
+    /**
+     streamBuffer as a ByteBuffer, for Hqx7Kernel.
+     */
+    private ByteBuffer streamView;
+
+    /**
+     How far to look for the id line, from the options.
+     */
+    private long    maxHeaderScan = Long.MAX_VALUE;
 
     /**
      The next byte in the stream buffer to process.
@@ -0,0 +1,277 @@
+/*
+  JBinHex
+  Copyright (C) 2026, the JBinHex contributors
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License
+  as published by the Free Software Foundation; either version 2
+  of the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+*/
+
+package org.gjt.convert.binhex;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ Converts a 8-bit encoded binhex4.0 data stream to a 7-bit encoded data
+ stream; the reverse of Hqx7_to_Hqx8InputStream. The 8-bit data must
+ already be Run-Length Encoded and contain the CRCs.
+ <p>
+ The id line "(This file must be converted with BinHex 4.0)" and the :
+ that starts the data are written before the first byte, and lines are
+ wrapped at 64 characters. <code>finish</code> or <code>close</code>
+ write the last bits and the closing :. Bytes are packed three at a time
+ into four characters, into a buffer that is written to the underlying
+ stream in one call when it is full.
+
+ @author JBinHex contributors
+ */
+public class Hqx8_to_Hqx7OutputStream extends FilterOutputStream {
+
+    /**
+     The id line, including the version that this class writes.
+     */
+    final static String binhexHeaderLine = Hqx7_to_Hqx8InputStream.binhexHeaderId + " 4.0)";
+
+    /**
+     The number of characters on a line, including the : on the first and
+     last lines.
+     */
+    final static int    lineLength = 64;
+
+    /**
+     The size of the buffer for encoded characters.
+     */
+    final static int    sz_streamBuf = 4096;
+
+    /**
+     Maps 6-bit values to characters.
+     */
+    final static byte[] charTable = Hqx7_to_Hqx8InputStream.validChars.getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     Constructs a Hqx8_to_Hqx7OutputStream that writes lines ending in a
+     newline character to <code>out</code>.
+     */
+    public Hqx8_to_Hqx7OutputStream(OutputStream out)
+    {
+        this(out, "\n");
+    }
+
+    /**
+     Constructs a Hqx8_to_Hqx7OutputStream that writes lines ending in
+     <code>lineSeparator</code> to <code>out</code>, for example "\r" for
+     classic Macintosh files or "\r\n" for mail.
+     */
+    public Hqx8_to_Hqx7OutputStream(OutputStream out, String lineSeparator)
+    {
+        super(out);
+        this.lineSeparator = lineSeparator.getBytes(StandardCharsets.US_ASCII);
+        streamBuffer = new byte[sz_streamBuf];
+        // Room for a group of four characters and a line separator
+        sbLimit = streamBuffer.length - 4 - this.lineSeparator.length;
+        if(sbLimit < 0)
+            throw new IllegalArgumentException("line separator too long");
+    }
+
+    /**
+     Constructs a stream that continues the lines of another one at
+     character <code>position</code> after the first :, without writing
+     the id line. Writing the bytes of a file in pieces, each through such
+     a stream that starts at a group of three bytes, gives the same
+     characters as writing them through one stream. <code>finish</code> is
+     for the last piece only.
+     */
+    Hqx8_to_Hqx7OutputStream(OutputStream out, String lineSeparator, long position)
+    {
+        this(out, lineSeparator);
+        started = true;
+        column = (int)((position + 1) % lineLength);
+    }
+
+    public void write(int b) throws IOException
+    {
+        singleByte[0] = (byte)b;
+        write(singleByte, 0, 1);
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+        if(finished)
+            throw new IOException("Stream already finished");
+        if(!started)
+            start();
+
+        int i = off, max = off + len;
+        // Complete a group that was started by an earlier call
+        while(i < max && bitsLeft != 0)
+            addByte(b[i++]);
+
+        final byte[] table = charTable;
+        for(int last = max - 3; i <= last; i += 3)
+        {
+            int v = ((b[i] & 0xff) << 16) | ((b[i + 1] & 0xff) << 8) | (b[i + 2] & 0xff);
+            if(sbFilled > sbLimit)
+                flushBuffer();
+            if(column <= lineLength - 4)
+            {
+                // The whole group fits on the line
+                streamBuffer[sbFilled] = table[v >>> 18];
+                streamBuffer[sbFilled + 1] = table[(v >>> 12) & 0x3f];
+                streamBuffer[sbFilled + 2] = table[(v >>> 6) & 0x3f];
+                streamBuffer[sbFilled + 3] = table[v & 0x3f];
+                sbFilled += 4;
+                column += 4;
+                if(column == lineLength)
+                    newLine();
+            }
+            else
+            {
+                putChar(v >>> 18);
+                putChar((v >>> 12) & 0x3f);
+                putChar((v >>> 6) & 0x3f);
+                putChar(v & 0x3f);
+            }
+        }
+
+        while(i < max)
+            addByte(b[i++]);
+    }
+
+    /**
+     Writes the buffered characters to the underlying stream and flushes
+     it. Bits of an incomplete group stay behind until more bytes come.
+     */
+    public void flush() throws IOException
+    {
+        flushBuffer();
+        out.flush();
+    }
+
+    /**
+     Writes the last bits and the closing :, without closing the underlying
+     stream. Nothing can be written after this.
+     */
+    public void finish() throws IOException
+    {
+        if(finished)
+            return;
+        if(!started)
+            start();
+        if(bitsLeft > 0)
+            putChar((bitBuffer << (6 - bitsLeft)) & 0x3f);
+        putByte(':');
+        putBytes(lineSeparator);
+        finished = true;
+        flush();
+    }
+
+    public void close() throws IOException
+    {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void start() throws IOException
+    {
+        started = true;
+        putBytes(binhexHeaderLine.getBytes(StandardCharsets.US_ASCII));
+        putBytes(lineSeparator);
+        putByte(':');
+        column = 1;
+    }
+
+    /**
+     Adds one byte to the bit buffer, and writes the characters that are
+     complete.
+     */
+    private void addByte(byte b) throws IOException
+    {
+        bitBuffer = (bitBuffer << 8) | (b & 0xff);
+        bitsLeft += 8;
+        while(bitsLeft >= 6)
+        {
+            bitsLeft -= 6;
+            putChar((bitBuffer >>> bitsLeft) & 0x3f);
+        }
+    }
+
+    private void putChar(int v) throws IOException
+    {
+        putByte(charTable[v]);
+        if(++column == lineLength)
+            newLine();
+    }
+
+    private void newLine() throws IOException
+    {
+        putBytes(lineSeparator);
+        column = 0;
+    }
+
+    private void putByte(int b) throws IOException
+    {
+        if(sbFilled == streamBuffer.length)
+            flushBuffer();
+        streamBuffer[sbFilled++] = (byte)b;
+    }
+
+    private void putBytes(byte[] b) throws IOException
+    {
+        for(int i = 0; i < b.length; i++)
+            putByte(b[i]);
+    }
+
+    private void flushBuffer() throws IOException
+    {
+        if(sbFilled > 0)
+        {
+            out.write(streamBuffer, 0, sbFilled);
+            sbFilled = 0;
+        }
+    }
+
+    private final byte[] lineSeparator;
+
+    /**
+     Encoded characters that have not been written yet.
+     */
+    private final byte[] streamBuffer;
+    private int         sbFilled;
+
+    /**
+     Above this fill level, a group and a line break might not fit anymore.
+     */
+    private final int   sbLimit;
+
+    /**
+     The bits of an incomplete group of three bytes.
+     */
+    private int         bitBuffer;
+    private int         bitsLeft;
+
+    /**
+     The number of characters on the current line.
+     */
+    private int         column;
+
+    private boolean     started;
+    private boolean     finished;
+
+    private final byte[] singleByte = new byte[1];
+}
@@ -0,0 +1,1094 @@
+/*
+  JBinHex
+  Copyright (C) 2026, the JBinHex contributors
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License
+  as published by the Free Software Foundation; either version 2
+  of the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+*/
+
+package org.gjt.convert.binhex;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.gjt.convert.binhex.BinHex4InputStream.Header;
+
+/**
+ Decoding engine that does everything the chain of Hqx7_to_Hqx8InputStream,
+ RLE_CRCInputStream and BinHex4InputStream does, in a single pass over a
+ single input buffer: finding the start of the Hqx7 part, 6-bit unpacking,
+ 0x90 run-length expansion, CRC calculation and keeping track of the header,
+ data fork and resource fork sections.
+ <p>
+ The engine is resumable at any input byte. The core method,
+ <code>decode</code>, consumes whatever is available in a ByteBuffer and
+ writes the decoded bytes of the current fork straight into the caller's
+ array. The pull methods (<code>readHeader</code>, <code>read</code>,
+ <code>skipSection</code>) are built on top of it and refill the input
+ buffer from an InputStream when it runs dry.
+ <p>
+ One call to <code>decode</code> never crosses a section boundary, so all
+ bytes it returns belong to the section that was current when it was called.
+
+ @author JBinHex contributors
+ */
+class HqxDecoder {
+    final static int sectionHeader = 0;
+    final static int sectionDataFork = 1;
+    final static int sectionResourceFork = 2;
+    final static int sectionEnd = 3;
+
+    /**
+     States of the search for the BinHex identification line.
+     */
+    private final static int scanMatchId = 0;
+    private final static int scanSkipLine = 1;
+    private final static int scanIdLine = 2;
+    private final static int scanColon = 3;
+    private final static int scanDone = 4;
+
+    /**
+     The size of the input buffer in pull mode.
+     */
+    final static int    sz_streamBuf = 1024;
+
+    /**
+     Header length apart from the file name: the name length byte itself is
+     not included; version, type, creator, flags and the two fork lengths are.
+     */
+    final static int headerFixedLength = 1 + 4 + 4 + 2 + 4 + 4;
+
+    final static int    rleChar = RLE_CRCInputStream.rleChar;
+
+    /**
+     Constructs an engine in push mode. The caller supplies the input to
+     <code>decode</code>.
+
+     @param eightBit
+            if true, the input is 8-bit data in Hqx8 format.
+            If false, the input is 7-bit data in Hqx7 format.
+     */
+    HqxDecoder(boolean eightBit)
+    {
+        this(eightBit, defaultOptions);
+    }
+
+    /**
+     Constructs an engine in push mode that uses the CRC engine and output
+     buffers that <code>options</code> specifies.
+     */
+    HqxDecoder(boolean eightBit, DecoderOptions options)
+    {
+        this.eightBit = eightBit;
+        this.options = options;
+        crc16 = options.getCRC16();
+        scanState = eightBit ? scanDone : scanMatchId;
+    }
+
+    /**
+     Constructs an engine in pull mode that reads its input from the
+     supplied source.
+     */
+    HqxDecoder(InputStream source, boolean eightBit)
+    {
+        this(source, eightBit, defaultOptions);
+    }
+
+    /**
+     Constructs an engine in pull mode that reads its input from the
+     supplied source, with buffers and CRC engine from <code>options</code>.
+     */
+    HqxDecoder(InputStream source, boolean eightBit, DecoderOptions options)
+    {
+        this(new HqxSource.Stream(source, options), eightBit, options);
+    }
+
+    /**
+     Constructs an engine in pull mode that gets its input buffers from the
+     supplied source.
+     */
+    HqxDecoder(HqxSource source, boolean eightBit)
+    {
+        this(source, eightBit, defaultOptions);
+    }
+
+    HqxDecoder(HqxSource source, boolean eightBit, DecoderOptions options)
+    {
+        this(eightBit, options);
+        this.source = source;
+        input = ByteBuffer.allocate(0);
+    }
+
+    /**
+     Returns the section that the next decoded bytes belong to.
+     */
+    int section()
+    {
+        return section;
+    }
+
+    /**
+     How many content bytes of the current section remain to be decoded. When
+     this is 0 but the section is still current, its CRC has not been read
+     yet.
+     */
+    long sectionLeft()
+    {
+        return sectionLeft;
+    }
+
+    /**
+     Returns the header, or null if the header section has not been completely
+     decoded yet.
+     */
+    Header getHeader()
+    {
+        return header;
+    }
+
+    /**
+     True once the closing : character was decoded.
+     */
+    boolean isEndSeen()
+    {
+        return endSeen;
+    }
+
+    /**
+     Selects the engine that calculates the CRCs.
+     */
+    void setCRC16(CRC16 crc16)
+    {
+        this.crc16 = crc16;
+    }
+
+    /**
+     Decodes as much of <code>in</code> as possible. Decoded bytes of a fork
+     are written to <code>out</code>; header bytes and CRCs are kept
+     internally. Returns when <code>len</code> bytes were written, when the
+     input is exhausted, when the closing : was found, or right after the CRC
+     of a section was checked.
+
+     @return
+        the number of bytes written to <code>out</code>
+     @exception IOException
+        on illegal characters and CRC mismatches
+     */
+    int decode(ByteBuffer in, byte[] out, int off, int len) throws IOException
+    {
+        if(scanState != scanDone && !scanHeader(in))
+            return 0;
+
+        int pos = off, max = off + len;
+        while(section != sectionEnd)
+        {
+            if(sectionLeft == 0)
+            {
+                // All content of this section is there, now its CRC
+                crcFill += expand(in, crcBuf, crcFill, 2 - crcFill);
+                if(crcFill == 2)
+                {
+                    endSection();
+                    if(source != null && section != sectionEnd)
+                    {
+                        // Only of use when there is a way back to it
+                        if(source.isSeekable())
+                            forkStart[section] = checkpoint(in);
+                        alignCheckpoint();
+                    }
+                }
+                break;
+            }
+
+            if(section == sectionHeader)
+            {
+                int n = expand(in, headerBuf, headerFill, (int)sectionLeft);
+                if(n == 0)
+                    break;
+                crc = crc16.update(crc, headerBuf, headerFill, n);
+                if(headerFill == 0)
+                    // Only now that the file name length is known, so is
+                    // the length of the whole header
+                    sectionLeft += (headerBuf[0] & 0xff) + headerFixedLength;
+                headerFill += n;
+                sectionLeft -= n;
+                continue;
+            }
+
+            long want = Math.min(max - pos, sectionLeft);
+            if(index != null && source != null)
+            {
+                // Stop exactly at every checkpoint position
+                long forkPos = forkLength() - sectionLeft;
+                if(forkPos == nextCheckpoint)
+                {
+                    index.add(checkpoint(in));
+                    nextCheckpoint += index.getInterval();
+                }
+                want = Math.min(want, nextCheckpoint - forkPos);
+            }
+
+            int n = expand(in, out, pos, (int)want);
+            if(n == 0)
+                break;
+            if(checkForkCRCs)
+                crc = crc16.update(crc, out, pos, n);
+            if(digests != null)
+                digests.update(section, out, pos, n);
+            pos += n;
+            sectionLeft -= n;
+            if(pos == max && sectionLeft != 0)
+                break;
+        }
+        return pos - off;
+    }
+
+    /**
+     In pull mode, finds the : that starts the Hqx7 data and returns the
+     offset in the source right after it. Nothing after it is decoded.
+     */
+    long findBody() throws IOException
+    {
+        if(!findArchive())
+            throw endOfInput();
+        return source.offset() + input.position();
+    }
+
+    /**
+     In pull mode, searches for the id line and the : after it.
+
+     @return
+        false if the end of the input was reached without finding them
+     */
+    boolean findArchive() throws IOException
+    {
+        while(scanState != scanDone && !scanHeader(input))
+        {
+            ByteBuffer next = source.next();
+            if(next == null)
+                return false;
+            input = next;
+        }
+        return true;
+    }
+
+    /**
+     Prepares for decoding the next BinHex4 file from the same input, right
+     after the current one. The input that was already read is kept.
+     */
+    void nextArchive()
+    {
+        reset();
+        // Whatever follows the current file is not the start of a line
+        scanPrev = ':';
+    }
+
+    /**
+     If false, the CRCs of the forks are neither calculated nor checked,
+     because the caller does that itself; <code>storedCRC</code> still gets
+     the CRCs from the file. The header's CRC is always checked.
+     */
+    void setCheckForkCRCs(boolean checkForkCRCs)
+    {
+        this.checkForkCRCs = checkForkCRCs;
+    }
+
+    /**
+     If false, a fork whose CRC doesn't match is not an error: its CRCs are
+     only recorded in <code>calculatedCRC</code> and <code>storedCRC</code>,
+     and decoding goes on with the next section.
+     */
+    void setFailOnForkCRC(boolean failOnForkCRC)
+    {
+        this.failOnForkCRC = failOnForkCRC;
+    }
+
+    /**
+     Makes this decoder update <code>digests</code> with the decoded bytes
+     of the forks. A fork that is already partly decoded gets no digests.
+     */
+    void setDigests(ForkDigests digests)
+    {
+        this.digests = digests;
+        for(int fork = sectionDataFork; fork <= sectionResourceFork; fork++)
+        {
+            if(section > fork || (section == fork && sectionLeft < forkLength()))
+                digests.restart(fork, false);
+        }
+    }
+
+    ForkDigests getDigests()
+    {
+        return digests;
+    }
+
+    /**
+     Reads the header section in pull mode, if that has not happened yet.
+     */
+    Header readHeader() throws IOException
+    {
+        while(section == sectionHeader)
+        {
+            decode(input, null, 0, 0);
+            if(section == sectionHeader)
+                fill();
+        }
+        return header;
+    }
+
+    /**
+     Reads decoded bytes of the current fork in pull mode. If the last byte
+     of the fork is read, its CRC is checked before this method returns.
+
+     @return
+        the number of bytes read, which is 0 if the current section has
+        already been completely read
+     */
+    int read(byte[] b, int off, int len) throws IOException
+    {
+        int fork = section;
+        int n = 0;
+        while(true)
+        {
+            n += decode(input, b, off + n, len - n);
+            if(section != fork)
+                return n;
+            if(sectionLeft > 0 && (n > 0 || len == 0))
+                return n;
+            fill();
+        }
+    }
+
+    /**
+     Skips up to <code>n</code> decoded bytes of the current fork in pull
+     mode. Run-length encoded sequences are not expanded: a run, and the
+     sequences right after it that repeat the same byte, are skipped in one
+     step, and the CRC is advanced over them arithmetically. If the skip
+     reaches the end of the fork, its CRC is checked before this method
+     returns.
+
+     @return
+        the number of bytes skipped
+     */
+    long skip(long n) throws IOException
+    {
+        if(skipBuffer == null)
+            skipBuffer = acquireBuffer();
+        int fork = section;
+        n = Math.min(n, sectionLeft);
+        long skipped = 0;
+        // Runs must be expanded for the digests
+        skipping = digests == null;
+        try {
+            while(skipped < n)
+            {
+                if(rleRepeat > 0 && skipping)
+                {
+                    long limit = n - skipped;
+                    if(index != null && source != null)
+                        // Don't jump over a checkpoint position
+                        limit = Math.min(limit, nextCheckpoint - (forkLength() - sectionLeft));
+                    if(limit > 0)
+                    {
+                        long k = skipRuns(input, limit);
+                        sectionLeft -= k;
+                        skipped += k;
+                        continue;
+                    }
+                }
+                // Literal bytes are decoded as usual; expand stops at the
+                // start of the next run.
+                int r = decode(input, skipBuffer, 0, (int)Math.min(skipBuffer.length, n - skipped));
+                skipped += r;
+                if(r == 0 && rleRepeat == 0)
+                    fill();
+            }
+        } finally {
+            skipping = false;
+        }
+
+        if(sectionLeft == 0)
+        {
+            while(section == fork)
+            {
+                decode(input, null, 0, 0);
+                if(section == fork)
+                    fill();
+            }
+        }
+        return skipped;
+    }
+
+    /**
+     Skips the rest of the current section in pull mode, including checking
+     its CRC.
+     */
+    void skipSection() throws IOException
+    {
+        if(section == sectionDataFork || section == sectionResourceFork)
+        {
+            skip(sectionLeft);
+            return;
+        }
+        if(skipBuffer == null)
+            skipBuffer = acquireBuffer();
+        for(int fork = section; section == fork; )
+            read(skipBuffer, 0, skipBuffer.length);
+    }
+
+    /**
+     The state of a decoder at a point between two decoded bytes of a fork,
+     including the offset in the encoded data where decoding continues from
+     that point. Restoring it on a decoder with a seekable source continues
+     decoding there, without decoding everything before it.
+     */
+    static final class Checkpoint
+    {
+        long    offset;
+        int     bitBuffer;
+        int     bitsLeft;
+        boolean rleMarker;
+        int     lastByte;
+        int     rleRepeat;
+        int     section;
+        long    sectionLeft;
+        int     crc;
+
+        /**
+         The position in the fork, in decoded bytes.
+         */
+        long    position;
+    }
+
+    /**
+     True if the source in pull mode supports <code>restore</code>.
+     */
+    boolean isSeekable()
+    {
+        return source != null && source.isSeekable();
+    }
+
+    /**
+     Returns the checkpoint at the start of a fork, or null if decoding
+     hasn't got there yet. Only recorded in pull mode, from a seekable
+     source.
+     */
+    Checkpoint forkStart(int section)
+    {
+        return forkStart[section];
+    }
+
+    /**
+     Returns the current state in pull mode.
+     */
+    Checkpoint checkpoint()
+    {
+        return checkpoint(input);
+    }
+
+    private Checkpoint checkpoint(ByteBuffer in)
+    {
+        Checkpoint cp = new Checkpoint();
+        cp.offset = source.offset() + in.position();
+        // Only the unused bits matter
+        cp.bitBuffer = bitBuffer & ((1 << bitsLeft) - 1);
+        cp.bitsLeft = bitsLeft;
+        cp.rleMarker = rleMarker;
+        cp.lastByte = lastByte;
+        cp.rleRepeat = rleRepeat;
+        cp.section = section;
+        cp.sectionLeft = sectionLeft;
+        cp.crc = crc;
+        cp.position = forkLength() - sectionLeft;
+        return cp;
+    }
+
+    /**
+     Continues decoding from a checkpoint in pull mode. The source must be
+     seekable. The header is needed to know the lengths of the forks; a
+     decoder that decoded the header itself passes its own.
+     */
+    void restore(Checkpoint cp, Header header) throws IOException
+    {
+        if(cp.section != sectionDataFork && cp.section != sectionResourceFork)
+            throw new IllegalArgumentException("Checkpoint not in a fork");
+        source.seek(cp.offset);
+        input = ByteBuffer.allocate(0);
+        this.header = header;
+        scanState = scanDone;
+        endSeen = false;
+        bitBuffer = cp.bitBuffer;
+        bitsLeft = cp.bitsLeft;
+        rleMarker = cp.rleMarker;
+        lastByte = cp.lastByte;
+        rleRepeat = cp.rleRepeat;
+        section = cp.section;
+        sectionLeft = cp.sectionLeft;
+        crc = cp.crc;
+        crcFill = 0;
+        if(digests != null)
+            digests.restart(section, cp.position == 0);
+        alignCheckpoint();
+    }
+
+    /**
+     Forgets all state, so that this engine can decode another BinHex4 file
+     in push mode. Buffers are kept.
+     */
+    void reset()
+    {
+        scanState = eightBit ? scanDone : scanMatchId;
+        idIndex = 0;
+        scanPrev = '\n';
+        headerScanned = 0;
+        bitBuffer = 0;
+        bitsLeft = 0;
+        endSeen = false;
+        rleMarker = false;
+        lastByte = 0;
+        rleRepeat = 0;
+        section = sectionHeader;
+        sectionLeft = 1;
+        crc = 0;
+        crcFill = 0;
+        Arrays.fill(calculatedCRC, 0);
+        Arrays.fill(storedCRC, 0);
+        if(digests != null)
+        {
+            digests.restart(sectionDataFork, true);
+            digests.restart(sectionResourceFork, true);
+        }
+        headerFill = 0;
+        header = null;
+        Arrays.fill(forkStart, null);
+        index = null;
+        nextCheckpoint = 0;
+    }
+
+    /**
+     Forgets all state and continues in pull mode with another stream as
+     the source. If the current source is a stream too, its buffer is
+     reused. The current source is not closed.
+     */
+    void reset(InputStream in)
+    {
+        if(source instanceof HqxSource.Stream)
+            ((HqxSource.Stream)source).reset(in);
+        else
+        {
+            source = new HqxSource.Stream(in, options);
+            input = ByteBuffer.allocate(0);
+        }
+        reset();
+    }
+
+    /**
+     Makes this decoder add checkpoints to an index while it decodes the
+     forks in pull mode.
+     */
+    void setSeekIndex(SeekIndex index)
+    {
+        this.index = index;
+        alignCheckpoint();
+    }
+
+    /**
+     Makes nextCheckpoint the first multiple of the index interval at or
+     after the current fork position.
+     */
+    private void alignCheckpoint()
+    {
+        if(index == null || source == null
+                || (section != sectionDataFork && section != sectionResourceFork))
+            return;
+        long interval = index.getInterval();
+        long forkPos = forkLength() - sectionLeft;
+        nextCheckpoint = (forkPos + interval - 1) / interval * interval;
+    }
+
+    /**
+     The length of the current fork.
+     */
+    private long forkLength()
+    {
+        if(section == sectionDataFork)
+            return header.dataLength;
+        else if(section == sectionResourceFork)
+            return header.resourceLength;
+        return 0;
+    }
+
+    /**
+     Closes the source in pull mode.
+     */
+    void close() throws IOException
+    {
+        if(skipBuffer != null)
+        {
+            releaseBuffer(skipBuffer);
+            skipBuffer = null;
+        }
+        if(source != null)
+            source.close();
+    }
+
+    /**
+     Returns an output buffer from the pool of the options.
+     */
+    byte[] acquireBuffer()
+    {
+        return options.getBufferPool().acquire(options.getOutputBufferSize());
+    }
+
+    /**
+     Gives a buffer from <code>acquireBuffer</code> back to the pool.
+     */
+    void releaseBuffer(byte[] buffer)
+    {
+        options.getBufferPool().release(buffer);
+    }
+
+    /**
+     Makes more input available in pull mode, or throws the exception that
+     the chain of streams would have thrown at this point.
+     */
+    private void fill() throws IOException
+    {
+        if(endSeen)
+            throw endOfData();
+
+        ByteBuffer next = source.next();
+        if(next == null)
+            throw endOfInput();
+        input = next;
+    }
+
+    /**
+     The exception for reaching the physical end of the input before all
+     sections were decoded.
+     */
+    EOFException endOfInput()
+    {
+        if(eightBit)
+        {
+            // For Hqx8 data the end of the stream is the end of the data
+            endSeen = true;
+            return endOfData();
+        }
+        if(scanState != scanDone)
+            return new EOFException("Couldn't find start of Hqx7 part");
+        if(endSeen)
+            return endOfData();
+        return new EOFException(
+                "EOF reached before closing : character. "
+                + "Possible data corruption.");
+    }
+
+    /**
+     The exception for running out of data before all sections were decoded.
+     */
+    EOFException endOfData()
+    {
+        if(rleMarker)
+            return new EOFException(
+                    "Corrupted Hqx8 stream, EOF just after a "
+                    + "0x90 RLE char.");
+        if(section == sectionHeader && sectionLeft > 0)
+            return new EOFException("In Hqx header");
+        if(sectionLeft == 0)
+            return new EOFException("Unexpected");
+        return new EOFException("Physical end-of-file before end of fork");
+    }
+
+    /**
+     Called when the CRC of the current section has been read.
+     */
+    private void endSection() throws IOException
+    {
+        int readCRC = ((crcBuf[0] & 0xff) << 8) | (crcBuf[1] & 0xff);
+        crcFill = 0;
+        calculatedCRC[section] = crc;
+        storedCRC[section] = readCRC;
+        if(crc != readCRC && (section == sectionHeader || checkForkCRCs && failOnForkCRC))
+            throw new CRCException(section, crc, readCRC);
+
+        if(section == sectionHeader)
+            header = new Header(new ByteArrayInputStream(headerBuf, 0, headerFill));
+        else if(digests != null)
+            digests.end(section);
+
+        crc = 0;
+        section++;
+        if(section == sectionDataFork)
+            sectionLeft = header.dataLength;
+        else if(section == sectionResourceFork)
+            sectionLeft = header.resourceLength;
+        else
+            sectionLeft = 0;
+    }
+
+    /**
+     Looks for the "(This file must be converted with BinHex" line at the
+     start of a line, and the : character that follows it.
+
+     @return
+        true if the : that starts the Hqx7 data was found
+     */
+    private boolean scanHeader(ByteBuffer in) throws IOException
+    {
+        final String id = Hqx7_to_Hqx8InputStream.binhexHeaderId;
+        while(in.hasRemaining())
+        {
+            if(scanState == scanSkipLine || (scanState == scanMatchId && idIndex == 0))
+            {
+                // Go straight to the next line that starts with a (
+                int p = Hqx7_to_Hqx8InputStream.findIdStart(in, scanPrev);
+                int end = (p == -1) ? in.limit() : p;
+                headerScanned += end - in.position();
+                if(headerScanned > options.getMaxHeaderScan())
+                    throw new EOFException("Couldn't find start of Hqx7 part in the first "
+                            + options.getMaxHeaderScan() + " bytes");
+                if(p == -1)
+                {
+                    scanPrev = in.get(end - 1);
+                    in.position(end);
+                    return false;
+                }
+                in.position(p);
+                scanState = scanMatchId;
+                idIndex = 0;
+            }
+
+            int b = in.get() & 0xff;
+            scanPrev = b;
+            switch(scanState)
+            {
+            case scanMatchId:
+                headerScanned++;
+                if(b == id.charAt(idIndex))
+                {
+                    if(++idIndex == id.length())
+                        scanState = scanIdLine;
+                }
+                else if(b == '\n' || b == '\r')
+                    // Empty line or MS-DOS type linebreak
+                    idIndex = 0;
+                else
+                    scanState = scanSkipLine;
+                break;
+            case scanSkipLine:
+                if(b == '\n' || b == '\r')
+                {
+                    idIndex = 0;
+                    scanState = scanMatchId;
+                }
+                break;
+            case scanIdLine:
+                if(b == '\n' || b == '\r')
+                    scanState = scanColon;
+                break;
+            default:
+                if(b == ':')
+                {
+                    scanState = scanDone;
+                    return true;
+                }
+                if(!Character.isWhitespace((char)b))
+                    throw new EOFException("Invalid start of Hqx7 part, no : right after id line");
+            }
+        }
+        return false;
+    }
+
+    /**
+     Skips the pending run and the RLE sequences right after it that repeat
+     the same byte, up to <code>limit</code> bytes, and advances the CRC over
+     all of them at once.
+
+     @return
+        the number of decoded bytes skipped
+     */
+    private long skipRuns(ByteBuffer in, long limit) throws IOException
+    {
+        long n = 0;
+        while(true)
+        {
+            int k = (int)Math.min(rleRepeat, limit - n);
+            n += k;
+            rleRepeat -= k;
+            if(n == limit)
+                break;
+
+            // Look ahead for another 0x90 and count, and undo the look if
+            // that is not what follows.
+            int position = in.position(), buffer = bitBuffer, bits = bitsLeft;
+            boolean end = endSeen;
+            int marker = nextByte(in);
+            int count = (marker == rleChar) ? nextByte(in) : -1;
+            if(count <= 0)
+            {
+                in.position(position);
+                bitBuffer = buffer;
+                bitsLeft = bits;
+                endSeen = end;
+                break;
+            }
+            rleRepeat = (count == 1) ? 1 : count - 1;
+        }
+        crc = CRC16.repeat(crc, lastByte, n);
+        return n;
+    }
+
+    /**
+     Produces up to <code>len</code> bytes of 8-bit data with the run-length
+     encoding expanded. Stops early when the input is exhausted or the
+     closing : was found, and, while skipping, at the start of a run.
+     */
+    private int expand(ByteBuffer in, byte[] out, int off, int len) throws IOException
+    {
+        int pos = off, max = off + len;
+        while(pos < max)
+        {
+            if(rleRepeat > 0)
+            {
+                if(skipping)
+                    // skip takes care of it without expanding
+                    break;
+                // Still busy expanding a run-length-encoding
+                int n = Math.min(rleRepeat, max - pos);
+                Arrays.fill(out, pos, pos + n, (byte)lastByte);
+                pos += n;
+                rleRepeat -= n;
+                continue;
+            }
+
+            if(bitsLeft == 0 && !rleMarker && !eightBit && !endSeen)
+            {
+                pos = expandQuads(in, out, pos, max);
+                if(pos == max)
+                    break;
+            }
+
+            int b = nextByte(in);
+            if(b == -1)
+                break;
+
+            if(rleMarker)
+            {
+                rleMarker = false;
+                if(b == 0)
+                {
+                    // No RLE, just a single 0x90 character. lastByte must be
+                    // set, because 0x90 could itself be subject to RLE
+                    // expansion.
+                    lastByte = rleChar;
+                    out[pos++] = (byte)rleChar;
+                }
+                else
+                    // The first one was already returned as a normal byte.
+                    // A count of 1 is bogus, but RLE_CRCInputStream repeats
+                    // once for it, so this does too.
+                    rleRepeat = (b == 1) ? 1 : b - 1;
+            }
+            else if(b == rleChar)
+                rleMarker = true;
+            else
+            {
+                lastByte = b;
+                out[pos++] = (byte)b;
+            }
+        }
+        return pos - off;
+    }
+
+    /**
+     Fast path of expand: turns groups of valid characters straight into
+     bytes, as long as none of these bytes is the RLE character.
+     */
+    private int expandQuads(ByteBuffer in, byte[] out, int pos, int max)
+    {
+        int start = pos;
+        pos = Hqx7Kernel.decode(in, out, pos, max, true);
+        if(pos != start)
+            lastByte = out[pos - 1] & 0xff;
+        return pos;
+    }
+
+    /**
+     Returns the next 8-bit byte before RLE expansion, or -1 if the input is
+     exhausted or the closing : was found.
+     */
+    private int nextByte(ByteBuffer in) throws IOException
+    {
+        if(eightBit)
+            return in.hasRemaining() ? in.get() & 0xff : -1;
+
+        while(bitsLeft < 8)
+        {
+            if(endSeen || !in.hasRemaining())
+                return -1;
+
+            // The high bit could have been used as a parity bit. Better be sure.
+            int b = in.get() & 0x7f;
+
+            // The : character terminates the stream
+            if(b == ':')
+            {
+                endSeen = true;
+                return -1;
+            }
+            if(Character.isWhitespace((char)b))
+                continue;
+
+            int v = Hqx7_to_Hqx8InputStream.sixBitTable[b];
+            if(v == Hqx7_to_Hqx8InputStream.invalidEntry)
+                throw new IOException(
+                        "Illegal character in Hqx7 stream encountered, "
+                        + "possible data corruption. ('" + (char)b + "')");
+            bitBuffer = (bitBuffer << 6) | v;
+            bitsLeft += 6;
+        }
+        bitsLeft -= 8;
+        return (bitBuffer >>> bitsLeft) & 0xff;
+    }
+
+    /**
+     Options for engines that were constructed without any; never changed.
+     */
+    private final static DecoderOptions defaultOptions = new DecoderOptions();
+
+    /**
+     True if the input is Hqx8 instead of Hqx7.
+     */
+    private final boolean eightBit;
+
+    private final DecoderOptions options;
+
+    /**
+     The source of the input in pull mode, null in push mode.
+     */
+    private HqxSource   source;
+
+    /**
+     The input buffer in pull mode, null in push mode.
+     */
+    private ByteBuffer  input;
+
+    /**
+     Used by skip as a place to decode into, and true while skip runs and
+     may jump over runs.
+     */
+    private byte[]      skipBuffer;
+    private boolean     skipping;
+
+    /**
+     State of the search for the identification line, and how many of its
+     characters matched so far.
+     */
+    private int         scanState;
+    private int         idIndex;
+
+    /**
+     The last byte looked at while searching for the id line, and the number
+     of bytes searched so far. The start of the input counts as the start
+     of a line.
+     */
+    private int         scanPrev = '\n';
+    private long        headerScanned;
+
+    /**
+     A buffer for a maximum of two times six bits, and how many of its bits
+     are still unused.
+     */
+    private int         bitBuffer;
+    private int         bitsLeft;
+
+    /**
+     True once the closing : character was seen.
+     */
+    private boolean     endSeen;
+
+    /**
+     True if the previous 8-bit byte was the RLE character, so that the next
+     one is a repeat count.
+     */
+    private boolean     rleMarker;
+
+    /**
+     The last byte that was produced; the one that an RLE sequence repeats.
+     */
+    private int         lastByte;
+
+    /**
+     How many more times lastByte must be produced.
+     */
+    private int         rleRepeat;
+
+    /**
+     The section that is being decoded, and how many of its content bytes are
+     still to come. The header starts with only its length byte known.
+     */
+    private int         section = sectionHeader;
+    private long        sectionLeft = 1;
+
+    /**
+     The CRC register of the current section, in the form CRC16 keeps it.
+     */
+    private int         crc;
+    private CRC16       crc16;
+    private boolean     checkForkCRCs = true;
+    private boolean     failOnForkCRC = true;
+
+    /**
+     The digests of the forks, if anyone asked for them.
+     */
+    private ForkDigests digests;
+
+    /**
+     The CRC bytes at the end of a section, which may arrive in pieces.
+     */
+    private final byte[] crcBuf = new byte[2];
+    private int         crcFill;
+
+    /**
+     The calculated and stored CRCs of each completed section.
+     */
+    final int[]         calculatedCRC = new int[3];
+    final int[]         storedCRC = new int[3];
+
+    /**
+     Bytes of the header section: length byte, name of at most 255 bytes
+     and the fixed part.
+     */
+    private final byte[] headerBuf = new byte[1 + 255 + headerFixedLength];
+    private int         headerFill;
+
+    private Header      header;
+
+    /**
+     Where the data fork and resource fork start, once known.
+     */
+    private final Checkpoint[] forkStart = new Checkpoint[3];
+
+    /**
+     The index that checkpoints are added to, if any, and the fork position
+     where the next one is due.
+     */
+    private SeekIndex   index;
+    private long        nextCheckpoint;
+}
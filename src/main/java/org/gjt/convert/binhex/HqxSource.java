@@ -0,0 +1,286 @@
+/*
+  JBinHex
+  Copyright (C) 2026, the JBinHex contributors
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License
+  as published by the Free Software Foundation; either version 2
+  of the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+*/
+
+package org.gjt.convert.binhex;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ Supplies encoded data to a HqxDecoder in pull mode, one buffer at a time.
+
+ @author JBinHex contributors
+ */
+abstract class HqxSource {
+
+    /**
+     Returns a buffer with more encoded data, or null if there is no more.
+     The decoder only asks for more after it has consumed all of the
+     previously returned buffer.
+     */
+    abstract ByteBuffer next() throws IOException;
+
+    /**
+     Releases the underlying stream or channel.
+     */
+    abstract void close() throws IOException;
+
+    /**
+     Returns the offset in the encoded data of the first byte of the buffer
+     that <code>next</code> returned last.
+     */
+    abstract long offset();
+
+    /**
+     True if <code>seek</code> is supported.
+     */
+    boolean isSeekable()
+    {
+        return false;
+    }
+
+    /**
+     Makes the next buffer start at the given offset in the encoded data.
+     */
+    void seek(long offset) throws IOException
+    {
+        throw new IOException("Sorry, no random access.");
+    }
+
+    /**
+     Reads from an InputStream into a reused array.
+     */
+    static class Stream extends HqxSource
+    {
+        Stream(InputStream in, int bufferSize)
+        {
+            this(in, bufferSize, BufferPool.allocating);
+        }
+
+        /**
+         Reads into a buffer from the pool of <code>options</code>, which is
+         given back when this source is closed.
+         */
+        Stream(InputStream in, DecoderOptions options)
+        {
+            this(in, options.getInputBufferSize(), options.getBufferPool());
+        }
+
+        private Stream(InputStream in, int bufferSize, BufferPool pool)
+        {
+            this.bufferSize = bufferSize;
+            this.pool = pool;
+            reset(in);
+        }
+
+        /**
+         Starts over with another stream. The buffer is reused, unless this
+         source was closed and gave it back to the pool already.
+         */
+        void reset(InputStream in)
+        {
+            this.in = in;
+            if(buffer == null)
+                buffer = ByteBuffer.wrap(pool.acquire(bufferSize));
+            buffer.limit(0);
+            offset = 0;
+        }
+
+        ByteBuffer next() throws IOException
+        {
+            if(buffer == null)
+                throw new IOException("Stream closed");
+            int r = in.read(buffer.array(), 0, buffer.capacity());
+            if(r <= 0)
+                return null;
+            offset += buffer.limit();
+            buffer.clear();
+            buffer.limit(r);
+            return buffer;
+        }
+
+        void close() throws IOException
+        {
+            if(buffer != null)
+            {
+                pool.release(buffer.array());
+                buffer = null;
+            }
+            in.close();
+        }
+
+        long offset()
+        {
+            return offset;
+        }
+
+        private final int   bufferSize;
+        private final BufferPool pool;
+        private InputStream in;
+        private ByteBuffer  buffer;
+        private long        offset;
+    }
+
+    /**
+     Maps a FileChannel into memory, a window at a time, so that no read
+     calls and no copies are needed. Windows are limited in size because a
+     MappedByteBuffer cannot be larger than 2 GB.
+     */
+    static class Mapped extends HqxSource
+    {
+        /**
+         The default size of the mapped windows.
+         */
+        final static int sz_window = 64 << 20;
+
+        Mapped(FileChannel channel, long position, int windowSize) throws IOException
+        {
+            this(channel, position, windowSize, true);
+        }
+
+        /**
+         @param owner
+                if false, <code>close</code> leaves the channel open, so that
+                several sources can share it
+         */
+        Mapped(FileChannel channel, long position, int windowSize, boolean owner) throws IOException
+        {
+            this.channel = channel;
+            this.position = position;
+            this.windowSize = windowSize;
+            this.owner = owner;
+            offset = position;
+            end = channel.size();
+        }
+
+        ByteBuffer next() throws IOException
+        {
+            if(position >= end)
+                return null;
+            long size = Math.min(windowSize, end - position);
+            // Mapping is positional, so sources sharing a channel don't
+            // disturb each other.
+            ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+            offset = position;
+            position += size;
+            return window;
+        }
+
+        void close() throws IOException
+        {
+            if(owner)
+                channel.close();
+        }
+
+        long offset()
+        {
+            return offset;
+        }
+
+        boolean isSeekable()
+        {
+            return true;
+        }
+
+        void seek(long offset)
+        {
+            position = offset;
+        }
+
+        private final FileChannel channel;
+        private final int   windowSize;
+        private final long  end;
+        private final boolean owner;
+
+        /**
+         The file position where the next window starts, and where the last
+         one started.
+         */
+        private long        position;
+        private long        offset;
+    }
+
+    /**
+     Reads from any SeekableByteChannel into a reused buffer. The channel
+     position is set before every read, under a lock on the channel, so that
+     several sources can share it.
+     */
+    static class Channel extends HqxSource
+    {
+        /**
+         @param owner
+                if false, <code>close</code> leaves the channel open
+         */
+        Channel(SeekableByteChannel channel, long position, int bufferSize, boolean owner)
+        {
+            this.channel = channel;
+            this.position = position;
+            this.owner = owner;
+            offset = position;
+            buffer = ByteBuffer.allocate(bufferSize);
+        }
+
+        ByteBuffer next() throws IOException
+        {
+            buffer.clear();
+            int r;
+            synchronized(channel)
+            {
+                channel.position(position);
+                r = channel.read(buffer);
+            }
+            if(r <= 0)
+                return null;
+            offset = position;
+            position += r;
+            buffer.flip();
+            return buffer;
+        }
+
+        void close() throws IOException
+        {
+            if(owner)
+                channel.close();
+        }
+
+        long offset()
+        {
+            return offset;
+        }
+
+        boolean isSeekable()
+        {
+            return true;
+        }
+
+        void seek(long offset)
+        {
+            position = offset;
+        }
+
+        private final SeekableByteChannel channel;
+        private final ByteBuffer buffer;
+        private final boolean owner;
+        private long        position;
+        private long        offset;
+    }
+}
@@ -0,0 +1,508 @@
+/*
+  JBinHex
+  Copyright (C) 2026, the JBinHex contributors
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License
+  as published by the Free Software Foundation; either version 2
+  of the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+*/
+
+package org.gjt.convert.binhex;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ Decodes a Hqx7 file that is stored in a FileChannel on several threads, for
+ very large files where decoding on one core is too slow.
+ <p>
+ The 6-bit layer of Hqx7 does not depend on what came before, once it is
+ known how many significant characters (characters that are not whitespace)
+ precede a point. So the encoded body is first cut into chunks, and the
+ significant characters in each chunk are counted in parallel. The chunk
+ boundaries are then moved so that each chunk starts at a multiple of four
+ significant characters, which is a multiple of three bytes, and the chunks
+ are decoded to 8-bit data in parallel. The run-length decoding and the
+ splitting into sections happen in one sequential pass over the decoded
+ chunks, which is cheap compared to the rest. The CRCs of the forks are
+ calculated in parallel for each block of output and put together with
+ <code>CRC16.combine</code>.
+ <p>
+ The results, and the exceptions for corrupted data, are the same as those
+ of <code>BinHex4InputStream.decode</code>. Only Hqx7 data is supported:
+ Hqx8 data has no 6-bit layer, and its run-length decoding can't be split.
+ <p>
+ An instance decodes one file, and is not safe for use by multiple threads.
+ <pre>
+    ParallelDecoder decoder = new ParallelDecoder(Paths.get("big.hqx"));
+    try {
+        decoder.decode(handler);
+    } finally {
+        decoder.close();
+    }
+ </pre>
+
+ @author JBinHex contributors
+ */
+public class ParallelDecoder implements Closeable {
+
+    /**
+     The default number of encoded bytes in a chunk.
+     */
+    public final static int defaultChunkSize = 4 << 20;
+
+    /**
+     Opens a file that contains 7-bit Hqx7 encoded data.
+     */
+    public ParallelDecoder(Path path) throws IOException
+    {
+        this(FileChannel.open(path, StandardOpenOption.READ));
+    }
+
+    /**
+     Uses a channel that contains 7-bit Hqx7 encoded data, starting at its
+     current position. The channel is closed when this object is closed.
+     */
+    public ParallelDecoder(FileChannel channel) throws IOException
+    {
+        this(channel, new DecoderOptions());
+    }
+
+    /**
+     Uses a channel that contains 7-bit Hqx7 encoded data, starting at its
+     current position. The channel is closed when this object is closed.
+
+     @param options
+            the output buffer size of the options is the size of the blocks
+            that the CRCs are calculated for, and the largest chunk that the
+            BinHexHandler gets. Blocks of at least 64 KB keep the overhead
+            of the threads low.
+     */
+    public ParallelDecoder(FileChannel channel, DecoderOptions options) throws IOException
+    {
+        this.channel = channel;
+        this.options = options;
+        start = channel.position();
+    }
+
+    /**
+     Sets the number of encoded bytes in a chunk. Each chunk is a task for
+     the pool, so chunks should be big enough to make the overhead of a task
+     small, and small enough that all threads have work.
+     */
+    public void setChunkSize(int chunkSize)
+    {
+        if(chunkSize <= 0)
+            throw new IllegalArgumentException("chunk size must be positive");
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     Sets the pool that runs the tasks. By default, this is the common
+     ForkJoinPool.
+     */
+    public void setPool(ForkJoinPool pool)
+    {
+        this.pool = pool;
+    }
+
+    /**
+     Decodes the whole file and passes the header and both forks to
+     <code>handler</code>, in the same way as
+     <code>BinHex4InputStream.decode</code>.
+
+     @exception IOException
+        on illegal characters and CRC mismatches, from the handler, and
+        if the file can't be read
+     */
+    public void decode(BinHexHandler handler) throws IOException
+    {
+        this.handler = handler;
+        blockIndex = 0;
+        fill = 0;
+        forkCRC = 0;
+        List<Chunk> chunks = split();
+
+        engine = new HqxDecoder(true, options);
+        engine.setCheckForkCRCs(false);
+        int window = 2 * pool.getParallelism();
+        blocks = new byte[window][];
+        ArrayDeque<Future<byte[]>> decoded = new ArrayDeque<Future<byte[]>>();
+        try {
+            for(int i = 0; i < blocks.length; i++)
+                blocks[i] = engine.acquireBuffer();
+            block = blocks[0];
+
+            int next = 0;
+            while(next < chunks.size() && decoded.size() < window)
+                decoded.add(submitDecode(chunks.get(next++)));
+            while(!decoded.isEmpty() && engine.section() != HqxDecoder.sectionEnd)
+            {
+                byte[] hqx8 = join(decoded.poll());
+                if(next < chunks.size())
+                    decoded.add(submitDecode(chunks.get(next++)));
+                feed(ByteBuffer.wrap(hqx8));
+            }
+
+            if(engine.section() != HqxDecoder.sectionEnd)
+            {
+                Chunk last = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+                if(last != null && last.error != null)
+                    throw new IOException(last.error);
+                if(last != null && last.colon)
+                    throw engine.endOfData();
+                throw new EOFException(
+                        "EOF reached before closing : character. "
+                        + "Possible data corruption.");
+            }
+        } finally {
+            for(Future<byte[]> f : decoded)
+                f.cancel(false);
+            for(Pending p : pending)
+                p.crc.cancel(false);
+            pending.clear();
+            for(int i = 0; i < blocks.length; i++)
+            {
+                if(blocks[i] != null)
+                    engine.releaseBuffer(blocks[i]);
+            }
+            blocks = null;
+            block = null;
+        }
+        calculatedCRC[HqxDecoder.sectionHeader] = engine.calculatedCRC[HqxDecoder.sectionHeader];
+        handler.end(new CRCStatus(calculatedCRC, engine.storedCRC));
+    }
+
+    /**
+     Closes the underlying channel.
+     */
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+
+    /**
+     A part of the encoded body. It decodes the significant characters
+     <code>first</code> up to <code>last</code>, counted from the start of
+     the body. Decoding starts at <code>offset</code> in the file, after
+     skipping <code>skip</code> significant characters.
+     */
+    private static class Chunk
+    {
+        long    offset;
+        long    end;
+        long    count;
+        long    first;
+        long    last;
+        long    skip;
+
+        /**
+         True if the closing : is in this chunk; counting stopped there.
+         */
+        boolean colon;
+
+        /**
+         The exception message for an illegal character in this chunk, at
+         which counting stopped, or null.
+         */
+        String  error;
+    }
+
+    /**
+     A block of output of which the CRC is being calculated.
+     */
+    private static class Pending
+    {
+        Future<Integer> crc;
+        int             length;
+    }
+
+    /**
+     Finds the body, cuts it in chunks, and counts their significant
+     characters in parallel. The chunks after the first one that contains
+     the closing : or an illegal character are dropped.
+     */
+    private List<Chunk> split() throws IOException
+    {
+        HqxDecoder scanner = new HqxDecoder(new HqxSource.Mapped(channel, start,
+                HqxSource.Mapped.sz_window, false), false, options);
+        long body = scanner.findBody();
+        scanner.close();
+
+        List<Future<Chunk>> counted = new ArrayList<Future<Chunk>>();
+        for(long offset = body, size = channel.size(); offset < size; offset += chunkSize)
+        {
+            final Chunk chunk = new Chunk();
+            chunk.offset = offset;
+            chunk.end = Math.min(offset + chunkSize, size);
+            counted.add(pool.submit(() -> count(chunk)));
+        }
+
+        List<Chunk> chunks = new ArrayList<Chunk>();
+        long total = 0;
+        try {
+            for(Future<Chunk> f : counted)
+            {
+                Chunk chunk = join(f);
+                chunk.first = total;
+                total += chunk.count;
+                chunks.add(chunk);
+                if(chunk.colon || chunk.error != null)
+                    break;
+            }
+        } finally {
+            for(Future<Chunk> f : counted)
+                f.cancel(false);
+        }
+
+        // Align the boundaries to groups of four characters. Every chunk
+        // but the last ends where the next one starts.
+        for(int i = 0; i < chunks.size(); i++)
+        {
+            Chunk chunk = chunks.get(i);
+            long next = (i + 1 < chunks.size()) ? chunks.get(i + 1).first : total;
+            long first = chunk.first;
+            chunk.first = Math.min((first + 3) & ~3L, total);
+            chunk.skip = chunk.first - first;
+            chunk.last = Math.min((next + 3) & ~3L, total);
+        }
+        return chunks;
+    }
+
+    private Chunk count(Chunk chunk) throws IOException
+    {
+        final byte[] table = Hqx7_to_Hqx8InputStream.sixBitTable;
+        ByteBuffer in = map(chunk.offset, chunk.end);
+        long count = 0;
+        while(in.hasRemaining())
+        {
+            int b = in.get() & 0x7f;
+            if(b == ':')
+            {
+                chunk.colon = true;
+                break;
+            }
+            if(Character.isWhitespace((char)b))
+                continue;
+            if(table[b] == Hqx7_to_Hqx8InputStream.invalidEntry)
+            {
+                chunk.error = "Illegal character in Hqx7 stream encountered, "
+                        + "possible data corruption. ('" + (char)b + "')";
+                break;
+            }
+            count++;
+        }
+        chunk.count = count;
+        return chunk;
+    }
+
+    private Future<byte[]> submitDecode(final Chunk chunk)
+    {
+        return pool.submit(() -> decode(chunk));
+    }
+
+    /**
+     Decodes the significant characters <code>first</code> up to
+     <code>last</code> of a chunk. Counting has made sure that all of them
+     are valid.
+     */
+    private byte[] decode(Chunk chunk) throws IOException
+    {
+        final byte[] table = Hqx7_to_Hqx8InputStream.sixBitTable;
+        long left = chunk.last - chunk.first;
+        byte[] out = new byte[(int)(left * 6 / 8)];
+        if(left == 0)
+            return out;
+        // A chunk that starts in the middle of a group skips the rest of
+        // that group, and may need characters from after its end.
+        ByteBuffer in = map(chunk.offset, channel.size());
+        for(long skip = chunk.skip; skip > 0; )
+        {
+            if(!Character.isWhitespace((char)(in.get() & 0x7f)))
+                skip--;
+        }
+
+        int pos = 0;
+        int bitBuffer = 0, bitsLeft = 0;
+        long done = 0;
+        while(left > 0)
+        {
+            if((done & 3) == 0 && left >= 4)
+            {
+                int n = (Hqx7Kernel.decode(in, out, pos, pos + (int)Math.min(left / 4 * 3, out.length - pos), false) - pos) / 3;
+                pos += n * 3;
+                done += n * 4;
+                left -= n * 4;
+                if(left == 0)
+                    break;
+            }
+            int b = in.get() & 0x7f;
+            if(Character.isWhitespace((char)b))
+                continue;
+            bitBuffer = (bitBuffer << 6) | table[b];
+            bitsLeft += 6;
+            done++;
+            left--;
+            if(bitsLeft >= 8)
+            {
+                bitsLeft -= 8;
+                out[pos++] = (byte)(bitBuffer >>> bitsLeft);
+            }
+        }
+        return out;
+    }
+
+    private ByteBuffer map(long from, long to) throws IOException
+    {
+        return channel.map(FileChannel.MapMode.READ_ONLY, from,
+                Math.min(to - from, Integer.MAX_VALUE));
+    }
+
+    /**
+     The sequential pass: run-length decodes 8-bit data and splits it into
+     sections.
+     */
+    private void feed(ByteBuffer in) throws IOException
+    {
+        while(engine.section() != HqxDecoder.sectionEnd)
+        {
+            int section = engine.section();
+            fill += engine.decode(in, block, fill, block.length - fill);
+            if(engine.section() != section)
+            {
+                if(section == HqxDecoder.sectionHeader)
+                    handler.header(engine.getHeader());
+                else
+                {
+                    flush(section);
+                    endFork(section);
+                }
+            }
+            else if(fill == block.length)
+                flush(section);
+            else if(!in.hasRemaining())
+                return;
+        }
+    }
+
+    /**
+     Passes the current block to the handler and starts calculating its
+     CRC, then continues with the next block.
+     */
+    private void flush(int section) throws IOException
+    {
+        if(fill == 0)
+            return;
+        final byte[] b = block;
+        final int n = fill;
+        final CRC16 crc16 = options.getCRC16();
+        Pending p = new Pending();
+        p.crc = pool.submit(() -> crc16.update(0, b, 0, n));
+        p.length = n;
+        pending.add(p);
+
+        ByteBuffer chunk = ByteBuffer.wrap(b, 0, n);
+        if(section == HqxDecoder.sectionDataFork)
+            handler.dataFork(chunk);
+        else
+            handler.resourceFork(chunk);
+
+        // The oldest block is the one that will be reused
+        blockIndex = (blockIndex + 1) % blocks.length;
+        if(pending.size() == blocks.length)
+            combineOldest();
+        block = blocks[blockIndex];
+        fill = 0;
+    }
+
+    private void combineOldest() throws IOException
+    {
+        Pending p = pending.poll();
+        forkCRC = CRC16.combine(forkCRC, join(p.crc), p.length);
+    }
+
+    private void endFork(int section) throws IOException
+    {
+        while(!pending.isEmpty())
+            combineOldest();
+        int crc = forkCRC;
+        forkCRC = 0;
+        calculatedCRC[section] = crc;
+        int readCRC = engine.storedCRC[section];
+        if(crc != readCRC)
+            throw new CRCException(section, crc, readCRC);
+    }
+
+    /**
+     Waits for a task, and throws the IOException that it threw.
+     */
+    static <T> T join(Future<T> future) throws IOException
+    {
+        try {
+            return future.get();
+        } catch(InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch(ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            // ForkJoinPool wraps checked exceptions of Callables
+            while(cause != null && cause.getClass() == RuntimeException.class
+                    && cause.getCause() != null)
+                cause = cause.getCause();
+            if(cause instanceof IOException)
+                throw (IOException)cause;
+            if(cause instanceof RuntimeException)
+                throw (RuntimeException)cause;
+            if(cause instanceof Error)
+                throw (Error)cause;
+            throw new IOException(cause);
+        }
+    }
+
+    private final FileChannel channel;
+    private final DecoderOptions options;
+
+    /**
+     The position in the channel where the search for the BinHex4 id line
+     starts.
+     */
+    private final long start;
+
+    private int         chunkSize = defaultChunkSize;
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    // State of the sequential pass
+    private BinHexHandler handler;
+    private HqxDecoder  engine;
+    private byte[][]    blocks;
+    private byte[]      block;
+    private int         blockIndex;
+    private int         fill;
+    private int         forkCRC;
+    private final ArrayDeque<Pending> pending = new ArrayDeque<Pending>();
+    private final int[] calculatedCRC = new int[3];
+}
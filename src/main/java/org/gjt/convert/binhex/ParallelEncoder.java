@@ -0,0 +1,390 @@
+/*
+  JBinHex
+  Copyright (C) 2026, the JBinHex contributors
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License
+  as published by the Free Software Foundation; either version 2
+  of the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+*/
+
+package org.gjt.convert.binhex;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.gjt.convert.binhex.BinHex4InputStream.Header;
+
+/**
+ Encodes a file in BinHex4 format on several threads, for forks of many
+ gigabytes. The forks are read from FileChannels, with positional reads,
+ and the output is exactly the same as that of BinHex4OutputStream.
+ <p>
+ First the CRCs of the forks are calculated for chunks in parallel and
+ put together with <code>CRC16.combine</code>; after that, the whole 8-bit
+ stream, CRCs included, is known. It is cut into chunks again, and each
+ chunk boundary is moved forward to the start of a run of equal bytes, so
+ that the run-length encoding of each chunk, which happens in parallel,
+ is the same as that of the whole stream. The encoded chunks are packed
+ into 6-bit characters in parallel too: where a piece of the output starts
+ on a line follows from the number of bytes before it. Only writing the
+ output happens in order, on the calling thread.
+ <pre>
+    FileChannel data = FileChannel.open(Paths.get("big.dmg"));
+    Header header = new Header("big.dmg", "devi", "ddsk", 0, data.size(), 0);
+    new ParallelEncoder(header, data, null).encode(out);
+ </pre>
+ An instance is not safe for use by multiple threads.
+
+ @author JBinHex contributors
+ */
+public class ParallelEncoder {
+
+    /**
+     The default number of bytes in a chunk.
+     */
+    public final static int defaultChunkSize = 4 << 20;
+
+    /**
+     @param header
+            the header to write; the fork lengths in it say how many bytes
+            are read from each channel
+     @param data
+            the data fork, read from position 0; may be null if its length
+            is 0. The channel is not closed.
+     @param resource
+            the resource fork, read from position 0; may be null if its
+            length is 0. The channel is not closed.
+     */
+    public ParallelEncoder(Header header, FileChannel data, FileChannel resource)
+    {
+        if((data == null && header.dataLength > 0) || (resource == null && header.resourceLength > 0))
+            throw new IllegalArgumentException("no channel for a fork that is not empty");
+        this.header = header;
+        this.data = data;
+        this.resource = resource;
+    }
+
+    /**
+     Sets the number of bytes in a chunk. Each chunk is a task for the
+     pool, so chunks should be big enough to make the overhead of a task
+     small, and small enough that all threads have work.
+     */
+    public void setChunkSize(int chunkSize)
+    {
+        if(chunkSize <= 0)
+            throw new IllegalArgumentException("chunk size must be positive");
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     Sets the pool that runs the tasks. By default, this is the common
+     ForkJoinPool.
+     */
+    public void setPool(ForkJoinPool pool)
+    {
+        this.pool = pool;
+    }
+
+    /**
+     Sets the line separator of the Hqx7 output; the default is a newline
+     character.
+     */
+    public void setLineSeparator(String lineSeparator)
+    {
+        this.lineSeparator = lineSeparator;
+    }
+
+    /**
+     If true, pure 8-bit data in Hqx8 format is written instead of Hqx7.
+     */
+    public void setEightBit(boolean eightBit)
+    {
+        this.eightBit = eightBit;
+    }
+
+    /**
+     Selects the engine that calculates the CRCs.
+     */
+    public void setCRC16(CRC16 crc16)
+    {
+        this.crc16 = crc16;
+    }
+
+    /**
+     Encodes the file to <code>out</code>, which is flushed but not closed.
+     */
+    public void encode(OutputStream out) throws IOException
+    {
+        byte[] head = header.toBytes();
+        int[] crcs = {
+            crc16.update(0, head, 0, head.length),
+            crc(data, header.dataLength),
+            crc(resource, header.resourceLength)
+        };
+        long[] lengths = { head.length, header.dataLength, header.resourceLength };
+        pieces = new Piece[6];
+        long position = 0;
+        for(int i = 0; i < 3; i++)
+        {
+            pieces[2 * i] = new Piece(position, lengths[i], i == 0 ? head : null,
+                    i == 1 ? data : i == 2 ? resource : null);
+            position += lengths[i];
+            byte[] crc = { (byte)(crcs[i] >>> 8), (byte)crcs[i] };
+            pieces[2 * i + 1] = new Piece(position, 2, crc, null);
+            position += 2;
+        }
+        total = position;
+
+        long chunks = (total + chunkSize - 1) / chunkSize;
+        int window = 2 * pool.getParallelism();
+        ArrayDeque<Future<byte[]>> encoded = new ArrayDeque<Future<byte[]>>();
+        ArrayDeque<Future<byte[]>> packed = new ArrayDeque<Future<byte[]>>();
+        try {
+            long next = 0;
+            byte[] carry = new byte[0];
+            long chars = 0;
+            boolean started = false;
+            while(next < chunks || !encoded.isEmpty())
+            {
+                while(next < chunks && encoded.size() < window)
+                {
+                    final long k = next++;
+                    encoded.add(pool.submit(() -> runLengthEncode(k)));
+                }
+                byte[] rle = ParallelDecoder.join(encoded.poll());
+                if(eightBit)
+                {
+                    out.write(rle);
+                    continue;
+                }
+
+                // Pack whole groups of three bytes, keep the rest for the
+                // next chunk
+                byte[] b = rle;
+                if(carry.length > 0)
+                {
+                    b = new byte[carry.length + rle.length];
+                    System.arraycopy(carry, 0, b, 0, carry.length);
+                    System.arraycopy(rle, 0, b, carry.length, rle.length);
+                }
+                int usable = b.length / 3 * 3;
+                carry = Arrays.copyOfRange(b, usable, b.length);
+                if(usable > 0 || !started)
+                {
+                    final byte[] group = b;
+                    final long first = chars;
+                    final boolean start = !started;
+                    packed.add(pool.submit(() -> pack(group, usable, first, start)));
+                    chars += usable / 3 * 4;
+                    started = true;
+                }
+                while(packed.size() > window)
+                    out.write(ParallelDecoder.join(packed.poll()));
+            }
+            while(!packed.isEmpty())
+                out.write(ParallelDecoder.join(packed.poll()));
+
+            if(!eightBit)
+            {
+                // The last bits and the closing :
+                ByteArrayOutputStream tail = new ByteArrayOutputStream();
+                Hqx8_to_Hqx7OutputStream hqx7 = new Hqx8_to_Hqx7OutputStream(tail, lineSeparator, chars);
+                hqx7.write(carry);
+                hqx7.finish();
+                out.write(tail.toByteArray());
+            }
+            out.flush();
+        } finally {
+            for(Future<byte[]> f : encoded)
+                f.cancel(false);
+            for(Future<byte[]> f : packed)
+                f.cancel(false);
+            pieces = null;
+        }
+    }
+
+    /**
+     A part of the 8-bit stream before run-length encoding: the header, a
+     fork or a CRC.
+     */
+    private static class Piece
+    {
+        Piece(long start, long length, byte[] bytes, FileChannel channel)
+        {
+            this.start = start;
+            this.length = length;
+            this.bytes = bytes;
+            this.channel = channel;
+        }
+
+        final long          start;
+        final long          length;
+        final byte[]        bytes;
+        final FileChannel   channel;
+    }
+
+    /**
+     Calculates the CRC of a fork in chunks, in parallel.
+     */
+    private int crc(final FileChannel channel, long length) throws IOException
+    {
+        ArrayDeque<Future<Integer>> parts = new ArrayDeque<Future<Integer>>();
+        try {
+            for(long position = 0; position < length; position += chunkSize)
+            {
+                final long from = position;
+                final int n = (int)Math.min(chunkSize, length - position);
+                parts.add(pool.submit(() -> {
+                    byte[] b = new byte[n];
+                    read(channel, from, b, 0, n);
+                    return crc16.update(0, b, 0, n);
+                }));
+            }
+            int crc = 0;
+            for(long position = 0; !parts.isEmpty(); position += chunkSize)
+                crc = CRC16.combine(crc, ParallelDecoder.join(parts.poll()), Math.min(chunkSize, length - position));
+            return crc;
+        } finally {
+            for(Future<Integer> f : parts)
+                f.cancel(false);
+        }
+    }
+
+    /**
+     Run-length encodes chunk <code>k</code>: from the first run that starts
+     in it, up to the first run that starts after it. This can be nothing,
+     if a run covers the whole chunk.
+     */
+    private byte[] runLengthEncode(long k) throws IOException
+    {
+        long from = k * chunkSize;
+        long to = Math.min(from + chunkSize, total);
+        long start = (k == 0) ? 0 : findRunStart(from, to);
+        if(start == -1)
+            return new byte[0];
+        long end = (to == total) ? total : findRunStart(to, total);
+        if(end == -1)
+            end = total;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream((int)Math.min(end - start, chunkSize) + 16);
+        RLE_CRCOutputStream rleOut = new RLE_CRCOutputStream(bytes, true);
+        byte[] buffer = new byte[(int)Math.min(end - start, 64 * 1024)];
+        for(long position = start; position < end; )
+        {
+            int n = (int)Math.min(buffer.length, end - position);
+            read(position, buffer, 0, n);
+            rleOut.write(buffer, 0, n);
+            position += n;
+        }
+        // The chunk ends where a run starts, so ending the last run here
+        // gives the same bytes as the whole stream does
+        rleOut.finish();
+        return bytes.toByteArray();
+    }
+
+    /**
+     Returns the first position in <code>from</code> up to <code>to</code>
+     where the byte is different from the one before it, or -1.
+     */
+    private long findRunStart(long from, long to) throws IOException
+    {
+        byte[] buffer = new byte[(int)Math.min(to - from + 1, 4096)];
+        read(from - 1, buffer, 0, 1);
+        byte previous = buffer[0];
+        for(long position = from; position < to; )
+        {
+            int n = (int)Math.min(buffer.length, to - position);
+            read(position, buffer, 0, n);
+            for(int i = 0; i < n; i++)
+            {
+                if(buffer[i] != previous)
+                    return position + i;
+            }
+            position += n;
+        }
+        return -1;
+    }
+
+    /**
+     Packs <code>len</code> bytes, a multiple of three, into characters,
+     of which the first one is character <code>first</code> after the :.
+     */
+    private byte[] pack(byte[] b, int len, long first, boolean start) throws IOException
+    {
+        ByteArrayOutputStream chars = new ByteArrayOutputStream(len / 3 * 4 + len / 32 + 64);
+        Hqx8_to_Hqx7OutputStream hqx7 = start
+                ? new Hqx8_to_Hqx7OutputStream(chars, lineSeparator)
+                : new Hqx8_to_Hqx7OutputStream(chars, lineSeparator, first);
+        hqx7.write(b, 0, len);
+        hqx7.flush();
+        return chars.toByteArray();
+    }
+
+    /**
+     Reads a range of the 8-bit stream.
+     */
+    private void read(long position, byte[] b, int off, int len) throws IOException
+    {
+        for(Piece piece : pieces)
+        {
+            if(len == 0)
+                return;
+            long end = piece.start + piece.length;
+            if(position >= end)
+                continue;
+            int n = (int)Math.min(len, end - position);
+            long at = position - piece.start;
+            if(piece.bytes != null)
+                System.arraycopy(piece.bytes, (int)at, b, off, n);
+            else
+                read(piece.channel, at, b, off, n);
+            position += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    private static void read(FileChannel channel, long position, byte[] b, int off, int len) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+        while(buffer.hasRemaining())
+        {
+            if(channel.read(buffer, position + buffer.position() - off) < 0)
+                throw new EOFException("Fork is shorter than its length in the header");
+        }
+    }
+
+    private final Header header;
+    private final FileChannel data;
+    private final FileChannel resource;
+
+    private int         chunkSize = defaultChunkSize;
+    private ForkJoinPool pool = ForkJoinPool.commonPool();
+    private String      lineSeparator = "\n";
+    private boolean     eightBit;
+    private CRC16       crc16 = CRC16.getDefault();
+
+    /**
+     The 8-bit stream during <code>encode</code>, and its length.
+     */
+    private Piece[]     pieces;
+    private long        total;
+}
@@ -0,0 +1,609 @@
+/*
+  JBinHex
+  Copyright (C) 2026, the JBinHex contributors
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License
+  as published by the Free Software Foundation; either version 2
+  of the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+*/
+
+package org.gjt.convert.binhex;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.gjt.convert.binhex.BinHex4InputStream.Header;
+
+/**
+ An engine that spreads decoding over three threads: a reader thread that
+ reads the encoded input, a decoder thread that runs a HqxDecoder on it,
+ and the caller's thread, which gets the decoded bytes. The threads hand
+ blocks to each other through two bounded rings of preallocated blocks, so
+ reading, decoding and whatever the caller does with the result overlap.
+ <p>
+ The decoder thread only hands over the last block of a fork after the
+ fork's CRC was checked, and an exception in one of the threads is thrown
+ on the caller's thread at the point where it would have been thrown
+ without pipelining.
+ <p>
+ The reader and decoder threads are daemon threads from a pool that all
+ PipelinedDecoders share, so decoding many files after each other doesn't
+ start two new threads for each of them.
+
+ @author JBinHex contributors
+ */
+final class PipelinedDecoder extends HqxDecoder {
+
+    /**
+     The number of blocks in each ring.
+     */
+    final static int depth = 4;
+
+    private final static String[] sectionNames = {
+        "header", "data fork", "resource fork", "end"
+    };
+
+    /**
+     Runs the reader and decoder threads. Idle threads go away after a
+     minute.
+     */
+    private final static ExecutorService threads = Executors.newCachedThreadPool(new ThreadFactory() {
+        private final AtomicInteger count = new AtomicInteger();
+
+        public Thread newThread(Runnable r)
+        {
+            Thread thread = new Thread(r, "JBinHex pipeline " + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    PipelinedDecoder(InputStream source, boolean eightBit, DecoderOptions options)
+    {
+        super(eightBit, options);
+        this.eightBit = eightBit;
+        this.options = options;
+        start(source);
+    }
+
+    /**
+     Starts the reader and decoder threads on a new source.
+     */
+    private void start(final InputStream source)
+    {
+        final Ring input = new Ring(depth, options.getInputBufferSize());
+        final Ring output = new Ring(depth, options.getOutputBufferSize());
+        this.input = input;
+        this.output = output;
+        section = sectionHeader;
+        sectionLeft = 1;
+        header = null;
+        slot = -1;
+
+        reader = new Reader(source, input);
+        threads.execute(reader);
+        final CountDownLatch stopped = new CountDownLatch(1);
+        this.stopped = stopped;
+        threads.execute(new Runnable() {
+            public void run()
+            {
+                try {
+                    decode(input, output);
+                } finally {
+                    stopped.countDown();
+                }
+            }
+        });
+    }
+
+    /**
+     Makes the reader and decoder threads stop, and waits for the decoder
+     thread, which is the only one that touches the state of this object.
+     It stops right away. The reader thread is not waited for: it may be
+     in a read from the source that doesn't return until more input comes.
+     It stops as soon as that read returns, without reading any further.
+     */
+    private void stop()
+    {
+        input.close();
+        output.close();
+        boolean interrupted = false;
+        while(true)
+        {
+            try {
+                stopped.await();
+                break;
+            } catch(InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if(interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    /**
+     The reader thread: fills blocks from the source until it is exhausted.
+     The source is never closed while a read from it is in progress.
+     */
+    private static final class Reader implements Runnable
+    {
+        Reader(InputStream source, Ring input)
+        {
+            this.source = source;
+            this.input = input;
+        }
+
+        public void run()
+        {
+            try {
+                while(true)
+                {
+                    int s = input.claim();
+                    int r = read(input.data[s]);
+                    if(r <= 0)
+                    {
+                        input.publish(0, sectionEnd);
+                        return;
+                    }
+                    input.publish(r, sectionHeader);
+                }
+            } catch(Throwable t) {
+                input.fail(t);
+            }
+        }
+
+        private int read(byte[] b) throws IOException
+        {
+            synchronized(this)
+            {
+                if(closed)
+                    throw new IOException("Stream closed");
+                reading = true;
+            }
+            try {
+                return source.read(b, 0, b.length);
+            } finally {
+                boolean close;
+                synchronized(this)
+                {
+                    reading = false;
+                    close = closed;
+                }
+                if(close)
+                    source.close();
+            }
+        }
+
+        /**
+         Closes the source now, or, if a read from it is in progress, as
+         soon as that read returns.
+         */
+        void closeSource() throws IOException
+        {
+            synchronized(this)
+            {
+                if(closed)
+                    return;
+                closed = true;
+                if(reading)
+                    return;
+            }
+            source.close();
+        }
+
+        private final InputStream source;
+        private final Ring input;
+        private boolean reading;
+        private boolean closed;
+    }
+
+    /**
+     The decoder thread: decodes the input blocks into output blocks, tagged
+     with the section they belong to. The header goes first, as a block
+     without bytes; a block without bytes tagged sectionEnd goes last.
+     */
+    private void decode(Ring input, Ring output)
+    {
+        try {
+            HqxDecoder engine = new HqxDecoder(new RingSource(input), eightBit, options);
+            decodedHeader = engine.readHeader();
+            output.claim();
+            output.publish(0, sectionHeader);
+            while(engine.section() != sectionEnd)
+            {
+                int fork = engine.section();
+                int s = output.claim();
+                int n = engine.read(output.data[s], 0, output.data[s].length);
+                if(n > 0)
+                    output.publish(n, fork);
+            }
+            System.arraycopy(engine.calculatedCRC, 0, calculatedCRC, 0, calculatedCRC.length);
+            System.arraycopy(engine.storedCRC, 0, storedCRC, 0, storedCRC.length);
+            output.claim();
+            output.publish(0, sectionEnd);
+        } catch(Throwable t) {
+            output.fail(t);
+        } finally {
+            // Nothing more is needed from the reader
+            input.close();
+        }
+    }
+
+    int section()
+    {
+        return section;
+    }
+
+    long sectionLeft()
+    {
+        return sectionLeft;
+    }
+
+    Header getHeader()
+    {
+        return header;
+    }
+
+    Header readHeader() throws IOException
+    {
+        if(header == null)
+        {
+            int s = output.take();
+            if(output.tag[s] != sectionHeader)
+                throw unexpected(sectionHeader, output.tag[s]);
+            output.release();
+            header = decodedHeader;
+            section = sectionDataFork;
+            sectionLeft = header.dataLength;
+            settle();
+        }
+        return header;
+    }
+
+    int read(byte[] b, int off, int len) throws IOException
+    {
+        int n = 0;
+        // Don't wait for more blocks once something was read
+        while(n < len && sectionLeft > 0 && (n == 0 || blockPos < blockEnd || output.hasBlock()))
+        {
+            nextBlock();
+            int k = Math.min(len - n, blockEnd - blockPos);
+            System.arraycopy(output.data[slot], blockPos, b, off + n, k);
+            blockPos += k;
+            n += k;
+            sectionLeft -= k;
+        }
+        settle();
+        return n;
+    }
+
+    long skip(long n) throws IOException
+    {
+        n = Math.min(n, sectionLeft);
+        long skipped = 0;
+        while(skipped < n)
+        {
+            nextBlock();
+            int k = (int)Math.min(n - skipped, blockEnd - blockPos);
+            blockPos += k;
+            skipped += k;
+            sectionLeft -= k;
+        }
+        settle();
+        return skipped;
+    }
+
+    void skipSection() throws IOException
+    {
+        skip(sectionLeft);
+    }
+
+    /**
+     Seek indexes need a seekable source, which is never pipelined.
+     */
+    void setSeekIndex(SeekIndex index)
+    {
+    }
+
+    /**
+     Stops the threads that work on the current source before starting
+     new ones, so that they can't touch this decoder's state anymore.
+     The current source is not closed. This doesn't wait for input from
+     it: a reader thread that is waiting for some is left to stop on its
+     own when it comes.
+     */
+    void reset(InputStream source)
+    {
+        stop();
+        start(source);
+    }
+
+    /**
+     Stops the threads and closes the source. If the reader thread is in
+     the middle of a read from it, the reader thread closes it as soon as
+     that read returns, instead of this closing it under its feet.
+     */
+    void close() throws IOException
+    {
+        stop();
+        reader.closeSource();
+    }
+
+    /**
+     Makes sure the current block has unread bytes of the current section,
+     discarding blocks of sections that the caller skipped.
+     */
+    private void nextBlock() throws IOException
+    {
+        while(slot < 0 || blockPos == blockEnd)
+        {
+            if(slot >= 0)
+            {
+                output.release();
+                slot = -1;
+            }
+            int s = output.take();
+            int tag = output.tag[s];
+            if(tag < section)
+            {
+                output.release();
+                continue;
+            }
+            if(tag != section)
+                throw unexpected(section, tag);
+            slot = s;
+            blockPos = 0;
+            blockEnd = output.length[s];
+        }
+    }
+
+    private static IOException unexpected(int expected, int tag)
+    {
+        return new IOException("Expected a block of the " + sectionNames[expected]
+                + " from the decoder thread, got one of the " + sectionNames[tag]);
+    }
+
+    /**
+     Moves past sections that were completely read. At the end, waits for
+     the decoder thread to finish, so that its CRCs are available and its
+     exceptions thrown.
+     */
+    private void settle() throws IOException
+    {
+        while(sectionLeft == 0 && section != sectionEnd)
+        {
+            section++;
+            sectionLeft = (section == sectionResourceFork) ? header.resourceLength : 0;
+        }
+        if(section == sectionEnd && slot != -2)
+        {
+            while(true)
+            {
+                if(slot >= 0)
+                    output.release();
+                slot = output.take();
+                if(output.tag[slot] == sectionEnd)
+                    break;
+            }
+            // The end block is never released
+            slot = -2;
+        }
+    }
+
+    private final boolean eightBit;
+    private final DecoderOptions options;
+
+    private Reader      reader;
+    private Ring        input;
+    private Ring        output;
+
+    /**
+     Counted down by the decoder thread of the current source when it
+     finishes.
+     */
+    private CountDownLatch stopped;
+
+    /**
+     Set by the decoder thread before it hands over the header block.
+     */
+    private Header      decodedHeader;
+
+    /**
+     The caller's view: the section it is in, how much of it is left, and
+     the header.
+     */
+    private int         section;
+    private long        sectionLeft;
+    private Header      header;
+
+    /**
+     The output block that the caller is reading, -1 if none, -2 after the
+     end block; and the part of it that is still unread.
+     */
+    private int         slot;
+    private int         blockPos;
+    private int         blockEnd;
+
+    /**
+     A bounded ring of preallocated blocks between one producer thread and
+     one consumer thread. The producer claims a free block, fills it and
+     publishes it; the consumer takes it, reads it and releases it. A
+     failure of the producer is seen by the consumer after the blocks that
+     were published before it.
+     */
+    static final class Ring
+    {
+        Ring(int blocks, int blockSize)
+        {
+            data = new byte[blocks][blockSize];
+            length = new int[blocks];
+            tag = new int[blocks];
+        }
+
+        /**
+         Waits for a free block and returns its index.
+         */
+        synchronized int claim() throws IOException
+        {
+            while(head - tail == data.length && !closed)
+                await();
+            if(closed)
+                throw new IOException("Pipeline closed");
+            return (int)(head % data.length);
+        }
+
+        /**
+         Hands the claimed block to the consumer.
+         */
+        synchronized void publish(int length, int tag)
+        {
+            int s = (int)(head % data.length);
+            this.length[s] = length;
+            this.tag[s] = tag;
+            head++;
+            notifyAll();
+        }
+
+        synchronized void fail(Throwable t)
+        {
+            failure = t;
+            notifyAll();
+        }
+
+        /**
+         Waits for a published block and returns its index. Throws the
+         producer's failure when all blocks before it were taken.
+         */
+        synchronized int take() throws IOException
+        {
+            while(tail == head)
+            {
+                if(closed)
+                    throw new IOException("Stream closed");
+                if(failure != null)
+                    rethrow(failure);
+                await();
+            }
+            return (int)(tail % data.length);
+        }
+
+        /**
+         Gives the block returned by <code>take</code> back to the producer.
+         */
+        synchronized void release()
+        {
+            tail++;
+            notifyAll();
+        }
+
+        synchronized boolean hasBlock()
+        {
+            return tail < head;
+        }
+
+        /**
+         Makes both sides stop.
+         */
+        synchronized void close()
+        {
+            closed = true;
+            notifyAll();
+        }
+
+        private void await() throws IOException
+        {
+            try {
+                wait();
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+
+        private static void rethrow(Throwable t) throws IOException
+        {
+            if(t instanceof IOException)
+                throw (IOException)t;
+            if(t instanceof RuntimeException)
+                throw (RuntimeException)t;
+            if(t instanceof Error)
+                throw (Error)t;
+            throw new IOException(t.toString());
+        }
+
+        final byte[][]  data;
+        final int[]     length;
+        final int[]     tag;
+
+        private long    head;
+        private long    tail;
+        private boolean closed;
+        private Throwable failure;
+    }
+
+    /**
+     Feeds the decoder thread's engine from the input ring.
+     */
+    private static final class RingSource extends HqxSource
+    {
+        RingSource(Ring ring)
+        {
+            this.ring = ring;
+            buffers = new ByteBuffer[ring.data.length];
+            for(int i = 0; i < buffers.length; i++)
+                buffers[i] = ByteBuffer.wrap(ring.data[i]);
+        }
+
+        ByteBuffer next() throws IOException
+        {
+            if(slot >= 0)
+            {
+                offset += buffers[slot].limit();
+                ring.release();
+            }
+            slot = ring.take();
+            if(ring.tag[slot] == sectionEnd)
+            {
+                // Leave the end block where it is
+                slot = -1;
+                return null;
+            }
+            ByteBuffer buffer = buffers[slot];
+            buffer.clear();
+            buffer.limit(ring.length[slot]);
+            return buffer;
+        }
+
+        void close()
+        {
+            ring.close();
+        }
+
+        long offset()
+        {
+            return offset;
+        }
+
+        private final Ring  ring;
+        private final ByteBuffer[] buffers;
+        private int         slot = -1;
+        private long        offset;
+    }
+}
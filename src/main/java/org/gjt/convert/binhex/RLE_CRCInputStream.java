@@ -54,7 +54,7 @@ public class RLE_CRCInputStream extends FilterInputStream {
      */
     public RLE_CRCInputStream(InputStream source)
     {
-        super(new Hqx7_to_Hqx8InputStream(source));
+        this(source, false);
     }
 
     /**
@@ -71,6 +71,45 @@ public class RLE_CRCInputStream extends FilterInputStream {
     public RLE_CRCInputStream(InputStream source, boolean eightBit)
     {
         super(eightBit ? source : new Hqx7_to_Hqx8InputStream(source));
+        streamBuffer = new byte[sz_streamBuf];
+    }
+
+    /**
+     Constructs a RLE_CRCInputStream like
+     <code>RLE_CRCInputStream(source, eightBit)</code>, with the stream
+     buffers of both stages taken from the pool of <code>options</code>
+     and given back on close, and the CRC engine of <code>options</code>.
+     */
+    public RLE_CRCInputStream(InputStream source, boolean eightBit, DecoderOptions options)
+    {
+        super(eightBit ? source : new Hqx7_to_Hqx8InputStream(source, options));
+        pool = options.getBufferPool();
+        streamBuffer = pool.acquire(options.getInputBufferSize());
+        crc16 = options.getCRC16();
+    }
+
+    public void close() throws IOException
+    {
+        if(pool != null)
+        {
+            pool.release(streamBuffer);
+            pool = null;
+        }
+        // The buffer may be in use by another stream by now
+        streamBuffer = null;
+        super.close();
+    }
+
+    public long skip(long n) throws IOException
+    {
+        ensureOpen();
+        return super.skip(n);
+    }
+
+    private void ensureOpen() throws IOException
+    {
+        if(streamBuffer == null)
+            throw new IOException("Stream closed");
     }
 
 
@@ -115,7 +154,6 @@ public class RLE_CRCInputStream extends FilterInputStream {
             if(--rleRepeat <= 0)
                 inRLE = false;
             // lastByte remains the same
-            updateCRC(lastByte);
             return lastByte;
         }
 
@@ -144,7 +182,6 @@ public class RLE_CRCInputStream extends FilterInputStream {
                 // lastByte must be set, because 0x90 could itself be
                 // subject to RLE expansion.
                 lastByte = rleChar;
-                updateCRC(rleChar);
                 return rleChar;
             }
 
@@ -154,7 +191,6 @@ public class RLE_CRCInputStream extends FilterInputStream {
             if(rleRepeat > 0)
                 inRLE = true;
             // lastByte remains the same
-            updateCRC(lastByte);
             return lastByte;
         }
         else
@@ -164,24 +200,20 @@ public class RLE_CRCInputStream extends FilterInputStream {
             // be the RLE char which means that _this_ character needs
             // to be repeated.
             lastByte = b;
-            updateCRC(b);
             return b;
         }
     }
 
-    private void updateCRC(int b)
+    /**
+     Selects the engine that calculates the CRC. The default is
+     <code>CRC16.getDefault()</code>; all engines produce the same values,
+     so this only matters for performance comparisons.
+     */
+    public void setCRC16(CRC16 crc16)
     {
-        // This is from Peter Lewis' article. It's probably very inefficient
-        // so if anyone can give me a better version, I'd be much obliged.
-        boolean temp;
-        for(int i = 0 ; i < 8; i++)
-        {
-            temp = (calculatedCRC & 0x8000) != 0;
-            calculatedCRC = (calculatedCRC << 1) | (b >> 7);
-            if(temp)
-                calculatedCRC ^= 0x1021;
-            b = (b << 1) & 0xff;
-        }
+        if(crc16 == null)
+            throw new NullPointerException("crc16");
+        this.crc16 = crc16;
     }
 
     /**
@@ -203,13 +235,19 @@ public class RLE_CRCInputStream extends FilterInputStream {
      */
     public int getCRC()
     {
-        updateCRC(0);
-        updateCRC(0);
-        return calculatedCRC & 0xffff;
+        // calculatedCRC is kept in the non-augmented form (see CRC16), which
+        // already is the value the protocol's two extra 0 bytes lead to.
+        // The register still has to advance over them, so that calling this
+        // twice behaves like it always did.
+        int crc = calculatedCRC;
+        calculatedCRC = crc16.update(calculatedCRC, 0);
+        calculatedCRC = crc16.update(calculatedCRC, 0);
+        return crc;
     }
 
     public int read() throws IOException
     {
+        ensureOpen();
         if(seenEOF)
         {
             // If this method is called a second time AFTER a -1, the
@@ -219,7 +257,10 @@ public class RLE_CRCInputStream extends FilterInputStream {
             seenEOF = false;
             return -1;
         }
-        return nextDecodedByte();
+        int b = nextDecodedByte();
+        if(b != -1)
+            calculatedCRC = crc16.update(calculatedCRC, b);
+        return b;
     }
 
     public int read(byte[] b) throws IOException
@@ -229,6 +270,7 @@ public class RLE_CRCInputStream extends FilterInputStream {
 
     public int read(byte[] b, int off, int len) throws IOException
     {
+        ensureOpen();
         if(seenEOF)
         {
             // If this method is called a second time AFTER a -1, the
@@ -247,10 +289,13 @@ public class RLE_CRCInputStream extends FilterInputStream {
                     // No data read yet, so safe to return -1
                     return -1;
                 seenEOF = true;
+                // The CRC is updated once for the whole block
+                calculatedCRC = crc16.update(calculatedCRC, b, off, i - off);
                 return i - off;
             }
             b[i] = (byte)t;
         }
+        calculatedCRC = crc16.update(calculatedCRC, b, off, len);
         return len;
     }
 
@@ -275,7 +320,12 @@ public class RLE_CRCInputStream extends FilterInputStream {
     /**
      Bytes that were read from the stream but not all yet processed.
      */
-    private byte[]  streamBuffer = new byte[sz_streamBuf];
+    private byte[]  streamBuffer;
+
+    /**
+     Where streamBuffer came from, if it must be given back.
+     */
+    private BufferPool pool;
 
     /**
      The next byte in the stream buffer to process.
@@ -299,4 +349,9 @@ public class RLE_CRCInputStream extends FilterInputStream {
      The CRC value that is being calculated.
      */
     private int     calculatedCRC;
+
+    /**
+     The engine that updates calculatedCRC.
+     */
+    private CRC16   crc16 = CRC16.getDefault();
 }
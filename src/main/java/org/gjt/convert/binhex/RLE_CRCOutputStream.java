@@ -0,0 +1,254 @@
+/*
+  JBinHex
+  Copyright (C) 2026, the JBinHex contributors
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License
+  as published by the Free Software Foundation; either version 2
+  of the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+*/
+
+package org.gjt.convert.binhex;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ Run-length encodes a 8-bit BinHex stream and calculates CRCs (Cyclic
+ Redundancy Check) from the bytes that it is given; the reverse of
+ RLE_CRCInputStream.
+ <p>
+ Runs of three or more equal bytes are written as the byte, the RLE
+ character 0x90 and the length of the run, up to 255 at a time. A literal
+ 0x90 is written as 0x90 0x00. Runs may go on from one write call into the
+ next, and from one section into the next, so the last run is only written
+ by <code>finish</code> or <code>close</code>.
+
+ @author JBinHex contributors
+ */
+public class RLE_CRCOutputStream extends FilterOutputStream {
+
+    /**
+     The size of the buffer for encoded bytes.
+     */
+    final static int    sz_streamBuf = 4096;
+
+    /**
+     The longest run that one RLE sequence can describe.
+     */
+    final static int    maxRun = 255;
+
+    /**
+     Constructs a RLE_CRCOutputStream that writes 7-bit Hqx7 encoded data
+     to <code>out</code>. Internally, a Hqx8_to_Hqx7OutputStream is created
+     to translate from 8-bit to 7-bit format.
+     */
+    public RLE_CRCOutputStream(OutputStream out)
+    {
+        this(out, false);
+    }
+
+    /**
+     Constructs a RLE_CRCOutputStream that writes either 7-bit Hqx7 encoded
+     data or pure 8-bit data in Hqx8 format to <code>out</code>.
+     */
+    public RLE_CRCOutputStream(OutputStream out, boolean eightBit)
+    {
+        super(eightBit ? out : new Hqx8_to_Hqx7OutputStream(out));
+        streamBuffer = new byte[sz_streamBuf];
+    }
+
+    /**
+     Selects the engine that calculates the CRCs. The default is
+     <code>CRC16.getDefault()</code>.
+     */
+    public void setCRC16(CRC16 crc16)
+    {
+        if(crc16 == null)
+            throw new NullPointerException("crc16");
+        this.crc16 = crc16;
+    }
+
+    /**
+     Restarts the CRC calculation, at the start of a section.
+     */
+    public void resetCRC()
+    {
+        calculatedCRC = 0;
+    }
+
+    /**
+     Returns the CRC of the bytes written since the last reset.
+     */
+    public int getCRC()
+    {
+        return calculatedCRC;
+    }
+
+    /**
+     Writes the CRC of the bytes written since the last reset, high byte
+     first, and resets it. The CRC bytes themselves are not part of any
+     CRC.
+     */
+    public void writeCRC() throws IOException
+    {
+        int crc = calculatedCRC;
+        encode((byte)(crc >>> 8));
+        encode((byte)crc);
+        calculatedCRC = 0;
+    }
+
+    public void write(int b) throws IOException
+    {
+        if(finished)
+            throw new IOException("Stream already finished");
+        calculatedCRC = crc16.update(calculatedCRC, b);
+        encode((byte)b);
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException
+    {
+        if(finished)
+            throw new IOException("Stream already finished");
+        calculatedCRC = crc16.update(calculatedCRC, b, off, len);
+
+        int i = off, max = off + len;
+        while(i < max)
+        {
+            int v = b[i] & 0xff;
+            if(v == runByte)
+            {
+                // Extend the current run as far as it goes
+                int j = i + 1;
+                while(j < max && (b[j] & 0xff) == v)
+                    j++;
+                runLength += j - i;
+                i = j;
+                continue;
+            }
+            endRun();
+            runByte = v;
+            runLength = 1;
+            i++;
+        }
+    }
+
+    /**
+     Writes the encoded bytes to the underlying stream and flushes it. The
+     current run is not ended, because more equal bytes may follow.
+     */
+    public void flush() throws IOException
+    {
+        flushBuffer();
+        out.flush();
+    }
+
+    /**
+     Writes the last run, and finishes a Hqx8_to_Hqx7OutputStream
+     underneath, without closing the underlying stream. Nothing can be
+     written after this.
+     */
+    public void finish() throws IOException
+    {
+        if(finished)
+            return;
+        endRun();
+        flushBuffer();
+        finished = true;
+        if(out instanceof Hqx8_to_Hqx7OutputStream)
+            ((Hqx8_to_Hqx7OutputStream)out).finish();
+        else
+            out.flush();
+    }
+
+    public void close() throws IOException
+    {
+        try {
+            finish();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void encode(byte b) throws IOException
+    {
+        if(finished)
+            throw new IOException("Stream already finished");
+        int v = b & 0xff;
+        if(v == runByte)
+            runLength++;
+        else
+        {
+            endRun();
+            runByte = v;
+            runLength = 1;
+        }
+    }
+
+    /**
+     Writes the current run.
+     */
+    private void endRun() throws IOException
+    {
+        if(sbFilled > streamBuffer.length - 8)
+            flushBuffer();
+        long n = runLength;
+        while(n > 0)
+        {
+            int run = (int)Math.min(n, maxRun);
+            putLiteral(runByte);
+            if(run == 2)
+                putLiteral(runByte);
+            else if(run > 2)
+            {
+                streamBuffer[sbFilled++] = (byte)RLE_CRCInputStream.rleChar;
+                streamBuffer[sbFilled++] = (byte)run;
+            }
+            n -= run;
+            if(sbFilled > streamBuffer.length - 8)
+                flushBuffer();
+        }
+        runLength = 0;
+        runByte = -1;
+    }
+
+    private void putLiteral(int v)
+    {
+        streamBuffer[sbFilled++] = (byte)v;
+        if(v == RLE_CRCInputStream.rleChar)
+            streamBuffer[sbFilled++] = 0;
+    }
+
+    private void flushBuffer() throws IOException
+    {
+        if(sbFilled > 0)
+        {
+            out.write(streamBuffer, 0, sbFilled);
+            sbFilled = 0;
+        }
+    }
+
+    private CRC16       crc16 = CRC16.getDefault();
+    private int         calculatedCRC;
+
+    /**
+     The byte of the current run, or -1 if there is none, and how often it
+     repeats.
+     */
+    private int         runByte = -1;
+    private long        runLength;
+
+    private final byte[] streamBuffer;
+    private int         sbFilled;
+    private boolean     finished;
+}
@@ -0,0 +1,226 @@
+/*
+  JBinHex
+  Copyright (C) 2026, the JBinHex contributors
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License
+  as published by the Free Software Foundation; either version 2
+  of the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+*/
+
+package org.gjt.convert.binhex;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ A sparse index of decoder checkpoints in the forks of one BinHex4 file, one
+ every <code>interval</code> decoded bytes. With an index, seeking to a
+ position in a fork only needs to decode from the nearest checkpoint before
+ that position, instead of from the start of the file.
+ <p>
+ An index is filled by giving it to a BinHex4InputStream or a BinHex4File
+ with <code>setSeekIndex</code>: every checkpoint the decoder passes is
+ added. It can be saved to a sidecar file and loaded again later, to make
+ seeking fast from the start. An index is only valid for the encoded file
+ it was built from, read from the same starting offset.
+ <p>
+ Instances are safe for use by multiple threads.
+
+ @author JBinHex contributors
+ */
+public class SeekIndex {
+
+    /**
+     Identifies a saved index, "JBIX", followed by the format version.
+     */
+    private final static int magic = 0x4a424958;
+    private final static int version = 1;
+
+    /**
+     Constructs an empty index.
+
+     @param interval
+            the number of decoded bytes between checkpoints. Smaller intervals
+            make seeking faster and the index bigger.
+     */
+    public SeekIndex(long interval)
+    {
+        if(interval <= 0)
+            throw new IllegalArgumentException("interval must be positive");
+        this.interval = interval;
+    }
+
+    /**
+     Returns the number of decoded bytes between checkpoints.
+     */
+    public long getInterval()
+    {
+        return interval;
+    }
+
+    /**
+     Returns the number of checkpoints in the index.
+     */
+    public synchronized int size()
+    {
+        return dataFork.size() + resourceFork.size();
+    }
+
+    /**
+     Writes this index to a stream.
+     */
+    public synchronized void write(OutputStream out) throws IOException
+    {
+        DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(out));
+        dout.writeInt(magic);
+        dout.writeInt(version);
+        dout.writeLong(interval);
+        for(int section = HqxDecoder.sectionDataFork; section <= HqxDecoder.sectionResourceFork; section++)
+        {
+            List<HqxDecoder.Checkpoint> fork = fork(section);
+            dout.writeInt(fork.size());
+            for(HqxDecoder.Checkpoint cp : fork)
+            {
+                dout.writeLong(cp.position);
+                dout.writeLong(cp.offset);
+                dout.writeLong(cp.sectionLeft);
+                dout.writeInt(cp.bitBuffer);
+                dout.writeByte(cp.bitsLeft);
+                dout.writeBoolean(cp.rleMarker);
+                dout.writeByte(cp.lastByte);
+                dout.writeByte(cp.rleRepeat);
+                dout.writeShort(cp.crc);
+            }
+        }
+        dout.flush();
+    }
+
+    /**
+     Reads an index that was written with <code>write</code>.
+     */
+    public static SeekIndex read(InputStream in) throws IOException
+    {
+        DataInputStream din = new DataInputStream(new BufferedInputStream(in));
+        if(din.readInt() != magic || din.readInt() != version)
+            throw new IOException("Not a seek index, or an unknown version");
+        SeekIndex index = new SeekIndex(din.readLong());
+        for(int section = HqxDecoder.sectionDataFork; section <= HqxDecoder.sectionResourceFork; section++)
+        {
+            for(int i = 0, n = din.readInt(); i < n; i++)
+            {
+                HqxDecoder.Checkpoint cp = new HqxDecoder.Checkpoint();
+                cp.section = section;
+                cp.position = din.readLong();
+                cp.offset = din.readLong();
+                cp.sectionLeft = din.readLong();
+                cp.bitBuffer = din.readInt();
+                cp.bitsLeft = din.readUnsignedByte();
+                cp.rleMarker = din.readBoolean();
+                cp.lastByte = din.readUnsignedByte();
+                cp.rleRepeat = din.readUnsignedByte();
+                cp.crc = din.readUnsignedShort();
+                index.add(cp);
+            }
+        }
+        return index;
+    }
+
+    /**
+     Saves this index to a sidecar file.
+     */
+    public void save(Path path) throws IOException
+    {
+        OutputStream out = Files.newOutputStream(path);
+        try {
+            write(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     Loads an index from a sidecar file.
+     */
+    public static SeekIndex load(Path path) throws IOException
+    {
+        InputStream in = Files.newInputStream(path);
+        try {
+            return read(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     Adds a checkpoint, unless there already is one at its position.
+     */
+    synchronized void add(HqxDecoder.Checkpoint cp)
+    {
+        List<HqxDecoder.Checkpoint> fork = fork(cp.section);
+        // Decoders usually pass positions in increasing order, so look
+        // from the end.
+        int i = fork.size();
+        while(i > 0 && fork.get(i - 1).position > cp.position)
+            i--;
+        if(i > 0 && fork.get(i - 1).position == cp.position)
+            return;
+        fork.add(i, cp);
+    }
+
+    /**
+     Returns the checkpoint with the highest position that is not after the
+     given position in a fork, or null if there is none.
+     */
+    synchronized HqxDecoder.Checkpoint floor(int section, long position)
+    {
+        List<HqxDecoder.Checkpoint> fork = fork(section);
+        int low = 0, high = fork.size() - 1;
+        HqxDecoder.Checkpoint found = null;
+        while(low <= high)
+        {
+            int mid = (low + high) >>> 1;
+            HqxDecoder.Checkpoint cp = fork.get(mid);
+            if(cp.position <= position)
+            {
+                found = cp;
+                low = mid + 1;
+            }
+            else
+                high = mid - 1;
+        }
+        return found;
+    }
+
+    private List<HqxDecoder.Checkpoint> fork(int section)
+    {
+        return (section == HqxDecoder.sectionResourceFork) ? resourceFork : dataFork;
+    }
+
+    private final long interval;
+
+    /**
+     The checkpoints of the data fork and of the resource fork, sorted by
+     position.
+     */
+    private final List<HqxDecoder.Checkpoint> dataFork = new ArrayList<HqxDecoder.Checkpoint>();
+    private final List<HqxDecoder.Checkpoint> resourceFork = new ArrayList<HqxDecoder.Checkpoint>();
+}
@@ -0,0 +1,388 @@
+/*
+  JBinHex
+  Copyright (C) 2026, the JBinHex contributors
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License
+  as published by the Free Software Foundation; either version 2
+  of the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+*/
+
+package org.gjt.convert.binhex;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ Joins the parts of a segmented Hqx7 file, as posted to the
+ <code>comp.binaries.mac.*</code> newsgroups or split over several mails,
+ into one Hqx7 stream, for example to decode it with BinHex4InputStream.
+ Every part but the last ends with a "--- end of part NN ---" line, and
+ every part but the first continues after a line that only has "---" on
+ it. Everything in between, such as mail and news headers, is left out.
+ <p>
+ The parts can come from one stream in which they follow each other, or
+ from a list of streams, one for each part. The part numbers in the end
+ lines are checked while reading: when a part is missing or out of order,
+ an IOException is thrown as soon as its end line is read, before any of
+ the following parts is decoded. <code>open</code> checks a list of files
+ before reading any of them.
+
+ @author JBinHex contributors
+ */
+public class SegmentedHqxInputStream extends InputStream {
+
+    private final static String endOfPart = "--- end of part ";
+    private final static String startOfPart = "---";
+
+    /**
+     Lines are taken apart in pieces of at most this size; only the start
+     of a line is needed to recognize the part lines.
+     */
+    final static int sz_line = 256;
+
+    /**
+     Reads a stream that contains all parts, in order.
+     */
+    public SegmentedHqxInputStream(InputStream source)
+    {
+        List<InputStream> parts = new ArrayList<InputStream>();
+        parts.add(source);
+        this.parts = parts.iterator();
+        this.source = source;
+        separate = false;
+    }
+
+    /**
+     Reads the parts from a list of streams, one stream for each part, in
+     order. Each stream is closed when it has been read.
+     */
+    public SegmentedHqxInputStream(List<? extends InputStream> parts)
+    {
+        this.parts = new ArrayList<InputStream>(parts).iterator();
+        source = this.parts.hasNext() ? this.parts.next() : null;
+        separate = true;
+    }
+
+    /**
+     Reads the parts from a list of files, in order. The end lines of all
+     files are checked first, so that missing parts and parts in the wrong
+     order are reported before anything is decoded.
+
+     @exception IOException
+        if a file can't be read, or a part number is not as expected
+     */
+    public static SegmentedHqxInputStream open(List<Path> files) throws IOException
+    {
+        for(int i = 0; i < files.size(); i++)
+        {
+            int part = lastPartNumber(files.get(i));
+            if(part == 0 && i < files.size() - 1)
+                throw new IOException("Part " + (i + 1) + " (" + files.get(i)
+                        + ") has no \"" + endOfPart + (i + 1) + " ---\" line");
+            if(part != 0)
+                checkPart(part, i + 1);
+        }
+        List<InputStream> parts = new ArrayList<InputStream>();
+        for(Path file : files)
+            parts.add(new LazyInputStream(file));
+        return new SegmentedHqxInputStream(parts);
+    }
+
+    /**
+     Returns the number of the part that is being read, starting at 1.
+     */
+    public int getPart()
+    {
+        return part;
+    }
+
+    public int read() throws IOException
+    {
+        int n = read(singleByte, 0, 1);
+        return (n == -1) ? -1 : singleByte[0] & 0xff;
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        if(len == 0)
+            return 0;
+        while(lineIndex == lineLength)
+        {
+            if(!nextLine())
+                return -1;
+        }
+        int n = Math.min(len, lineLength - lineIndex);
+        System.arraycopy(line, lineIndex, b, off, n);
+        lineIndex += n;
+        return n;
+    }
+
+    /**
+     Closes the current part and all parts that have not been read yet.
+     */
+    public void close() throws IOException
+    {
+        IOException first = null;
+        while(source != null)
+        {
+            try {
+                source.close();
+            } catch(IOException e)
+            {
+                if(first == null)
+                    first = e;
+            }
+            source = parts.hasNext() ? parts.next() : null;
+        }
+        if(first != null)
+            throw first;
+    }
+
+    /**
+     Reads the next line, or the next piece of a long line, into
+     <code>line</code>, and leaves it out if it is not part of the joined
+     stream.
+
+     @return
+        false at the end of the last part
+     */
+    private boolean nextLine() throws IOException
+    {
+        lineIndex = 0;
+        lineLength = 0;
+        boolean wholeLine = lineStart;
+        while(lineLength < line.length)
+        {
+            if(bufIndex == bufFilled && !fillBuffer())
+                break;
+            byte c = buffer[bufIndex++];
+            line[lineLength++] = c;
+            if(c == '\n' && lineLength == 1 && afterCR)
+            {
+                // The rest of an MS-DOS type linebreak belongs to the
+                // line before
+                afterCR = false;
+                wholeLine = false;
+                break;
+            }
+            afterCR = (c == '\r');
+            lineStart = (c == '\n' || c == '\r');
+            if(lineStart)
+                break;
+        }
+
+        if(lineLength == 0)
+        {
+            // End of the current source
+            if(!separate || !parts.hasNext())
+                return false;
+            if(!skipping)
+                throw new IOException("Part " + part + " has no \"" + endOfPart
+                        + part + " ---\" line");
+            source.close();
+            source = parts.next();
+            lineStart = true;
+            return true;
+        }
+        if(!wholeLine)
+        {
+            // The rest of a line goes where its start went
+            if(dropped)
+                lineLength = 0;
+            return true;
+        }
+
+        int first = 0;
+        while(first < lineLength && (line[first] == ' ' || line[first] == '\t'))
+            first++;
+        if(first < lineLength && line[first] == '-')
+        {
+            String text = new String(line, 0, Math.min(lineLength, 32),
+                    StandardCharsets.ISO_8859_1).trim();
+            if(skipping && text.equals(startOfPart))
+            {
+                skipping = false;
+                lineLength = 0;
+            }
+            else if(!skipping && text.toLowerCase(Locale.ROOT).startsWith(endOfPart))
+            {
+                checkPart(parsePart(text), part);
+                part++;
+                skipping = true;
+            }
+        }
+        // Data, or text between parts
+        if(skipping)
+            lineLength = 0;
+        dropped = (lineLength == 0);
+        return true;
+    }
+
+    private boolean fillBuffer() throws IOException
+    {
+        if(source == null)
+            return false;
+        int n = source.read(buffer, 0, buffer.length);
+        if(n <= 0)
+            return false;
+        bufIndex = 0;
+        bufFilled = n;
+        return true;
+    }
+
+    /**
+     Returns the number in a "--- end of part NN ---" line, or -1 if it has
+     none.
+     */
+    private static int parsePart(String text)
+    {
+        int i = endOfPart.length(), j = i;
+        while(j < text.length() && Character.isDigit(text.charAt(j)))
+            j++;
+        return (j == i) ? -1 : Integer.parseInt(text.substring(i, j));
+    }
+
+    private static void checkPart(int found, int expected) throws IOException
+    {
+        if(found == expected)
+            return;
+        if(found > expected)
+            throw new IOException("Part " + expected + " is missing, found the end of part "
+                    + found + " instead");
+        throw new IOException("Part " + found + " is out of order, expected the end of part "
+                + expected);
+    }
+
+    /**
+     Returns the number in the last "--- end of part NN ---" line of a file,
+     or 0 if there is none. The file is read backwards from its end until
+     such a line is found, so a long signature or footer after it doesn't
+     hide it; a file without one, such as the last part, is read completely.
+     */
+    private static int lastPartNumber(Path file) throws IOException
+    {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer chunk = ByteBuffer.allocate(HqxDecoder.sz_streamBuf);
+            // The start of the line that continues in the chunk after this one
+            String rest = "";
+            long end = channel.size();
+            while(end > 0)
+            {
+                int n = (int)Math.min(end, chunk.capacity());
+                chunk.clear();
+                chunk.limit(n);
+                channel.position(end - n);
+                while(chunk.hasRemaining() && channel.read(chunk) > 0)
+                    ;
+                end -= n;
+                String text = new String(chunk.array(), 0, chunk.position(), StandardCharsets.ISO_8859_1) + rest;
+                String[] lines = text.split("[\r\n]", -1);
+                // The first line may start in the chunk before this one
+                for(int i = lines.length - 1; i >= (end > 0 ? 1 : 0); i--)
+                {
+                    String s = lines[i].trim();
+                    if(s.toLowerCase(Locale.ROOT).startsWith(endOfPart))
+                        return parsePart(s);
+                }
+                // Only the start of a line is needed to recognize it
+                rest = lines[0].substring(0, Math.min(lines[0].length(), sz_line));
+            }
+            return 0;
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     Opens a file when it is first read, so that not all parts are open at
+     the same time.
+     */
+    private static class LazyInputStream extends InputStream
+    {
+        LazyInputStream(Path file)
+        {
+            this.file = file;
+        }
+
+        public int read() throws IOException
+        {
+            return open().read();
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            return open().read(b, off, len);
+        }
+
+        public void close() throws IOException
+        {
+            if(in != null)
+                in.close();
+        }
+
+        private InputStream open() throws IOException
+        {
+            if(in == null)
+                in = Files.newInputStream(file);
+            return in;
+        }
+
+        private final Path file;
+        private InputStream in;
+    }
+
+    private final Iterator<InputStream> parts;
+    private InputStream source;
+
+    /**
+     True if each part has its own source.
+     */
+    private final boolean separate;
+
+    private final byte[] buffer = new byte[HqxDecoder.sz_streamBuf];
+    private int         bufIndex;
+    private int         bufFilled;
+
+    /**
+     The line that is being passed on.
+     */
+    private final byte[] line = new byte[sz_line];
+    private int         lineIndex;
+    private int         lineLength;
+    private boolean     lineStart = true;
+    private boolean     afterCR;
+
+    /**
+     True if the last line was left out.
+     */
+    private boolean     dropped;
+
+    /**
+     True between the end line of a part and the start line of the next.
+     */
+    private boolean     skipping;
+    private int         part = 1;
+
+    private final byte[] singleByte = new byte[1];
+}
@@ -0,0 +1,189 @@
+/*
+  JBinHex
+  Copyright (C) 2026, the JBinHex contributors
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License
+  as published by the Free Software Foundation; either version 2
+  of the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+*/
+
+package org.gjt.convert.binhex;
+
+import java.security.MessageDigest;
+
+/**
+ The 64-bit xxHash of Yann Collet, with seed 0, as a MessageDigest. It is
+ not a cryptographic hash, but several times faster than MD5 or SHA-256,
+ which makes it a good choice to recognize duplicate forks. The digest is
+ the hash as eight bytes, most significant byte first, the way xxHash's
+ canonical representation writes it.
+
+ @author JBinHex contributors
+ */
+public final class XXHash64 extends MessageDigest {
+
+    /**
+     The name under which BinHex4InputStream.setDigests knows this digest.
+     */
+    public final static String algorithm = "XXH64";
+
+    private final static long prime1 = 0x9E3779B185EBCA87L;
+    private final static long prime2 = 0xC2B2AE3D27D4EB4FL;
+    private final static long prime3 = 0x165667B19E3779F9L;
+    private final static long prime4 = 0x85EBCA77C2B2AE63L;
+    private final static long prime5 = 0x27D4EB2F165667C5L;
+
+    public XXHash64()
+    {
+        super(algorithm);
+        engineReset();
+    }
+
+    protected int engineGetDigestLength()
+    {
+        return 8;
+    }
+
+    protected void engineReset()
+    {
+        v1 = prime1 + prime2;
+        v2 = prime2;
+        v3 = 0;
+        v4 = -prime1;
+        total = 0;
+        fill = 0;
+    }
+
+    protected void engineUpdate(byte input)
+    {
+        stripe[fill++] = input;
+        total++;
+        if(fill == 32)
+        {
+            consume(stripe, 0);
+            fill = 0;
+        }
+    }
+
+    protected void engineUpdate(byte[] input, int offset, int len)
+    {
+        total += len;
+        int end = offset + len;
+        if(fill > 0)
+        {
+            int n = Math.min(32 - fill, len);
+            System.arraycopy(input, offset, stripe, fill, n);
+            fill += n;
+            offset += n;
+            if(fill < 32)
+                return;
+            consume(stripe, 0);
+            fill = 0;
+        }
+        for(; offset <= end - 32; offset += 32)
+            consume(input, offset);
+        fill = end - offset;
+        System.arraycopy(input, offset, stripe, 0, fill);
+    }
+
+    protected byte[] engineDigest()
+    {
+        long h;
+        if(total >= 32)
+        {
+            h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7)
+                    + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            h = merge(h, v1);
+            h = merge(h, v2);
+            h = merge(h, v3);
+            h = merge(h, v4);
+        }
+        else
+            h = prime5;
+        h += total;
+
+        int i = 0;
+        for(; i <= fill - 8; i += 8)
+        {
+            h ^= round(0, long64(stripe, i));
+            h = Long.rotateLeft(h, 27) * prime1 + prime4;
+        }
+        if(i <= fill - 4)
+        {
+            h ^= (int32(stripe, i) & 0xffffffffL) * prime1;
+            h = Long.rotateLeft(h, 23) * prime2 + prime3;
+            i += 4;
+        }
+        for(; i < fill; i++)
+        {
+            h ^= (stripe[i] & 0xff) * prime5;
+            h = Long.rotateLeft(h, 11) * prime1;
+        }
+
+        h ^= h >>> 33;
+        h *= prime2;
+        h ^= h >>> 29;
+        h *= prime3;
+        h ^= h >>> 32;
+
+        engineReset();
+        byte[] digest = new byte[8];
+        for(int j = 7; j >= 0; j--, h >>>= 8)
+            digest[j] = (byte)h;
+        return digest;
+    }
+
+    private void consume(byte[] b, int off)
+    {
+        v1 = round(v1, long64(b, off));
+        v2 = round(v2, long64(b, off + 8));
+        v3 = round(v3, long64(b, off + 16));
+        v4 = round(v4, long64(b, off + 24));
+    }
+
+    private static long round(long acc, long input)
+    {
+        return Long.rotateLeft(acc + input * prime2, 31) * prime1;
+    }
+
+    private static long merge(long h, long v)
+    {
+        return (h ^ round(0, v)) * prime1 + prime4;
+    }
+
+    /**
+     Eight bytes, least significant first.
+     */
+    private static long long64(byte[] b, int i)
+    {
+        return (int32(b, i) & 0xffffffffL) | ((long)int32(b, i + 4) << 32);
+    }
+
+    /**
+     Four bytes, least significant first.
+     */
+    private static int int32(byte[] b, int i)
+    {
+        return (b[i] & 0xff) | (b[i + 1] & 0xff) << 8
+                | (b[i + 2] & 0xff) << 16 | (b[i + 3] & 0xff) << 24;
+    }
+
+    /**
+     The four accumulators, the number of bytes so far, and the bytes that
+     don't fill a 32-byte stripe yet.
+     */
+    private long v1, v2, v3, v4;
+    private long total;
+    private final byte[] stripe = new byte[32];
+    private int fill;
+}
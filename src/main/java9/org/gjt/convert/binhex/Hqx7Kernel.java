@@ -0,0 +1,163 @@
+/*
+  JBinHex
+  Copyright (C) 2026, the JBinHex contributors
+
+  This program is free software; you can redistribute it and/or
+  modify it under the terms of the GNU General Public License
+  as published by the Free Software Foundation; either version 2
+  of the License, or (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program; if not, write to the Free Software
+  Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+*/
+
+package org.gjt.convert.binhex;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ The inner loop of Hqx7 decoding: turns runs of valid characters into 8-bit
+ bytes. Anything else, such as line breaks, the closing : or illegal
+ characters, is left to the caller's slow path.
+ <p>
+ This is the version for Java 9 and later. It loads eight characters at a
+ time into a long, rejects groups with whitespace or 8-bit characters with
+ one SWAR (SIMD within a register) test, packs the eight six-bit values
+ into six bytes in a long, tests those for the RLE character in one go,
+ and stores them with one write. Groups it can't handle that way go
+ through the same four-character loop as the Java 8 version.
+ <p>
+ Setting the system property <code>org.gjt.convert.binhex.scalar</code>
+ to true makes this class use only the four-character loop.
+
+ @author JBinHex contributors
+ */
+final class Hqx7Kernel {
+
+    /**
+     True if the system property asks for the four-character loop only.
+     */
+    private final static boolean scalar = Boolean.getBoolean("org.gjt.convert.binhex.scalar");
+
+    /**
+     Describes the implementation, for diagnostics and benchmarks.
+     */
+    final static String name = scalar ? "scalar" : "swar";
+
+    private final static VarHandle ints =
+            MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    private final static VarHandle shorts =
+            MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.BIG_ENDIAN);
+
+    private final static long ones = 0x0101010101010101L;
+    private final static long highBits = 0x8080808080808080L;
+
+    private Hqx7Kernel()
+    {
+    }
+
+    /**
+     Decodes groups of valid characters from <code>in</code> into
+     <code>out</code>, starting at <code>pos</code>. Stops at the first group
+     of four that contains anything else, when less than four characters are
+     left, when the output has no room for another three bytes, or, if
+     <code>stopAtRLE</code> is true, at a group that decodes to the RLE
+     character 0x90. The input position is advanced past the groups that
+     were decoded.
+
+     @return
+        the index in <code>out</code> after the last byte written
+     */
+    static int decode(ByteBuffer in, byte[] out, int pos, int max, boolean stopAtRLE)
+    {
+        if(!scalar && in.order() == ByteOrder.BIG_ENDIAN)
+            pos = decodeLongs(in, out, pos, max, stopAtRLE);
+        return decodeQuads(in, out, pos, max, stopAtRLE);
+    }
+
+    /**
+     Eight characters into six bytes at a time.
+     */
+    private static int decodeLongs(ByteBuffer in, byte[] out, int pos, int max, boolean stopAtRLE)
+    {
+        final byte[] table = Hqx7_to_Hqx8InputStream.sixBitTable;
+        final int invalid = Hqx7_to_Hqx8InputStream.invalidEntry;
+        int p = in.position();
+        for(int last = in.limit() - 8; p <= last && max - pos >= 6; p += 8)
+        {
+            long chars = in.getLong(p);
+            // All valid characters are between '!' and 'r'. A byte below
+            // '!' borrows in the subtraction and sets its high bit; a byte
+            // with its high bit set is caught by the or. A borrow can only
+            // make this stop too early, never too late.
+            if((((chars - 0x2121212121212121L) | chars) & highBits) != 0)
+                break;
+
+            int v0 = table[(int)(chars >>> 56)];
+            int v1 = table[(int)(chars >>> 48) & 0x7f];
+            int v2 = table[(int)(chars >>> 40) & 0x7f];
+            int v3 = table[(int)(chars >>> 32) & 0x7f];
+            int v4 = table[(int)(chars >>> 24) & 0x7f];
+            int v5 = table[(int)(chars >>> 16) & 0x7f];
+            int v6 = table[(int)(chars >>> 8) & 0x7f];
+            int v7 = table[(int)chars & 0x7f];
+            if(((v0 | v1 | v2 | v3 | v4 | v5 | v6 | v7) & invalid) != 0)
+                break;
+
+            // 48 bits, in the top six bytes of the long
+            long bytes = ((long)v0 << 58) | ((long)v1 << 52) | ((long)v2 << 46)
+                    | ((long)v3 << 40) | ((long)v4 << 34) | ((long)v5 << 28)
+                    | ((long)v6 << 22) | ((long)v7 << 16);
+            if(stopAtRLE)
+            {
+                // Classic zero byte test on the six bytes xor 0x90
+                long x = bytes ^ 0x9090909090900000L;
+                if(((x - (ones << 16)) & ~x & (highBits << 16)) != 0)
+                    break;
+            }
+            ints.set(out, pos, (int)(bytes >>> 32));
+            shorts.set(out, pos + 4, (short)(bytes >>> 16));
+            pos += 6;
+        }
+        in.position(p);
+        return pos;
+    }
+
+    private static int decodeQuads(ByteBuffer in, byte[] out, int pos, int max, boolean stopAtRLE)
+    {
+        final byte[] table = Hqx7_to_Hqx8InputStream.sixBitTable;
+        final int invalid = Hqx7_to_Hqx8InputStream.invalidEntry;
+        final int rle = RLE_CRCInputStream.rleChar;
+        int p = in.position();
+        for(int last = in.limit() - 4; p <= last && max - pos >= 3; p += 4)
+        {
+            int v0 = table[in.get(p) & 0x7f];
+            int v1 = table[in.get(p + 1) & 0x7f];
+            int v2 = table[in.get(p + 2) & 0x7f];
+            int v3 = table[in.get(p + 3) & 0x7f];
+            // Valid entries are 0..63, so only invalidEntry has bit 6 set.
+            if(((v0 | v1 | v2 | v3) & invalid) != 0)
+                break;
+            int b0 = (v0 << 2) | (v1 >>> 4);
+            int b1 = ((v1 << 4) | (v2 >>> 2)) & 0xff;
+            int b2 = ((v2 << 6) | v3) & 0xff;
+            if(stopAtRLE && (b0 == rle || b1 == rle || b2 == rle))
+                break;
+            out[pos] = (byte)b0;
+            out[pos + 1] = (byte)b1;
+            out[pos + 2] = (byte)b2;
+            pos += 3;
+        }
+        in.position(p);
+        return pos;
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package org.gjt.convert.binhex;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.gjt.convert.binhex.DecodeCacheTest.deleteTree;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * BatchDecoderTest.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (umjammer)
+ * @version 0.00 2026/10/16 umjammer initial version <br>
+ */
+class BatchDecoderTest {
+
+    Path dir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        dir = Files.createTempDirectory("batch");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        deleteTree(dir);
+    }
+
+    static Path write(Path dir, String file, byte[] content) throws IOException {
+        Path path = dir.resolve(file);
+        Files.createDirectories(path.getParent());
+        Files.write(path, content);
+        return path;
+    }
+
+    @Test
+    void testDirectoryTree() throws Exception {
+        byte[][] data = new byte[20][];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = HqxTestData.sample(1000 * i, 60 + i);
+            write(dir, "sub" + (i % 3) + "/f" + i + ".hqx", HqxTestData.encode("out" + i, data[i], new byte[i]));
+        }
+        byte[] bad = HqxTestData.encode("bad", HqxTestData.sample(5000, 99), new byte[0]);
+        int i = bad.length / 2;
+        while (bad[i] == '\n' || bad[i] == '!')
+            i++;
+        bad[i] = '!';
+        write(dir, "sub0/bad.hqx", bad);
+        write(dir, "sub1/truncated.HQX", Arrays.copyOf(bad, 100));
+        write(dir, "sub2/ignored.txt", new byte[10]);
+
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        BatchDecoder decoder = new BatchDecoder(true, true);
+        decoder.setThreads(4);
+        decoder.setLog(new PrintStream(log, true));
+        BatchDecoder.Summary summary = decoder.run(Collections.singletonList(dir));
+
+        assertEquals(20, summary.getSucceeded());
+        assertEquals(1, summary.getCRCFailures());
+        assertEquals(1, summary.getFailures());
+        assertTrue(summary.toString().startsWith("22 files: 20 decoded, 1 CRC failures, 1 other failures"), summary.toString());
+        assertTrue(log.toString().contains("bad.hqx: Incorrect CRC"), log.toString());
+        for (i = 0; i < data.length; i++) {
+            Path sub = dir.resolve("sub" + (i % 3));
+            assertArrayEquals(data[i], Files.readAllBytes(sub.resolve("out" + i)));
+            assertArrayEquals(new byte[i], Files.readAllBytes(sub.resolve("out" + i + ".resource")));
+        }
+    }
+
+    @Test
+    void testVerifyOnly() throws Exception {
+        write(dir, "good.hqx", HqxTestData.encode("good", HqxTestData.sample(5000, 80), new byte[0]));
+        byte[] hqx8 = HqxTestData.hqx8("bad", HqxTestData.sample(5000, 81), new byte[100]);
+        hqx8[hqx8.length - 1] ^= 1;
+        write(dir, "bad.hqx", HqxTestData.hqx7(HqxTestData.rle(hqx8), "\n").getBytes(StandardCharsets.US_ASCII));
+
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        BatchDecoder decoder = new BatchDecoder(true, true);
+        decoder.setVerifyOnly(true);
+        decoder.setLog(new PrintStream(log, true));
+        BatchDecoder.Summary summary = decoder.run(Collections.singletonList(dir));
+
+        assertEquals(1, summary.getSucceeded());
+        assertEquals(1, summary.getCRCFailures());
+        assertEquals(0, summary.getBytesOut());
+        assertTrue(log.toString().contains("bad.hqx: CRCStatus["), log.toString());
+        assertFalse(Files.exists(dir.resolve("good")));
+    }
+
+    @Test
+    void testOutputDirectory() throws Exception {
+        Path in = Files.createDirectory(dir.resolve("in"));
+        Path out = Files.createDirectory(dir.resolve("out"));
+        byte[] data = HqxTestData.sample(3000, 70);
+        Path a = write(in, "a.hqx", HqxTestData.encode("../same", data, new byte[0]));
+        Path b = write(in, "b.hqx", HqxTestData.encode("../same", data, new byte[0]));
+
+        BatchDecoder decoder = new BatchDecoder(true, false);
+        decoder.setThreads(1);
+        decoder.setOutputDirectory(out);
+        decoder.setLog(new PrintStream(new ByteArrayOutputStream()));
+        BatchDecoder.Summary summary = decoder.run(Arrays.asList(a, b));
+
+        // the same name from both headers: the second one isn't written over the first
+        assertEquals(1, summary.getSucceeded());
+        assertEquals(1, summary.getFailures());
+        assertArrayEquals(data, Files.readAllBytes(out.resolve("..:same")));
+        assertEquals(data.length, summary.getBytesOut());
+    }
+
+    @Test
+    void testSafeFileName() {
+        assertEquals("a:b", BatchDecoder.safeFileName("a/b"));
+        assertEquals("_..", BatchDecoder.safeFileName(".."));
+        assertEquals("_", BatchDecoder.safeFileName(""));
+        assertEquals("Read Me", BatchDecoder.safeFileName("Read Me"));
+    }
+}
+
+/* */
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package org.gjt.convert.binhex;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+import static org.gjt.convert.binhex.BinHex4InputStreamTest.readFully;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * BinHex4FileTest.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (umjammer)
+ * @version 0.00 2026/10/16 umjammer initial version <br>
+ */
+class BinHex4FileTest {
+
+    static final byte[] data = HqxTestData.sample(60000, 30);
+    static final byte[] resource = HqxTestData.sample(20000, 31);
+
+    static Path file() throws IOException {
+        Path file = Files.createTempFile("random", ".hqx");
+        file.toFile().deleteOnExit();
+        Files.write(file, HqxTestData.encode("random", data, resource));
+        return file;
+    }
+
+    /** not a FileChannel, so it is read through a buffer instead of mapped */
+    static SeekableByteChannel plain(FileChannel channel) {
+        return new SeekableByteChannel() {
+            public int read(ByteBuffer dst) throws IOException { return channel.read(dst); }
+            public int write(ByteBuffer src) throws IOException { return channel.write(src); }
+            public long position() throws IOException { return channel.position(); }
+            public SeekableByteChannel position(long p) throws IOException { channel.position(p); return this; }
+            public long size() throws IOException { return channel.size(); }
+            public SeekableByteChannel truncate(long size) throws IOException { channel.truncate(size); return this; }
+            public boolean isOpen() { return channel.isOpen(); }
+            public void close() throws IOException { channel.close(); }
+        };
+    }
+
+    @Test
+    void testAnyOrder() throws IOException {
+        Path file = file();
+        for (SeekableByteChannel channel : new SeekableByteChannel[] { FileChannel.open(file), plain(FileChannel.open(file)) }) {
+            try (BinHex4File binhex = new BinHex4File(channel)) {
+                assertArrayEquals(resource, readFully(binhex.openResourceFork(), 1000));
+                assertArrayEquals(data, readFully(binhex.openDataFork(), 1000));
+                assertArrayEquals(resource, readFully(binhex.openResourceFork(), 1000));
+                assertEquals("random", binhex.getHeader().getFileName());
+            }
+        }
+    }
+
+    @Test
+    void testConcurrent() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (BinHex4File binhex = new BinHex4File(plain(FileChannel.open(file())))) {
+            List<Future<byte[]>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                boolean data = i % 2 == 0;
+                results.add(executor.submit(() -> {
+                    try (InputStream in = data ? binhex.openDataFork() : binhex.openResourceFork()) {
+                        return readFully(in, 333);
+                    }
+                }));
+            }
+            for (int i = 0; i < results.size(); i++)
+                assertArrayEquals(i % 2 == 0 ? data : resource, results.get(i).get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testSwitchBack() throws IOException {
+        try (BinHex4InputStream in = new BinHex4InputStream(file())) {
+            in.useResourceFork();
+            assertArrayEquals(resource, readFully(in, 1000));
+            in.useDataFork();
+            assertArrayEquals(data, readFully(in, 1000));
+            in.useResourceFork();
+            assertArrayEquals(resource, readFully(in, 1000));
+        }
+    }
+}
+
+/* */
@@ -6,7 +6,21 @@
 
 package org.gjt.convert.binhex;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import org.junit.jupiter.api.Test;
 
@@ -26,6 +40,327 @@ class BinHex4InputStreamTest {
         fail("Not yet implemented");
     }
 
+    static byte[] readFully(InputStream in, int bufferSize) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[bufferSize];
+        int r;
+        while ((r = in.read(buf)) != -1)
+            out.write(buf, 0, r);
+        return out.toByteArray();
+    }
+
+    @Test
+    void testBothForks() throws IOException {
+        byte[] data = HqxTestData.sample(100000, 5);
+        byte[] resource = HqxTestData.sample(7000, 6);
+        byte[] hqx7 = HqxTestData.encode("both.bin", data, resource);
+        for (int size : new int[] { 1, 3, 1024, 100000 }) {
+            BinHex4InputStream in = new BinHex4InputStream(new ByteArrayInputStream(hqx7));
+            BinHex4InputStream.Header header = in.getHeader();
+            assertEquals("both.bin", header.getFileName());
+            assertEquals("TEXT", header.getType());
+            assertEquals("ttxt", header.getCreator());
+            assertEquals(data.length, header.getDataLength());
+            assertEquals(resource.length, header.getResourceLength());
+            assertArrayEquals(data, readFully(in, size));
+            in.useResourceFork();
+            assertArrayEquals(resource, readFully(in, size));
+            in.close();
+        }
+    }
+
+    @Test
+    void testSingleByteReads() throws IOException {
+        byte[] data = HqxTestData.sample(3000, 7);
+        BinHex4InputStream in = new BinHex4InputStream(new ByteArrayInputStream(HqxTestData.encode("a", data, new byte[0])));
+        for (byte b : data)
+            assertEquals(b & 0xff, in.read());
+        assertEquals(-1, in.read());
+        assertThrows(EOFException.class, in::read);
+    }
+
+    @Test
+    void testSkipDataFork() throws IOException {
+        byte[] resource = HqxTestData.sample(9000, 8);
+        for (int dataLength : new int[] { 0, 1, 50000 }) {
+            BinHex4InputStream in = new BinHex4InputStream(new ByteArrayInputStream(
+                    HqxTestData.encode("skip", HqxTestData.sample(dataLength, 9), resource)));
+            in.useResourceFork();
+            assertArrayEquals(resource, readFully(in, 4096));
+        }
+    }
+
+    @Test
+    void testSkipRuns() throws IOException {
+        // long runs with a few literal bytes in between
+        byte[] data = new byte[3000000];
+        for (int i = 0; i < data.length; i += 100000)
+            data[i] = (byte) (i / 100000);
+        Arrays.fill(data, 1000000, 1200000, (byte) 0x90);
+        byte[] resource = HqxTestData.sample(5000, 15);
+        byte[] hqx7 = HqxTestData.encode("runs", data, resource);
+
+        BinHex4InputStream in = new BinHex4InputStream(new ByteArrayInputStream(hqx7));
+        assertEquals(12345, in.skip(12345));
+        assertEquals(data[12345] & 0xff, in.read());
+        assertEquals(1100000 - 12346, in.skip(1100000 - 12346));
+        assertEquals(data[1100000] & 0xff, in.read());
+        assertEquals(data.length - 1100001, in.skip(Long.MAX_VALUE));
+        assertEquals(-1, in.read());
+        in.useResourceFork();
+        assertArrayEquals(resource, readFully(in, 4096));
+
+        // skipping still checks the data fork's CRC
+        int i = hqx7.length / 2;
+        while (hqx7[i] == '\n' || hqx7[i] == '!')
+            i++;
+        hqx7[i] = '!';
+        BinHex4InputStream in2 = new BinHex4InputStream(new ByteArrayInputStream(hqx7));
+        IOException e = assertThrows(IOException.class, in2::useResourceFork);
+        assertTrue(e.getMessage().startsWith("Incorrect CRC"), e.getMessage());
+    }
+
+    @Test
+    void testDecodeHandler() throws IOException {
+        byte[] data = HqxTestData.sample(40000, 16);
+        byte[] resource = HqxTestData.sample(7000, 17);
+        BinHex4InputStream in = new BinHex4InputStream(new ByteArrayInputStream(HqxTestData.encode("push", data, resource)));
+        ByteArrayOutputStream dataOut = new ByteArrayOutputStream();
+        ByteArrayOutputStream resourceOut = new ByteArrayOutputStream();
+        List<String> calls = new ArrayList<>();
+        in.decode(new BinHexHandler() {
+            public void header(BinHex4InputStream.Header header) {
+                calls.add("header " + header.getFileName());
+            }
+            public void dataFork(ByteBuffer chunk) {
+                assertEquals(0, resourceOut.size());
+                dataOut.write(chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining());
+            }
+            public void resourceFork(ByteBuffer chunk) {
+                resourceOut.write(chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining());
+            }
+            public void end(CRCStatus crcStatus) {
+                assertTrue(crcStatus.isValid());
+                assertEquals(HqxTestData.referenceCRC(data, 0, data.length), crcStatus.getDataForkCRC());
+                assertEquals(HqxTestData.referenceCRC(resource, 0, resource.length), crcStatus.getResourceForkCRC());
+                calls.add("end");
+            }
+        });
+        assertEquals(Arrays.asList("header push", "end"), calls);
+        assertArrayEquals(data, dataOut.toByteArray());
+        assertArrayEquals(resource, resourceOut.toByteArray());
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    void testReset() throws IOException {
+        byte[][] forks = { HqxTestData.sample(5000, 18), HqxTestData.sample(100, 19), new byte[0], HqxTestData.sample(7000, 22) };
+        BinHex4InputStream in = new BinHex4InputStream(new ByteArrayInputStream(HqxTestData.encode("first", forks[0], forks[1])));
+        assertEquals(forks[0][0] & 0xff, in.read());
+        in.useResourceFork();
+
+        in.reset(new ByteArrayInputStream(HqxTestData.encode("second", forks[2], forks[3])));
+        assertEquals("second", in.getHeader().getFileName());
+        assertEquals(-1, in.read());
+        in.useResourceFork();
+        assertArrayEquals(forks[3], readFully(in, 1000));
+        in.close();
+
+        // after close and after an error
+        byte[] hqx7 = HqxTestData.encode("crc", forks[0], forks[1]);
+        int i = hqx7.length / 2;
+        while (hqx7[i] == '\n' || hqx7[i] == '!')
+            i++;
+        hqx7[i] = '!';
+        in.reset(new ByteArrayInputStream(hqx7));
+        assertThrows(IOException.class, () -> readFully(in, 1000));
+        in.reset(new ByteArrayInputStream(HqxTestData.encode("third", forks[0], forks[1])));
+        assertArrayEquals(forks[0], readFully(in, 1000));
+        in.useResourceFork();
+        assertArrayEquals(forks[1], readFully(in, 1000));
+    }
+
+    @Test
+    void testMapped() throws IOException {
+        byte[] data = HqxTestData.sample(70000, 13);
+        byte[] resource = HqxTestData.sample(2000, 14);
+        Path file = Files.createTempFile("mapped", ".hqx");
+        file.toFile().deleteOnExit();
+        Files.write(file, HqxTestData.encode("mapped", data, resource));
+
+        try (BinHex4InputStream in = new BinHex4InputStream(file)) {
+            assertEquals("mapped", in.getHeader().getFileName());
+            assertArrayEquals(data, readFully(in, 8192));
+            in.useResourceFork();
+            assertArrayEquals(resource, readFully(in, 8192));
+        }
+
+        // windows much smaller than the file, and not a multiple of 4
+        FileChannel channel = FileChannel.open(file);
+        try (BinHex4InputStream in = new BinHex4InputStream(new HqxDecoder(new HqxSource.Mapped(channel, 0, 1001), false))) {
+            assertArrayEquals(data, readFully(in, 8192));
+            in.useResourceFork();
+            assertArrayEquals(resource, readFully(in, 8192));
+        }
+        assertFalse(channel.isOpen());
+    }
+
+    @Test
+    void testEightBit() throws IOException {
+        byte[] data = HqxTestData.sample(4000, 10);
+        byte[] resource = HqxTestData.sample(4000, 11);
+        byte[] hqx8 = HqxTestData.rle(HqxTestData.hqx8("eight", data, resource));
+        BinHex4InputStream in = new BinHex4InputStream(new ByteArrayInputStream(hqx8), true);
+        assertArrayEquals(data, readFully(in, 1000));
+        in.useResourceFork();
+        assertArrayEquals(resource, readFully(in, 1000));
+    }
+
+    @Test
+    void testPreamble() throws IOException {
+        byte[] data = HqxTestData.sample(3000, 13);
+        String preamble = HqxTestData.preamble(20000);
+        byte[] hqx7 = (preamble + new String(HqxTestData.encode("mail", data, new byte[0]), StandardCharsets.US_ASCII))
+                .getBytes(StandardCharsets.US_ASCII);
+        DecoderOptions options = new DecoderOptions();
+        options.setInputBufferSize(1000);
+        BinHex4InputStream in = new BinHex4InputStream(new ByteArrayInputStream(hqx7), false, options);
+        assertArrayEquals(data, readFully(in, 1000));
+
+        options.setMaxHeaderScan(preamble.length());
+        in = new BinHex4InputStream(new ByteArrayInputStream(hqx7), false, options);
+        assertArrayEquals(data, readFully(in, 1000));
+
+        options.setMaxHeaderScan(preamble.length() - 1);
+        BinHex4InputStream in2 = new BinHex4InputStream(new ByteArrayInputStream(hqx7), false, options);
+        IOException e = assertThrows(EOFException.class, in2::getHeader);
+        assertEquals("Couldn't find start of Hqx7 part in the first " + (preamble.length() - 1) + " bytes", e.getMessage());
+    }
+
+    @Test
+    void testCorruption() throws IOException {
+        byte[] hqx7 = HqxTestData.encode("crc", HqxTestData.sample(3000, 12), new byte[10]);
+        int i = hqx7.length / 2;
+        while (hqx7[i] == '\n' || hqx7[i] == '!')
+            i++;
+        hqx7[i] = '!';
+        BinHex4InputStream in = new BinHex4InputStream(new ByteArrayInputStream(hqx7));
+        IOException e = assertThrows(IOException.class, () -> readFully(in, 1024));
+        assertTrue(e.getMessage().startsWith("Incorrect CRC"), e.getMessage());
+
+        byte[] truncated = new byte[hqx7.length / 2];
+        System.arraycopy(HqxTestData.encode("crc", HqxTestData.sample(3000, 12), new byte[10]), 0, truncated, 0, truncated.length);
+        BinHex4InputStream in2 = new BinHex4InputStream(new ByteArrayInputStream(truncated));
+        e = assertThrows(EOFException.class, () -> readFully(in2, 1024));
+        assertEquals("EOF reached before closing : character. Possible data corruption.", e.getMessage());
+
+        BinHex4InputStream in3 = new BinHex4InputStream(new ByteArrayInputStream("no binhex here\n".getBytes()));
+        e = assertThrows(EOFException.class, in3::getHeader);
+        assertEquals("Couldn't find start of Hqx7 part", e.getMessage());
+    }
+
+    @Test
+    void testVerify() throws IOException {
+        byte[] data = HqxTestData.sample(100000, 14);
+        byte[] resource = HqxTestData.sample(20000, 15);
+        CRCStatus status = new BinHex4InputStream(new ByteArrayInputStream(HqxTestData.encode("verify", data, resource))).verify();
+        assertTrue(status.isValid(), status.toString());
+        assertEquals(HqxTestData.referenceCRC(data, 0, data.length), status.getDataForkCRC());
+        assertEquals(status.getResourceForkCRC(), status.getCalculatedResourceForkCRC());
+
+        // a wrong data fork doesn't stop the resource fork from being checked
+        byte[] hqx8 = HqxTestData.hqx8("verify", data, resource);
+        int headerLength = 1 + "verify".length() + 1 + 4 + 4 + 2 + 4 + 4 + 2;
+        hqx8[headerLength + 500] ^= 1;
+        byte[] hqx7 = HqxTestData.hqx7(HqxTestData.rle(hqx8), "\r\n").getBytes(StandardCharsets.US_ASCII);
+        try (BinHex4InputStream in = new BinHex4InputStream(new ByteArrayInputStream(hqx7))) {
+            status = in.verify();
+            assertFalse(status.isValid());
+            assertNotEquals(status.getDataForkCRC(), status.getCalculatedDataForkCRC());
+            assertEquals(HqxTestData.referenceCRC(resource, 0, resource.length), status.getCalculatedResourceForkCRC());
+            assertEquals(status.getResourceForkCRC(), status.getCalculatedResourceForkCRC());
+            assertTrue(status.toString().contains(", dataFork = " + Integer.toHexString(status.getDataForkCRC()) + " (calculated "), status.toString());
+            assertEquals(-1, in.read());
+        }
+
+        // without the header there is nothing to verify
+        hqx8[3] ^= 1;
+        byte[] badHeader = HqxTestData.hqx7(HqxTestData.rle(hqx8), "\n").getBytes(StandardCharsets.US_ASCII);
+        CRCException e = assertThrows(CRCException.class, () -> new BinHex4InputStream(new ByteArrayInputStream(badHeader)).verify());
+        assertEquals("header", e.getSection());
+    }
+
+    static byte[] digest(String algorithm, byte[] b) throws Exception {
+        MessageDigest digest = XXHash64.algorithm.equals(algorithm) ? new XXHash64() : MessageDigest.getInstance(algorithm);
+        return digest.digest(b);
+    }
+
+    @Test
+    void testDigests() throws Exception {
+        byte[] data = HqxTestData.sample(300000, 16);
+        byte[] resource = HqxTestData.sample(50000, 17);
+        byte[] hqx7 = HqxTestData.encode("digests", data, resource);
+        String[] algorithms = { "SHA-256", "MD5", XXHash64.algorithm };
+
+        // data fork read, resource fork skipped with all its runs
+        try (BinHex4InputStream in = new BinHex4InputStream(new ByteArrayInputStream(hqx7))) {
+            in.setDigests(algorithms);
+            assertArrayEquals(data, readFully(in, 777));
+            for (String algorithm : algorithms)
+                assertArrayEquals(digest(algorithm, data), in.getDataForkDigest(algorithm), algorithm);
+            assertNull(in.getResourceForkDigest("MD5"));
+            assertNull(in.getDataForkDigest("SHA-1"));
+            in.useResourceFork();
+            assertEquals(resource.length, in.skip(Long.MAX_VALUE));
+            for (String algorithm : algorithms)
+                assertArrayEquals(digest(algorithm, resource), in.getResourceForkDigest(algorithm), algorithm);
+        }
+
+        // both forks pushed
+        BinHex4InputStream in2 = new BinHex4InputStream(new ByteArrayInputStream(hqx7));
+        in2.setDigests("xxh64");
+        in2.decode(new BinHexHandler() {
+            public void header(BinHex4InputStream.Header header) { }
+            public void dataFork(ByteBuffer chunk) { }
+            public void resourceFork(ByteBuffer chunk) { }
+            public void end(CRCStatus crcStatus) { }
+        });
+        assertArrayEquals(digest(XXHash64.algorithm, data), in2.getDataForkDigest("xxh64"));
+        assertArrayEquals(digest(XXHash64.algorithm, resource), in2.getResourceForkDigest("xxh64"));
+
+        Path file = Files.createTempFile("digests", ".hqx");
+        file.toFile().deleteOnExit();
+        Files.write(file, hqx7);
+        try (BinHex4File binhex = new BinHex4File(file)) {
+            // seeking forward from the start still decodes everything in order
+            BinHex4InputStream in3 = binhex.openResourceFork();
+            in3.setDigests("MD5");
+            in3.seek(1000);
+            readFully(in3, 999);
+            assertArrayEquals(digest("MD5", resource), in3.getResourceForkDigest("MD5"));
+
+            // restarting in the middle of a fork from a checkpoint, or
+            // starting on a partly read fork, gives no digest
+            binhex.setSeekIndex(new SeekIndex(4096));
+            readFully(binhex.openResourceFork(), 999);
+            BinHex4InputStream in5 = binhex.openResourceFork();
+            in5.setDigests("MD5");
+            in5.seek(20000);
+            readFully(in5, 999);
+            assertNull(in5.getResourceForkDigest("MD5"));
+
+            BinHex4InputStream in4 = binhex.openDataFork();
+            in4.read();
+            in4.setDigests("MD5");
+            readFully(in4, 999);
+            assertNull(in4.getDataForkDigest("MD5"));
+            in4.useResourceFork();
+            readFully(in4, 999);
+            assertArrayEquals(digest("MD5", resource), in4.getResourceForkDigest("MD5"));
+        }
+        assertThrows(NoSuchAlgorithmException.class, () -> new BinHex4InputStream(new ByteArrayInputStream(hqx7)).setDigests("no such digest"));
+    }
+
     public static void main(String[] args) {
         try (BinHex4InputStream in = new BinHex4InputStream(System.in)) {
             System.err.println(in.getHeader());
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package org.gjt.convert.binhex;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.gjt.convert.binhex.BinHex4InputStream.Header;
+import org.junit.jupiter.api.Test;
+
+import static org.gjt.convert.binhex.BinHex4InputStreamTest.readFully;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * BinHex4OutputStreamTest.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (umjammer)
+ * @version 0.00 2026/10/16 umjammer initial version <br>
+ */
+class BinHex4OutputStreamTest {
+
+    static final byte[] data = HqxTestData.sample(100000, 110);
+    static final byte[] resource = HqxTestData.sample(20000, 111);
+
+    static byte[] encode(String lineSeparator, boolean eightBit, int chunk, byte[] data, byte[] resource) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Header header = new Header("encoded", "TEXT", "ttxt", 0x0100, data.length, resource.length);
+        try (BinHex4OutputStream out = lineSeparator != null ? new BinHex4OutputStream(bytes, header, lineSeparator)
+                : new BinHex4OutputStream(bytes, header, eightBit)) {
+            for (byte[] fork : new byte[][] { data, resource }) {
+                for (int i = 0; i < fork.length; i += chunk) {
+                    if (chunk == 1)
+                        out.write(fork[i]);
+                    else
+                        out.write(fork, i, Math.min(chunk, fork.length - i));
+                }
+                if (fork == data)
+                    out.useResourceFork();
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    @Test
+    void testSameAsReference() throws IOException {
+        for (int chunk : new int[] { 1, 2, 3, 7, 64, 4096, 1 << 20 }) {
+            assertArrayEquals(HqxTestData.encode("encoded", data, resource), encode(null, false, chunk, data, resource), "chunk " + chunk);
+            assertArrayEquals(HqxTestData.rle(HqxTestData.hqx8("encoded", data, resource)), encode(null, true, chunk, data, resource));
+        }
+        String crlf = HqxTestData.hqx7(HqxTestData.rle(HqxTestData.hqx8("encoded", data, resource)), "\r\n");
+        assertEquals(crlf, new String(encode("\r\n", false, 1000, data, resource), StandardCharsets.US_ASCII));
+
+        // long runs and 0x90s
+        byte[] runs = new byte[3000];
+        Arrays.fill(runs, 0, 1000, (byte) 0x90);
+        Arrays.fill(runs, 1000, 1256, (byte) 7);
+        runs[1256] = (byte) 0x90;
+        runs[1257] = (byte) 0x90;
+        assertArrayEquals(HqxTestData.encode("encoded", runs, new byte[0]), encode(null, false, 100, runs, new byte[0]));
+    }
+
+    @Test
+    void testRoundTrip() throws IOException {
+        byte[] hqx7 = encode("\r", false, 333, data, resource);
+        try (BinHex4InputStream in = new BinHex4InputStream(new ByteArrayInputStream(hqx7))) {
+            Header header = in.getHeader();
+            assertEquals("encoded", header.getFileName());
+            assertEquals("TEXT", header.getType());
+            assertEquals("ttxt", header.getCreator());
+            assertEquals(0x0100, header.getFlags());
+            assertArrayEquals(data, readFully(in, 1000));
+            in.useResourceFork();
+            assertArrayEquals(resource, readFully(in, 1000));
+        }
+        try (BinHex4InputStream in = new BinHex4InputStream(new ByteArrayInputStream(encode(null, true, 5000, new byte[0], data)), true)) {
+            assertEquals(0, readFully(in, 1000).length);
+            in.useResourceFork();
+            assertArrayEquals(data, readFully(in, 1000));
+        }
+    }
+
+    @Test
+    void testErrors() throws IOException {
+        Header header = new Header("short", "TEXT", "ttxt", 0, 10, 5);
+        BinHex4OutputStream out = new BinHex4OutputStream(new ByteArrayOutputStream(), header);
+        out.write(new byte[8]);
+        IOException e = assertThrows(IOException.class, () -> out.write(new byte[3]));
+        assertEquals("More bytes than the length of the data fork in the header", e.getMessage());
+        e = assertThrows(IOException.class, out::useResourceFork);
+        assertEquals("Data fork is 2 bytes shorter than in the header", e.getMessage());
+
+        assertThrows(IllegalArgumentException.class, () -> new Header("x", "TEXTS", "ttxt", 0, 0, 0));
+        assertThrows(IllegalArgumentException.class, () -> new Header("x", "TEXT", "ttxt", 0, 1L << 32, 0));
+
+        // a rejected write leaves the CRC alone
+        RLE_CRCOutputStream rle = new RLE_CRCOutputStream(new ByteArrayOutputStream(), true);
+        rle.write(new byte[] { 1, 2, 3 });
+        rle.finish();
+        int crc = rle.getCRC();
+        assertThrows(IOException.class, () -> rle.write(4));
+        assertThrows(IOException.class, () -> rle.write(new byte[] { 4 }));
+        assertEquals(crc, rle.getCRC());
+    }
+}
+
+/* */
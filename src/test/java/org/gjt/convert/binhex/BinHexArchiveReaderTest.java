@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package org.gjt.convert.binhex;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import static org.gjt.convert.binhex.BinHex4InputStreamTest.readFully;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * BinHexArchiveReaderTest.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (umjammer)
+ * @version 0.00 2026/10/16 umjammer initial version <br>
+ */
+class BinHexArchiveReaderTest {
+
+    @Test
+    void testEntries() throws IOException {
+        byte[][] data = new byte[5][];
+        byte[][] resource = new byte[5][];
+        ByteArrayOutputStream mbox = new ByteArrayOutputStream();
+        for (int i = 0; i < data.length; i++) {
+            data[i] = HqxTestData.sample(i == 2 ? 0 : 3000 * i + 17, 80 + i);
+            resource[i] = HqxTestData.sample(500 * i, 90 + i);
+            byte[] hqx7 = HqxTestData.encode("file" + i, data[i], resource[i]);
+            if (i == 3) {
+                int j = hqx7.length / 2;
+                while (hqx7[j] == '\n' || hqx7[j] == '!')
+                    j++;
+                hqx7[j] = '!';
+            }
+            mbox.write(HqxTestData.preamble(7 * i).getBytes());
+            mbox.write(("From someone@example.com\nSubject: part " + i + "\n\n").getBytes());
+            mbox.write(hqx7);
+        }
+        mbox.write("trailing text (\n".getBytes());
+
+        DecoderOptions options = new DecoderOptions();
+        options.setInputBufferSize(777);
+        try (BinHexArchiveReader reader = new BinHexArchiveReader(new ByteArrayInputStream(mbox.toByteArray()), options)) {
+            // read all
+            BinHex4InputStream entry = reader.nextEntry();
+            assertEquals("file0", entry.getHeader().getFileName());
+            assertArrayEquals(data[0], readFully(entry, 1000));
+            entry.useResourceFork();
+            assertArrayEquals(resource[0], readFully(entry, 1000));
+            entry.close();
+
+            // read part of the data fork
+            entry = reader.nextEntry();
+            assertEquals("file1", entry.getHeader().getFileName());
+            byte[] b = new byte[100];
+            assertEquals(100, entry.read(b));
+            assertArrayEquals(Arrays.copyOf(data[1], 100), b);
+
+            // only the resource fork
+            entry = reader.nextEntry();
+            assertEquals("file2", entry.getHeader().getFileName());
+            entry.useResourceFork();
+            assertArrayEquals(resource[2], readFully(entry, 1000));
+
+            // skipping a corrupted file fails once
+            entry = reader.nextEntry();
+            assertEquals("file3", entry.getHeader().getFileName());
+            IOException e = assertThrows(IOException.class, reader::nextEntry);
+            assertTrue(e.getMessage().startsWith("Incorrect CRC"), e.getMessage());
+
+            entry = reader.nextEntry();
+            assertEquals("file4", entry.getHeader().getFileName());
+            assertArrayEquals(data[4], readFully(entry, 1000));
+
+            assertNull(reader.nextEntry());
+            assertNull(reader.nextEntry());
+        }
+
+        try (BinHexArchiveReader reader = new BinHexArchiveReader(new ByteArrayInputStream("no binhex here\n".getBytes()))) {
+            assertNull(reader.nextEntry());
+        }
+    }
+}
+
+/* */
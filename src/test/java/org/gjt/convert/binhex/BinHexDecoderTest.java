@@ -0,0 +1,95 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package org.gjt.convert.binhex;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * BinHexDecoderTest.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (umjammer)
+ * @version 0.00 2026/10/16 umjammer initial version <br>
+ */
+class BinHexDecoderTest {
+
+    private static void decode(byte[] hqx7, byte[] data, byte[] resource, int inChunk, ByteBuffer out) throws IOException {
+        BinHexDecoder decoder = new BinHexDecoder();
+        ByteArrayOutputStream[] forks = { new ByteArrayOutputStream(), new ByteArrayOutputStream() };
+        int fork = -1;
+        int offset = 0;
+        ByteBuffer in = ByteBuffer.allocateDirect(inChunk);
+        in.flip();
+        boolean done = false;
+        while (!done) {
+            BinHexDecoder.Result result = decoder.decode(in, out, offset == hqx7.length);
+            out.flip();
+            while (out.hasRemaining())
+                forks[fork].write(out.get());
+            out.clear();
+            switch (result) {
+            case UNDERFLOW:
+                in.clear();
+                int n = Math.min(inChunk, hqx7.length - offset);
+                in.put(hqx7, offset, n);
+                offset += n;
+                in.flip();
+                break;
+            case OVERFLOW:
+                break;
+            case HEADER:
+                assertEquals("nio", decoder.getHeader().getFileName());
+                assertEquals(-1, fork);
+                fork = 0;
+                break;
+            case DATA_FORK_END:
+                assertEquals(0, fork);
+                fork = 1;
+                break;
+            case RESOURCE_FORK_END:
+                done = true;
+                break;
+            }
+        }
+        assertArrayEquals(data, forks[0].toByteArray());
+        assertArrayEquals(resource, forks[1].toByteArray());
+    }
+
+    @Test
+    void testDecode() throws IOException {
+        byte[] data = HqxTestData.sample(30000, 20);
+        byte[] resource = HqxTestData.sample(5000, 21);
+        byte[] hqx7 = HqxTestData.encode("nio", data, resource);
+        for (int inChunk : new int[] { 1, 7, 4096, hqx7.length }) {
+            for (int outSize : new int[] { 1, 100, 65536 }) {
+                decode(hqx7, data, resource, inChunk, ByteBuffer.allocate(outSize));
+                decode(hqx7, data, resource, inChunk, ByteBuffer.allocateDirect(outSize));
+            }
+        }
+    }
+
+    @Test
+    void testTruncated() throws IOException {
+        byte[] hqx7 = HqxTestData.encode("nio", HqxTestData.sample(3000, 22), new byte[0]);
+        BinHexDecoder decoder = new BinHexDecoder();
+        ByteBuffer in = ByteBuffer.wrap(hqx7, 0, hqx7.length / 2);
+        ByteBuffer out = ByteBuffer.allocate(10000);
+        assertEquals(BinHexDecoder.Result.HEADER, decoder.decode(in, out));
+        assertEquals(BinHexDecoder.Result.UNDERFLOW, decoder.decode(in, out));
+        EOFException e = assertThrows(EOFException.class, () -> decoder.decode(in, out, true));
+        assertEquals("EOF reached before closing : character. Possible data corruption.", e.getMessage());
+    }
+}
+
+/* */
@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package org.gjt.convert.binhex;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import static org.gjt.convert.binhex.BinHex4InputStreamTest.readFully;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * BufferPoolTest.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (umjammer)
+ * @version 0.00 2026/10/16 umjammer initial version <br>
+ */
+class BufferPoolTest {
+
+    @Test
+    void testPools() {
+        for (BufferPool pool : new BufferPool[] { new BufferPool.PerThread(2), new BufferPool.Shared(2) }) {
+            byte[] a = pool.acquire(100);
+            assertTrue(a.length >= 100);
+            pool.release(a);
+            assertSame(a, pool.acquire(50));
+            byte[] b = pool.acquire(100);
+            assertNotSame(a, b);
+            pool.release(a);
+            pool.release(b);
+            pool.release(new byte[100]); // more than the pool keeps
+            assertTrue(pool.acquire(200).length >= 200);
+        }
+        assertNotSame(BufferPool.allocating.acquire(10), BufferPool.allocating.acquire(10));
+    }
+
+    @Test
+    void testSteadyState() throws IOException {
+        // counts the arrays the pool had to allocate
+        Map<byte[], Boolean> allocated = new IdentityHashMap<>();
+        BufferPool.Shared shared = new BufferPool.Shared(4);
+        BufferPool counting = new BufferPool() {
+            public byte[] acquire(int size) {
+                byte[] buffer = shared.acquire(size);
+                allocated.put(buffer, true);
+                return buffer;
+            }
+            public void release(byte[] buffer) {
+                shared.release(buffer);
+            }
+        };
+        DecoderOptions options = new DecoderOptions();
+        options.setInputBufferSize(4096);
+        options.setBufferPool(counting);
+
+        byte[] data = HqxTestData.sample(20000, 50);
+        byte[] resource = HqxTestData.sample(2000, 51);
+        byte[] hqx7 = HqxTestData.encode("pool", data, resource);
+        for (int i = 0; i < 10; i++) {
+            try (BinHex4InputStream in = new BinHex4InputStream(new ByteArrayInputStream(hqx7), false, options)) {
+                in.skip(1000);
+                in.useResourceFork();
+                assertArrayEquals(resource, readFully(in, 500));
+            }
+            try (InputStream in = new RLE_CRCInputStream(new ByteArrayInputStream(hqx7), false, options)) {
+                assertEquals("pool".length(), in.read());
+            }
+        }
+        // an input buffer and a skip buffer, used over and over again
+        assertEquals(2, allocated.size());
+    }
+
+    @Test
+    void testReadAfterClose() throws IOException {
+        DecoderOptions options = new DecoderOptions();
+        options.setBufferPool(new BufferPool.Shared(4));
+        byte[] hqx7 = HqxTestData.encode("closed", HqxTestData.sample(100, 52), new byte[0]);
+
+        InputStream hqx8 = new Hqx7_to_Hqx8InputStream(new ByteArrayInputStream(hqx7), options);
+        hqx8.close();
+        InputStream rle = new RLE_CRCInputStream(new ByteArrayInputStream(hqx7), false, options);
+        rle.close();
+        // both buffers are back in the pool; now owned by this stream
+        try (InputStream other = new RLE_CRCInputStream(new ByteArrayInputStream(hqx7), false, options)) {
+            for (InputStream in : new InputStream[] { hqx8, rle }) {
+                assertEquals("Stream closed", assertThrows(IOException.class, in::read).getMessage());
+                assertThrows(IOException.class, () -> in.read(new byte[10], 0, 10));
+                assertThrows(IOException.class, () -> in.skip(10));
+            }
+            assertEquals("closed".length(), other.read());
+        }
+    }
+}
+
+/* */
@@ -6,6 +6,13 @@
 
 package org.gjt.convert.binhex;
 
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -23,6 +30,85 @@ class DeBinHexTest {
         fail("Not yet implemented");
     }
 
+    @Test
+    void testBothForks() throws Exception {
+        byte[] data = HqxTestData.sample(30000, 20);
+        byte[] resource = HqxTestData.sample(3000, 21);
+        Path dataFile = Files.createTempFile("data", ".bin");
+        Path resourceFile = Files.createTempFile("resource", ".bin");
+        dataFile.toFile().deleteOnExit();
+        resourceFile.toFile().deleteOnExit();
+        DeBinHex.action(new ByteArrayInputStream(HqxTestData.encode("both", data, resource)), false,
+                true, dataFile.toString(), true, resourceFile.toString());
+        assertArrayEquals(data, Files.readAllBytes(dataFile));
+        assertArrayEquals(resource, Files.readAllBytes(resourceFile));
+    }
+
+    @Test
+    void testOneFork() throws Exception {
+        byte[] data = HqxTestData.sample(3 * ForkOutput.sz_batch + 5000, 22);
+        byte[] resource = HqxTestData.sample(3000, 23);
+        Path resourceFile = Files.createTempFile("resource", ".bin");
+        resourceFile.toFile().deleteOnExit();
+        // an existing longer file is replaced
+        Files.write(resourceFile, new byte[10000]);
+        DeBinHex.action(new ByteArrayInputStream(HqxTestData.encode("one", data, resource)), false,
+                false, null, true, resourceFile.toString(), true);
+        assertArrayEquals(resource, Files.readAllBytes(resourceFile));
+    }
+
+    @Test
+    void testTruncated() throws Exception {
+        byte[] data = HqxTestData.sample(30000, 24);
+        byte[] hqx7 = HqxTestData.encode("truncated", data, new byte[0]);
+        Path dataFile = Files.createTempFile("data", ".bin");
+        dataFile.toFile().deleteOnExit();
+        assertThrows(EOFException.class, () -> DeBinHex.action(new ByteArrayInputStream(Arrays.copyOf(hqx7, hqx7.length / 2)), false,
+                true, dataFile.toString(), false, null));
+        // not the preallocated length, only what was decoded
+        byte[] written = Files.readAllBytes(dataFile);
+        assertTrue(written.length > 0 && written.length < data.length, String.valueOf(written.length));
+        assertArrayEquals(Arrays.copyOf(data, written.length), written);
+    }
+
+    @Test
+    void testResourceAfterBadDataFork() throws Exception {
+        byte[] hqx8 = HqxTestData.hqx8("bad", HqxTestData.sample(30000, 25), HqxTestData.sample(3000, 26));
+        hqx8[100] ^= 1;
+        byte[] hqx7 = HqxTestData.hqx7(HqxTestData.rle(hqx8), "\n").getBytes(StandardCharsets.US_ASCII);
+        Path resourceFile = Files.createTempFile("resource", ".bin");
+        Files.delete(resourceFile);
+        assertThrows(CRCException.class, () -> DeBinHex.action(new ByteArrayInputStream(hqx7), false,
+                false, null, true, resourceFile.toString()));
+        // not even created
+        assertFalse(Files.exists(resourceFile));
+    }
+
+    @Test
+    void testBothForksAfterBadDataFork() throws Exception {
+        byte[] hqx8 = HqxTestData.hqx8("bad", HqxTestData.sample(30000, 25), HqxTestData.sample(3000, 26));
+        hqx8[100] ^= 1;
+        byte[] hqx7 = HqxTestData.hqx7(HqxTestData.rle(hqx8), "\n").getBytes(StandardCharsets.US_ASCII);
+        Path dataFile = Files.createTempFile("data", ".bin");
+        Path resourceFile = Files.createTempFile("resource", ".bin");
+        Files.delete(resourceFile);
+        try {
+            assertThrows(CRCException.class, () -> DeBinHex.action(new ByteArrayInputStream(hqx7), false,
+                    true, dataFile.toString(), true, resourceFile.toString()));
+            assertFalse(Files.exists(resourceFile));
+
+            // an empty resource fork still gets its file
+            byte[] data = HqxTestData.sample(1000, 27);
+            DeBinHex.action(new ByteArrayInputStream(HqxTestData.encode("empty", data, new byte[0])), false,
+                    true, dataFile.toString(), true, resourceFile.toString());
+            assertArrayEquals(data, Files.readAllBytes(dataFile));
+            assertEquals(0, Files.size(resourceFile));
+        } finally {
+            Files.delete(dataFile);
+            Files.deleteIfExists(resourceFile);
+        }
+    }
+
 }
 
 /* */
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package org.gjt.convert.binhex;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.gjt.convert.binhex.BinHex4InputStreamTest.readFully;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * DecodeCacheTest.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (umjammer)
+ * @version 0.00 2026/10/16 umjammer initial version <br>
+ */
+class DecodeCacheTest {
+
+    Path dir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        dir = Files.createTempDirectory("cache");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        deleteTree(dir);
+    }
+
+    static void deleteTree(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator)
+                Files.delete(file);
+        }
+    }
+
+    static byte[] read(InputStream in) throws IOException {
+        try (InputStream i = in) {
+            return readFully(i, 4096);
+        }
+    }
+
+    static DecodeCache.Result decode(DecodeCache cache, byte[] hqx7) throws IOException {
+        return cache.decode(new ByteArrayInputStream(hqx7));
+    }
+
+    @Test
+    void testHit() throws IOException {
+        byte[] data = HqxTestData.sample(40000, 90);
+        byte[] resource = HqxTestData.sample(4000, 91);
+        byte[] hqx7 = HqxTestData.encode("cached", data, resource);
+
+        DecodeCache cache = new DecodeCache(dir, 1 << 20);
+        DecodeCache.Result first = decode(cache, hqx7);
+        assertFalse(first.isCacheHit());
+        DecodeCache.Result second = decode(cache, hqx7);
+        assertTrue(second.isCacheHit());
+        assertEquals(first.getKey(), second.getKey());
+        assertEquals("cached", second.getHeader().getFileName());
+        assertEquals(data.length, second.getHeader().getDataLength());
+        assertArrayEquals(data, read(second.openDataFork()));
+        assertArrayEquals(resource, read(second.openResourceFork()));
+
+        Path file = Files.createTempFile("cached", ".hqx");
+        try {
+            Files.write(file, hqx7);
+            assertTrue(cache.decode(file).isCacheHit());
+        } finally {
+            Files.delete(file);
+        }
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(data.length + resource.length, cache.getSize());
+        assertEquals(64 + 1 + String.valueOf(hqx7.length).length(), first.getKey().length());
+
+        // kept over a restart
+        DecodeCache reopened = new DecodeCache(dir, 1 << 20);
+        assertTrue(decode(reopened, hqx7).isCacheHit());
+
+        // a different input is a different entry
+        hqx7[hqx7.length / 2] = (byte) (hqx7[hqx7.length / 2] == 'A' ? 'B' : 'A');
+        assertThrows(IOException.class, () -> decode(reopened, hqx7));
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    void testEviction() throws IOException {
+        byte[][] hqx7 = new byte[3][];
+        for (int i = 0; i < hqx7.length; i++)
+            hqx7[i] = HqxTestData.encode("f" + i, HqxTestData.sample(10000, 92 + i), new byte[0]);
+
+        DecodeCache cache = new DecodeCache(dir, 25000);
+        decode(cache, hqx7[0]);
+        decode(cache, hqx7[1]);
+        // 0 was used more recently than 1, so 1 goes when 2 comes
+        assertTrue(decode(cache, hqx7[0]).isCacheHit());
+        decode(cache, hqx7[2]);
+        assertEquals(20000, cache.getSize());
+        assertTrue(decode(cache, hqx7[0]).isCacheHit());
+        assertTrue(decode(cache, hqx7[2]).isCacheHit());
+        assertFalse(decode(cache, hqx7[1]).isCacheHit());
+
+        // the newest entry stays even if it's too big on its own
+        DecodeCache small = new DecodeCache(dir, 5000);
+        assertEquals(10000, small.getSize());
+        DecodeCache.Result result = decode(small, hqx7[0]);
+        assertArrayEquals(HqxTestData.sample(10000, 92), read(result.openDataFork()));
+    }
+
+    @Test
+    void testDamagedEntries() throws IOException {
+        byte[] hqx7 = HqxTestData.encode("whole", HqxTestData.sample(1000, 95), new byte[0]);
+        DecodeCache.Result result = decode(new DecodeCache(dir, 1 << 20), hqx7);
+
+        // an entry that lost a fork, and one that only has a header
+        Path entry = dir.resolve(result.getKey());
+        Files.delete(entry.resolve("resource"));
+        Path partial = Files.createDirectory(dir.resolve("partial"));
+        Files.copy(entry.resolve("header"), partial.resolve("header"));
+
+        DecodeCache cache = new DecodeCache(dir, 1 << 20);
+        assertEquals(0, cache.getSize());
+        assertFalse(Files.exists(entry));
+        assertFalse(Files.exists(partial));
+        assertFalse(decode(cache, hqx7).isCacheHit());
+        assertTrue(decode(cache, hqx7).isCacheHit());
+    }
+}
+
+/* */
@@ -6,12 +6,27 @@
 
 package org.gjt.convert.binhex;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
 
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 
 /**
@@ -27,6 +42,99 @@ class Hqx7_to_Hqx8InputStreamTest {
         fail("Not yet implemented");
     }
 
+    @Test
+    void testBulkRead() throws IOException {
+        byte[] hqx8 = HqxTestData.rle(HqxTestData.hqx8("bulk", HqxTestData.sample(20000, 3), HqxTestData.sample(3000, 4)));
+        for (String lineSeparator : new String[] { "\n", "\r", "\r\n" }) {
+            byte[] hqx7 = HqxTestData.hqx7(hqx8, lineSeparator).getBytes(StandardCharsets.US_ASCII);
+            for (int size : new int[] { 1, 2, 3, 5, 64, 1000, 65536 }) {
+                InputStream in = new Hqx7_to_Hqx8InputStream(new ByteArrayInputStream(hqx7));
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buf = new byte[size];
+                int r;
+                while ((r = in.read(buf)) != -1)
+                    out.write(buf, 0, r);
+                // the last character may carry padding bits only
+                byte[] decoded = out.toByteArray();
+                assertTrue(decoded.length - hqx8.length <= 1);
+                for (int i = 0; i < hqx8.length; i++)
+                    assertEquals(hqx8[i], decoded[i], "at " + i);
+            }
+        }
+    }
+
+    /** loads the Java 9 kernel from the multi-release directory, apart from the rest */
+    static Method java9Kernel() throws Exception {
+        Path classes = Paths.get(Hqx7Kernel.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        Path versions = classes.resolve("META-INF/versions/9");
+        assumeTrue(Files.isDirectory(versions), "no Java 9 classes");
+        ClassLoader loader = new URLClassLoader(new URL[] { versions.toUri().toURL(), classes.toUri().toURL() }, null);
+        Class<?> kernel = loader.loadClass(Hqx7Kernel.class.getName());
+        Method decode = kernel.getDeclaredMethod("decode", ByteBuffer.class, byte[].class, int.class, int.class, boolean.class);
+        decode.setAccessible(true);
+        Field name = kernel.getDeclaredField("name");
+        name.setAccessible(true);
+        assertEquals("swar", name.get(null));
+        return decode;
+    }
+
+    @Test
+    void testKernels() throws Exception {
+        Method java9 = java9Kernel();
+        Random random = new Random(5);
+        byte[] hqx8 = HqxTestData.rle(HqxTestData.hqx8("kernel", HqxTestData.sample(5000, 6), new byte[0]));
+        byte[] hqx7 = HqxTestData.hqx7(hqx8, "\n").getBytes(StandardCharsets.US_ASCII);
+        for (int i = 0; i < 2000; i++) {
+            int start = random.nextInt(hqx7.length);
+            int end = start + random.nextInt(Math.min(200, hqx7.length - start + 1));
+            int room = random.nextInt(100);
+            boolean stopAtRLE = random.nextBoolean();
+            ByteBuffer in1 = ByteBuffer.wrap(hqx7, 0, end);
+            in1.position(start);
+            ByteBuffer in2 = in1.duplicate();
+            byte[] out1 = new byte[110];
+            byte[] out2 = new byte[110];
+            int pos1 = Hqx7Kernel.decode(in1, out1, 5, 5 + room, stopAtRLE);
+            int pos2 = (Integer) java9.invoke(null, in2, out2, 5, 5 + room, stopAtRLE);
+            // the SWAR loop may stop a little earlier, never later
+            assertTrue(pos2 <= pos1 && in2.position() <= in1.position());
+            assertEquals((pos2 - 5) / 3 * 4, in2.position() - start);
+            assertArrayEquals(Arrays.copyOf(out1, pos2), Arrays.copyOf(out2, pos2));
+            for (int j = pos2; j < out2.length; j++)
+                assertEquals(0, out2[j]);
+            // decoding on from where it stopped gives the same result
+            int rest = Hqx7Kernel.decode(in2, out2, pos2, 5 + room, stopAtRLE);
+            assertEquals(pos1, rest);
+            assertArrayEquals(out1, out2);
+        }
+    }
+
+    @Test
+    void testPreamble() throws IOException {
+        byte[] hqx8 = HqxTestData.rle(HqxTestData.hqx8("mail", HqxTestData.sample(2000, 5), new byte[0]));
+        byte[] hqx7 = (HqxTestData.preamble(5000) + HqxTestData.hqx7(hqx8, "\n")).getBytes(StandardCharsets.US_ASCII);
+        InputStream in = new Hqx7_to_Hqx8InputStream(new ByteArrayInputStream(hqx7));
+        byte[] decoded = new byte[hqx8.length];
+        int n = 0, r;
+        while (n < decoded.length && (r = in.read(decoded, n, decoded.length - n)) != -1)
+            n += r;
+        assertArrayEquals(hqx8, decoded);
+
+        DecoderOptions options = new DecoderOptions();
+        options.setMaxHeaderScan(10000);
+        InputStream in2 = new Hqx7_to_Hqx8InputStream(new ByteArrayInputStream(hqx7), options);
+        IOException e = assertThrows(EOFException.class, in2::read);
+        assertEquals("Couldn't find start of Hqx7 part in the first 10000 bytes", e.getMessage());
+    }
+
+    @Test
+    void testIllegalCharacter() throws IOException {
+        byte[] hqx7 = "(This file must be converted with BinHex 4.0)\n:!!!!!!!!/!!!:\n".getBytes(StandardCharsets.US_ASCII);
+        InputStream in = new Hqx7_to_Hqx8InputStream(new ByteArrayInputStream(hqx7));
+        IOException e = assertThrows(IOException.class, () -> in.read(new byte[100]));
+        assertTrue(e.getMessage().startsWith("Illegal character in Hqx7 stream"));
+    }
+
     public static void main(String[] args) {
         try (InputStream in = new Hqx7_to_Hqx8InputStream(System.in)) {
             byte[] buf = new byte[1024];
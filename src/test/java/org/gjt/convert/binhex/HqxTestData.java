@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package org.gjt.convert.binhex;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+
+/**
+ * HqxTestData. Builds BinHex4 test input independently of the classes under test.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (umjammer)
+ * @version 0.00 2026/10/16 umjammer initial version <br>
+ */
+final class HqxTestData {
+
+    private HqxTestData() {
+    }
+
+    /** CRC exactly as in Peter Lewis' article, the augmented form */
+    static int referenceCRC(byte[] b, int off, int len) {
+        int crc = 0;
+        for (int i = off; i < off + len + 2; i++) {
+            int v = i < off + len ? b[i] & 0xff : 0;
+            for (int j = 0; j < 8; j++) {
+                boolean temp = (crc & 0x8000) != 0;
+                crc = (crc << 1) | (v >> 7);
+                if (temp)
+                    crc ^= 0x1021;
+                v = (v << 1) & 0xff;
+            }
+        }
+        return crc & 0xffff;
+    }
+
+    /** header + data fork + resource fork, each followed by its CRC, not RLE encoded */
+    static byte[] hqx8(String name, byte[] data, byte[] resource) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        byte[] n = name.getBytes(StandardCharsets.US_ASCII);
+        header.write(n.length);
+        header.write(n, 0, n.length);
+        header.write(0);
+        header.write("TEXT".getBytes(StandardCharsets.US_ASCII), 0, 4);
+        header.write("ttxt".getBytes(StandardCharsets.US_ASCII), 0, 4);
+        header.write(0x01);
+        header.write(0x00);
+        write32(header, data.length);
+        write32(header, resource.length);
+        section(out, header.toByteArray());
+        section(out, data);
+        section(out, resource);
+        return out.toByteArray();
+    }
+
+    private static void section(ByteArrayOutputStream out, byte[] b) {
+        out.write(b, 0, b.length);
+        int crc = referenceCRC(b, 0, b.length);
+        out.write(crc >> 8);
+        out.write(crc & 0xff);
+    }
+
+    private static void write32(ByteArrayOutputStream out, int v) {
+        out.write(v >>> 24);
+        out.write((v >>> 16) & 0xff);
+        out.write((v >>> 8) & 0xff);
+        out.write(v & 0xff);
+    }
+
+    /** RLE with runs of 3 and more, 0x90 escaped as 0x90 0x00 */
+    static byte[] rle(byte[] b) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int i = 0;
+        while (i < b.length) {
+            int v = b[i] & 0xff;
+            int run = 1;
+            while (i + run < b.length && (b[i + run] & 0xff) == v && run < 255)
+                run++;
+            out.write(v);
+            if (v == 0x90)
+                out.write(0);
+            if (run >= 3) {
+                out.write(0x90);
+                out.write(run);
+            } else if (run == 2) {
+                out.write(v);
+                if (v == 0x90)
+                    out.write(0);
+            }
+            i += run;
+        }
+        return out.toByteArray();
+    }
+
+    /** 6-bit packing, 64 characters per line, including the id line and the : delimiters */
+    static String hqx7(byte[] hqx8, String lineSeparator) {
+        String validChars = Hqx7_to_Hqx8InputStream.validChars;
+        StringBuilder sb = new StringBuilder();
+        sb.append("(This file must be converted with BinHex 4.0)").append(lineSeparator);
+        sb.append(':');
+        int column = 1;
+        int bits = 0, nbits = 0;
+        for (int i = 0; i <= hqx8.length; i++) {
+            if (i < hqx8.length) {
+                bits = (bits << 8) | (hqx8[i] & 0xff);
+                nbits += 8;
+            } else if (nbits > 0) {
+                bits <<= 6 - nbits;
+                nbits = 6;
+            }
+            while (nbits >= 6) {
+                nbits -= 6;
+                sb.append(validChars.charAt((bits >>> nbits) & 0x3f));
+                if (++column == 64) {
+                    sb.append(lineSeparator);
+                    column = 0;
+                }
+            }
+        }
+        sb.append(':').append(lineSeparator);
+        return sb.toString();
+    }
+
+    static byte[] encode(String name, byte[] data, byte[] resource) {
+        return hqx7(rle(hqx8(name, data, resource)), "\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /** mail-like text before the id line, with ( in all the wrong places */
+    static String preamble(int lines) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            switch (i % 5) {
+            case 0: sb.append("Some text (with parentheses) before the attachment\n"); break;
+            case 1: sb.append("\r\n"); break;
+            case 2: sb.append("> (This file must be converted with BinHex 4.0)\n"); break;
+            case 3: sb.append("(This file must be converted\r\n"); break;
+            default: sb.append("(\n"); break;
+            }
+        }
+        return sb.toString();
+    }
+
+    /** mixes incompressible stretches, long runs and literal 0x90 bytes */
+    static byte[] sample(int length, long seed) {
+        Random random = new Random(seed);
+        byte[] b = new byte[length];
+        int i = 0;
+        while (i < length) {
+            int n = Math.min(length - i, 1 + random.nextInt(600));
+            switch (random.nextInt(4)) {
+            case 0:
+                for (int j = 0; j < n; j++)
+                    b[i + j] = (byte) random.nextInt(256);
+                break;
+            case 1:
+                byte v = (byte) random.nextInt(256);
+                for (int j = 0; j < n; j++)
+                    b[i + j] = v;
+                break;
+            case 2:
+                for (int j = 0; j < n; j++)
+                    b[i + j] = (byte) (random.nextBoolean() ? 0x90 : random.nextInt(256));
+                break;
+            default:
+                for (int j = 0; j < n; j++)
+                    b[i + j] = 0;
+                break;
+            }
+            i += n;
+        }
+        return b;
+    }
+}
+
+/* */
@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package org.gjt.convert.binhex;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * ParallelDecoderTest.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (umjammer)
+ * @version 0.00 2026/10/16 umjammer initial version <br>
+ */
+class ParallelDecoderTest {
+
+    static final byte[] data = HqxTestData.sample(200000, 70);
+    static final byte[] resource = HqxTestData.sample(30000, 71);
+
+    static class Collector implements BinHexHandler {
+        String name;
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        ByteArrayOutputStream resource = new ByteArrayOutputStream();
+        CRCStatus status;
+        public void header(BinHex4InputStream.Header header) { name = header.getFileName(); }
+        public void dataFork(ByteBuffer chunk) { data.write(chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining()); }
+        public void resourceFork(ByteBuffer chunk) { resource.write(chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining()); }
+        public void end(CRCStatus crcStatus) { status = crcStatus; }
+    }
+
+    static Path file(byte[] hqx7) throws IOException {
+        Path file = Files.createTempFile("parallel", ".hqx");
+        file.toFile().deleteOnExit();
+        Files.write(file, hqx7);
+        return file;
+    }
+
+    static Collector decode(Path file, int chunkSize, ForkJoinPool pool) throws IOException {
+        DecoderOptions options = new DecoderOptions();
+        options.setOutputBufferSize(1000);
+        try (ParallelDecoder decoder = new ParallelDecoder(FileChannel.open(file), options)) {
+            decoder.setChunkSize(chunkSize);
+            if (pool != null)
+                decoder.setPool(pool);
+            Collector collector = new Collector();
+            decoder.decode(collector);
+            return collector;
+        }
+    }
+
+    @Test
+    void testForks() throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            for (String lineSeparator : new String[] { "\n", "\r\n" }) {
+                byte[] hqx7 = ("garbage before\n" + HqxTestData.hqx7(HqxTestData.rle(HqxTestData.hqx8("parallel", data, resource)), lineSeparator) + "after")
+                        .getBytes(StandardCharsets.US_ASCII);
+                Path file = file(hqx7);
+                for (int chunkSize : new int[] { 997, 4096, ParallelDecoder.defaultChunkSize }) {
+                    Collector c = decode(file, chunkSize, chunkSize == 997 ? null : pool);
+                    assertEquals("parallel", c.name);
+                    assertArrayEquals(data, c.data.toByteArray(), "chunk size " + chunkSize);
+                    assertArrayEquals(resource, c.resource.toByteArray(), "chunk size " + chunkSize);
+                    assertTrue(c.status.isValid());
+                    assertEquals(HqxTestData.referenceCRC(data, 0, data.length), c.status.getDataForkCRC());
+                    assertEquals(HqxTestData.referenceCRC(resource, 0, resource.length), c.status.getResourceForkCRC());
+                }
+            }
+
+            // chunks with less than a group of characters, and line breaks only
+            byte[] small = HqxTestData.sample(700, 72);
+            Path file = file(HqxTestData.hqx7(HqxTestData.rle(HqxTestData.hqx8("small", small, small)), "\r\n").getBytes(StandardCharsets.US_ASCII));
+            for (int chunkSize = 1; chunkSize < 10; chunkSize++) {
+                Collector c = decode(file, chunkSize, pool);
+                assertArrayEquals(small, c.data.toByteArray(), "chunk size " + chunkSize);
+                assertArrayEquals(small, c.resource.toByteArray(), "chunk size " + chunkSize);
+            }
+
+            Collector c = decode(file(HqxTestData.encode("empty", new byte[0], new byte[0])), 10, pool);
+            assertEquals("empty", c.name);
+            assertEquals(0, c.data.size() + c.resource.size());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testErrors() throws IOException {
+        byte[] hqx7 = HqxTestData.encode("crc", data, resource);
+        int i = hqx7.length / 3;
+        while (hqx7[i] == '\n' || hqx7[i] == '!')
+            i++;
+        byte[] corrupted = hqx7.clone();
+        corrupted[i] = '!';
+        IOException e = assertThrows(IOException.class, () -> decode(file(corrupted), 1000, null));
+        assertTrue(e.getMessage().startsWith("Incorrect CRC"), e.getMessage());
+
+        byte[] illegal = hqx7.clone();
+        illegal[i] = '{';
+        e = assertThrows(IOException.class, () -> decode(file(illegal), 1000, null));
+        assertEquals("Illegal character in Hqx7 stream encountered, possible data corruption. ('{')", e.getMessage());
+
+        byte[] truncated = Arrays.copyOf(hqx7, hqx7.length / 2);
+        e = assertThrows(EOFException.class, () -> decode(file(truncated), 1000, null));
+        assertEquals("EOF reached before closing : character. Possible data corruption.", e.getMessage());
+
+        byte[] closed = truncated.clone();
+        closed[closed.length - 1] = ':';
+        e = assertThrows(EOFException.class, () -> decode(file(closed), 1000, null));
+        assertEquals("Physical end-of-file before end of fork", e.getMessage());
+
+        e = assertThrows(EOFException.class, () -> decode(file("no binhex here\n".getBytes()), 1000, null));
+        assertEquals("Couldn't find start of Hqx7 part", e.getMessage());
+    }
+}
+
+/* */
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package org.gjt.convert.binhex;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import org.gjt.convert.binhex.BinHex4InputStream.Header;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * ParallelEncoderTest.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (umjammer)
+ * @version 0.00 2026/10/16 umjammer initial version <br>
+ */
+class ParallelEncoderTest {
+
+    static Path file(byte[] b) throws IOException {
+        Path file = Files.createTempFile("fork", ".bin");
+        file.toFile().deleteOnExit();
+        Files.write(file, b);
+        return file;
+    }
+
+    static byte[] sequential(Header header, byte[] data, byte[] resource, String lineSeparator, boolean eightBit) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (BinHex4OutputStream out = eightBit ? new BinHex4OutputStream(bytes, header, true)
+                : new BinHex4OutputStream(bytes, header, lineSeparator)) {
+            out.write(data);
+            out.useResourceFork();
+            out.write(resource);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Test
+    void testSameAsSequential() throws IOException {
+        byte[] runs = new byte[20000];
+        Arrays.fill(runs, 3000, 9000, (byte) 0x90);
+        Arrays.fill(runs, 9000, 15000, (byte) 1);
+        byte[][][] cases = {
+            { HqxTestData.sample(100000, 120), HqxTestData.sample(30000, 121) },
+            { runs, runs },
+            { new byte[0], HqxTestData.sample(5000, 122) },
+            { new byte[0], new byte[0] },
+        };
+        ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            for (byte[][] forks : cases) {
+                Header header = new Header("parallel", "TEXT", "ttxt", 0, forks[0].length, forks[1].length);
+                try (FileChannel data = FileChannel.open(file(forks[0]));
+                     FileChannel resource = FileChannel.open(file(forks[1]))) {
+                    for (int chunkSize : new int[] { 1, 2, 3, 100, 255, 256, 4099, ParallelEncoder.defaultChunkSize }) {
+                        if (chunkSize < 100 && forks[0].length > 50000)
+                            continue;
+                        for (int mode = 0; mode < 3; mode++) {
+                            String lineSeparator = mode == 1 ? "\r\n" : "\n";
+                            ParallelEncoder encoder = new ParallelEncoder(header, data, resource);
+                            encoder.setChunkSize(chunkSize);
+                            encoder.setPool(pool);
+                            encoder.setLineSeparator(lineSeparator);
+                            encoder.setEightBit(mode == 2);
+                            ByteArrayOutputStream out = new ByteArrayOutputStream();
+                            encoder.encode(out);
+                            assertArrayEquals(sequential(header, forks[0], forks[1], lineSeparator, mode == 2), out.toByteArray(),
+                                    "chunk size " + chunkSize + ", mode " + mode);
+                        }
+                    }
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testShortFork() throws IOException {
+        Header header = new Header("short", "TEXT", "ttxt", 0, 1000, 0);
+        try (FileChannel data = FileChannel.open(file(new byte[999]))) {
+            ParallelEncoder encoder = new ParallelEncoder(header, data, null);
+            IOException e = assertThrows(IOException.class, () -> encoder.encode(new ByteArrayOutputStream()));
+            assertEquals("Fork is shorter than its length in the header", e.getMessage());
+        }
+        assertThrows(IllegalArgumentException.class, () -> new ParallelEncoder(header, null, null));
+    }
+}
+
+/* */
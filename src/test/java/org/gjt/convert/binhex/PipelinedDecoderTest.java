@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package org.gjt.convert.binhex;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.gjt.convert.binhex.BinHex4InputStreamTest.readFully;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * PipelinedDecoderTest.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (umjammer)
+ * @version 0.00 2026/10/16 umjammer initial version <br>
+ */
+class PipelinedDecoderTest {
+
+    static final byte[] data = HqxTestData.sample(300000, 60);
+    static final byte[] resource = HqxTestData.sample(40000, 61);
+
+    static BinHex4InputStream open(byte[] hqx7) {
+        DecoderOptions options = new DecoderOptions();
+        options.setPipelined(true);
+        options.setInputBufferSize(4096);
+        options.setOutputBufferSize(3000);
+        return new BinHex4InputStream(new ByteArrayInputStream(hqx7), false, options);
+    }
+
+    @Test
+    void testForks() throws IOException {
+        byte[] hqx7 = HqxTestData.encode("pipe", data, resource);
+        try (BinHex4InputStream in = open(hqx7)) {
+            assertEquals("pipe", in.getHeader().getFileName());
+            assertArrayEquals(data, readFully(in, 1234));
+            in.useResourceFork();
+            assertArrayEquals(resource, readFully(in, 5000));
+        }
+
+        // skipping the data fork, skip() and single bytes
+        try (BinHex4InputStream in = open(hqx7)) {
+            in.useResourceFork();
+            assertArrayEquals(resource, readFully(in, 777));
+        }
+        try (BinHex4InputStream in = open(hqx7)) {
+            assertEquals(data[0] & 0xff, in.read());
+            assertEquals(100000, in.skip(100000));
+            assertEquals(data[100001] & 0xff, in.read());
+            assertEquals(data.length - 100002, in.skip(Long.MAX_VALUE));
+            assertEquals(-1, in.read());
+            assertThrows(EOFException.class, in::read);
+        }
+
+        // push API and reset
+        try (BinHex4InputStream in = open(HqxTestData.encode("empty", new byte[0], new byte[0]))) {
+            assertEquals(-1, in.read());
+            in.reset(new ByteArrayInputStream(hqx7));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            CRCStatus[] status = new CRCStatus[1];
+            in.decode(new BinHexHandler() {
+                public void header(BinHex4InputStream.Header header) { }
+                public void dataFork(ByteBuffer chunk) { }
+                public void resourceFork(ByteBuffer chunk) {
+                    out.write(chunk.array(), chunk.arrayOffset() + chunk.position(), chunk.remaining());
+                }
+                public void end(CRCStatus crcStatus) { status[0] = crcStatus; }
+            });
+            assertArrayEquals(resource, out.toByteArray());
+            assertEquals(HqxTestData.referenceCRC(data, 0, data.length), status[0].getDataForkCRC());
+            assertTrue(status[0].isValid());
+        }
+    }
+
+    @Test
+    void testResetMidStream() throws IOException {
+        byte[] hqx7 = HqxTestData.encode("pipe", data, resource);
+        byte[] other = HqxTestData.encode("other", resource, new byte[0]);
+        try (BinHex4InputStream in = open(hqx7)) {
+            for (int i = 0; i < 20; i++) {
+                // the old threads are still busy with the first file
+                assertEquals(data[0] & 0xff, in.read());
+                in.reset(new ByteArrayInputStream(other));
+                assertEquals("other", in.getHeader().getFileName());
+                assertArrayEquals(resource, readFully(in, 4096));
+                in.reset(new ByteArrayInputStream(hqx7));
+            }
+        }
+    }
+
+    /** a source like a pipe or a socket: the first read waits until it is let go */
+    static class WaitingInputStream extends InputStream {
+        final CountDownLatch go = new CountDownLatch(1);
+        final CountDownLatch closed = new CountDownLatch(1);
+        volatile int reads;
+        volatile boolean readWhileClosed;
+
+        public int read() throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            reads++;
+            try {
+                go.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            readWhileClosed = closed.getCount() == 0;
+            return -1;
+        }
+
+        public void close() {
+            closed.countDown();
+        }
+    }
+
+    @Test
+    void testWaitingSource() throws Exception {
+        byte[] hqx7 = HqxTestData.encode("pipe", data, resource);
+
+        // reset doesn't wait for the old source, and doesn't close it
+        WaitingInputStream waiting = new WaitingInputStream();
+        DecoderOptions options = new DecoderOptions();
+        options.setPipelined(true);
+        try (BinHex4InputStream in = new BinHex4InputStream(waiting, false, options)) {
+            assertTimeoutPreemptively(Duration.ofSeconds(10), () -> in.reset(new ByteArrayInputStream(hqx7)));
+            assertArrayEquals(data, readFully(in, 4096));
+            waiting.go.countDown();
+            assertFalse(waiting.closed.await(200, TimeUnit.MILLISECONDS));
+            assertEquals(1, waiting.reads);
+        }
+
+        // close doesn't close it under the reader's feet, but right after
+        WaitingInputStream waiting2 = new WaitingInputStream();
+        BinHex4InputStream in2 = new BinHex4InputStream(waiting2, false, options);
+        while (waiting2.reads == 0)
+            Thread.sleep(1);
+        assertTimeoutPreemptively(Duration.ofSeconds(10), in2::close);
+        assertEquals(1, waiting2.closed.getCount());
+        waiting2.go.countDown();
+        assertTrue(waiting2.closed.await(10, TimeUnit.SECONDS));
+        assertFalse(waiting2.readWhileClosed);
+        assertEquals(1, waiting2.reads);
+    }
+
+    @Test
+    void testErrors() throws IOException {
+        byte[] hqx7 = HqxTestData.encode("crc", data, resource);
+        int i = hqx7.length / 3;
+        while (hqx7[i] == '\n' || hqx7[i] == '!')
+            i++;
+        hqx7[i] = '!';
+        BinHex4InputStream in = open(hqx7);
+        IOException e = assertThrows(IOException.class, () -> readFully(in, 1024));
+        assertTrue(e.getMessage().startsWith("Incorrect CRC"), e.getMessage());
+
+        BinHex4InputStream in2 = open("no binhex here\n".getBytes());
+        e = assertThrows(EOFException.class, in2::getHeader);
+        assertEquals("Couldn't find start of Hqx7 part", e.getMessage());
+
+        // an exception from the source itself
+        DecoderOptions options = new DecoderOptions();
+        options.setPipelined(true);
+        InputStream failing = new InputStream() {
+            public int read() throws IOException { throw new IOException("disk on fire"); }
+        };
+        BinHex4InputStream in3 = new BinHex4InputStream(failing, false, options);
+        e = assertThrows(IOException.class, in3::getHeader);
+        assertEquals("disk on fire", e.getMessage());
+    }
+}
+
+/* */
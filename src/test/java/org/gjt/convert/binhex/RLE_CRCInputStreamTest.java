@@ -6,8 +6,12 @@
 
 package org.gjt.convert.binhex;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
 
 import org.junit.jupiter.api.Test;
 
@@ -27,6 +31,64 @@ class RLE_CRCInputStreamTest {
         fail("Not yet implemented");
     }
 
+    @Test
+    void testCRC16Engines() {
+        Random random = new Random(1);
+        for (int len : new int[] { 0, 1, 7, 8, 9, 63, 1000 }) {
+            byte[] b = new byte[len + 3];
+            random.nextBytes(b);
+            int expected = HqxTestData.referenceCRC(b, 3, len);
+            assertEquals(expected, CRC16.bitwise.update(0, b, 3, len));
+            assertEquals(expected, CRC16.table.update(0, b, 3, len));
+            assertEquals(expected, CRC16.slicingBy8.update(0, b, 3, len));
+        }
+    }
+
+    @Test
+    void testCRC16Repeat() {
+        Random random = new Random(3);
+        for (int n : new int[] { 0, 1, 2, 3, 254, 255, 1000, 65537 }) {
+            int crc = random.nextInt(0x10000);
+            int b = random.nextInt(256);
+            byte[] run = new byte[n];
+            Arrays.fill(run, (byte) b);
+            assertEquals(CRC16.table.update(crc, run, 0, n), CRC16.repeat(crc, b, n));
+            assertEquals(CRC16.table.update(crc, new byte[n], 0, n), CRC16.zeros(crc, n));
+            byte[] sample = HqxTestData.sample(n, n);
+            int split = n / 3;
+            assertEquals(CRC16.table.update(crc, sample, 0, n),
+                    CRC16.combine(CRC16.table.update(crc, sample, 0, split), CRC16.table.update(0, sample, split, n - split), n - split));
+        }
+    }
+
+    @Test
+    void testDecodeAndCRC() throws IOException {
+        byte[] data = HqxTestData.sample(5000, 2);
+        byte[] hqx8 = HqxTestData.hqx8("x", data, new byte[0]);
+        for (CRC16 crc16 : new CRC16[] { CRC16.bitwise, CRC16.table, CRC16.slicingBy8 }) {
+            RLE_CRCInputStream in = new RLE_CRCInputStream(new ByteArrayInputStream(HqxTestData.rle(hqx8)), true);
+            in.setCRC16(crc16);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] header = new byte[21];
+            assertEquals(21, in.read(header));
+            assertEquals(HqxTestData.referenceCRC(header, 0, 21), in.getCRC());
+            in.read();
+            in.read();
+            in.resetCRC();
+            byte[] buf = new byte[777];
+            int left = data.length;
+            while (left > 0) {
+                int r = in.read(buf, 0, Math.min(left, buf.length));
+                out.write(buf, 0, r);
+                left -= r;
+            }
+            assertArrayEquals(data, out.toByteArray());
+            int crc = in.getCRC();
+            assertEquals(HqxTestData.referenceCRC(data, 0, data.length), crc);
+            assertEquals(crc, (in.read() << 8) | in.read());
+        }
+    }
+
     public static void main(String[] args) {
         try (InputStream in = new RLE_CRCInputStream(System.in)) {
             byte[] buf = new byte[1024];
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package org.gjt.convert.binhex;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.gjt.convert.binhex.BinHex4InputStreamTest.readFully;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * SeekIndexTest.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (umjammer)
+ * @version 0.00 2026/10/16 umjammer initial version <br>
+ */
+class SeekIndexTest {
+
+    static final byte[] data = HqxTestData.sample(200000, 40);
+    static final byte[] resource = HqxTestData.sample(30000, 41);
+
+    @Test
+    void testBuildSaveSeek() throws IOException {
+        Path file = Files.createTempFile("seek", ".hqx");
+        file.toFile().deleteOnExit();
+        Files.write(file, HqxTestData.encode("seek", data, resource));
+
+        SeekIndex index = new SeekIndex(4096);
+        try (BinHex4InputStream in = new BinHex4InputStream(file)) {
+            in.setSeekIndex(index);
+            assertArrayEquals(data, readFully(in, 5000));
+            in.useResourceFork();
+            assertArrayEquals(resource, readFully(in, 5000));
+        }
+        assertEquals((data.length + 4095) / 4096 + (resource.length + 4095) / 4096, index.size());
+
+        Path sidecar = Files.createTempFile("seek", ".idx");
+        sidecar.toFile().deleteOnExit();
+        index.save(sidecar);
+        SeekIndex loaded = SeekIndex.load(sidecar);
+        assertEquals(index.size(), loaded.size());
+
+        Random random = new Random(42);
+        try (BinHex4File binhex = new BinHex4File(file)) {
+            binhex.setSeekIndex(loaded);
+            BinHex4InputStream in = binhex.openDataFork();
+            for (int i = 0; i < 50; i++) {
+                int position = random.nextInt(data.length);
+                in.seek(position);
+                byte[] b = new byte[Math.min(100, data.length - position)];
+                assertEquals(b.length, in.read(b));
+                assertArrayEquals(Arrays.copyOfRange(data, position, position + b.length), b);
+            }
+            // reading to the end after a seek still checks the CRC
+            in.seek(data.length - 10000);
+            assertArrayEquals(Arrays.copyOfRange(data, data.length - 10000, data.length), readFully(in, 999));
+
+            BinHex4InputStream rin = binhex.openResourceFork();
+            rin.seek(12345);
+            assertArrayEquals(Arrays.copyOfRange(resource, 12345, resource.length), readFully(rin, 999));
+            rin.seek(resource.length);
+            assertEquals(-1, rin.read());
+        }
+    }
+
+    @Test
+    void testStreamSeek() throws IOException {
+        BinHex4InputStream in = new BinHex4InputStream(new ByteArrayInputStream(HqxTestData.encode("seek", data, resource)));
+        in.seek(1000);
+        assertEquals(data[1000] & 0xff, in.read());
+        IOException e = assertThrows(IOException.class, () -> in.seek(10));
+        assertEquals("Sorry, no random access. Cannot seek backwards.", e.getMessage());
+        assertThrows(IOException.class, () -> in.seek(data.length + 1));
+    }
+}
+
+/* */
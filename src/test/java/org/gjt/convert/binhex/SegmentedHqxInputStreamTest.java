@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package org.gjt.convert.binhex;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.gjt.convert.binhex.BinHex4InputStreamTest.readFully;
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * SegmentedHqxInputStreamTest.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (umjammer)
+ * @version 0.00 2026/10/16 umjammer initial version <br>
+ */
+class SegmentedHqxInputStreamTest {
+
+    static final byte[] data = HqxTestData.sample(50000, 100);
+    static final byte[] resource = HqxTestData.sample(7000, 101);
+
+    /** splits the lines of an encoded file over parts, like a news posting */
+    static List<String> split(int count) {
+        String[] lines = new String(HqxTestData.encode("parts", data, resource), StandardCharsets.US_ASCII).split("\n");
+        List<String> parts = new ArrayList<>();
+        int perPart = (lines.length + count - 1) / count;
+        for (int i = 0; i < count; i++) {
+            StringBuilder sb = new StringBuilder();
+            if (i > 0)
+                sb.append("Subject: parts.hqx (").append(i + 1).append('/').append(count).append(")\r\n\r\n---\r\n");
+            for (int j = i * perPart; j < Math.min(lines.length, (i + 1) * perPart); j++)
+                sb.append(lines[j]).append("\r\n");
+            if (i < count - 1)
+                sb.append("--- end of part ").append(i + 1).append(" ---\r\n\r\n-- \r\nsignature\r\n");
+            parts.add(sb.toString());
+        }
+        return parts;
+    }
+
+    static List<InputStream> streams(List<String> parts) {
+        List<InputStream> streams = new ArrayList<>();
+        for (String part : parts)
+            streams.add(new ByteArrayInputStream(part.getBytes(StandardCharsets.US_ASCII)));
+        return streams;
+    }
+
+    static void check(InputStream joined) throws IOException {
+        try (BinHex4InputStream in = new BinHex4InputStream(joined)) {
+            assertEquals("parts", in.getHeader().getFileName());
+            assertArrayEquals(data, readFully(in, 1000));
+            in.useResourceFork();
+            assertArrayEquals(resource, readFully(in, 1000));
+        }
+    }
+
+    @Test
+    void testJoin() throws IOException {
+        List<String> parts = split(7);
+        check(new SegmentedHqxInputStream(new ByteArrayInputStream(String.join("", parts).getBytes(StandardCharsets.US_ASCII))));
+        check(new SegmentedHqxInputStream(streams(parts)));
+
+        List<Path> files = new ArrayList<>();
+        for (String part : parts) {
+            Path file = Files.createTempFile("part", ".hqx");
+            file.toFile().deleteOnExit();
+            Files.write(file, part.getBytes(StandardCharsets.US_ASCII));
+            files.add(file);
+        }
+        check(SegmentedHqxInputStream.open(files));
+
+        // not segmented at all
+        check(new SegmentedHqxInputStream(new ByteArrayInputStream(HqxTestData.encode("parts", data, resource))));
+
+        // a missing part is found before anything is read
+        List<Path> missing = new ArrayList<>(files);
+        missing.remove(2);
+        IOException e = assertThrows(IOException.class, () -> SegmentedHqxInputStream.open(missing));
+        assertEquals("Part 3 is missing, found the end of part 4 instead", e.getMessage());
+        List<Path> swapped = new ArrayList<>(files);
+        swapped.set(1, files.get(2));
+        swapped.set(2, files.get(1));
+        e = assertThrows(IOException.class, () -> SegmentedHqxInputStream.open(swapped));
+        assertEquals("Part 2 is missing, found the end of part 3 instead", e.getMessage());
+        List<Path> noEnd = new ArrayList<>(files);
+        noEnd.add(1, files.get(files.size() - 1));
+        e = assertThrows(IOException.class, () -> SegmentedHqxInputStream.open(noEnd));
+        assertTrue(e.getMessage().startsWith("Part 2 ("), e.getMessage());
+    }
+
+    @Test
+    void testLongFooter() throws IOException {
+        List<String> parts = split(3);
+        StringBuilder footer = new StringBuilder();
+        for (int i = 0; i < 2000; i++)
+            footer.append("Quoted text of the previous post, line ").append(i).append("\r\n");
+        List<Path> files = new ArrayList<>();
+        try {
+            for (String part : parts) {
+                Path file = Files.createTempFile("part", ".hqx");
+                files.add(file);
+                Files.write(file, (part + footer).getBytes(StandardCharsets.US_ASCII));
+            }
+            check(SegmentedHqxInputStream.open(files));
+
+            // an end line split over the chunks that the file is read in, from its end
+            List<Path> two = files.subList(0, 2);
+            String endLine = "--- END OF PART 1 ---";
+            for (int k = 1; k < endLine.length(); k++) {
+                String after = "\r\n" + new String(new char[HqxDecoder.sz_streamBuf - k - 2]).replace('\0', 'y');
+                Files.write(files.get(0), ("data\r\n" + endLine + after).getBytes(StandardCharsets.US_ASCII));
+                SegmentedHqxInputStream.open(two).close();
+            }
+            Files.write(files.get(0), footer.toString().getBytes(StandardCharsets.US_ASCII));
+            IOException e = assertThrows(IOException.class, () -> SegmentedHqxInputStream.open(two));
+            assertTrue(e.getMessage().startsWith("Part 1 ("), e.getMessage());
+        } finally {
+            for (Path file : files)
+                Files.delete(file);
+        }
+    }
+
+    @Test
+    void testStreamErrors() throws IOException {
+        List<String> parts = split(4);
+        List<String> swapped = new ArrayList<>(parts);
+        swapped.set(1, parts.get(2));
+        swapped.set(2, parts.get(1));
+        SegmentedHqxInputStream in = new SegmentedHqxInputStream(streams(swapped));
+        IOException e = assertThrows(IOException.class, () -> readFully(in, 1000));
+        assertEquals("Part 2 is missing, found the end of part 3 instead", e.getMessage());
+        assertEquals(2, in.getPart());
+
+        List<String> duplicate = new ArrayList<>(parts.subList(0, 2));
+        duplicate.add(parts.get(0).substring(parts.get(0).indexOf(':')));
+        SegmentedHqxInputStream in2 = new SegmentedHqxInputStream(new ByteArrayInputStream(String.join("---\n", duplicate).getBytes(StandardCharsets.US_ASCII)));
+        e = assertThrows(IOException.class, () -> readFully(in2, 1000));
+        assertEquals("Part 1 is out of order, expected the end of part 3", e.getMessage());
+
+        // data that can be read before the error is the data of the parts before it
+        byte[] joined = readFully(new SegmentedHqxInputStream(streams(parts.subList(0, 2))), 1000);
+        String expected = parts.get(0).substring(0, parts.get(0).indexOf("--- end"))
+                + parts.get(1).substring(parts.get(1).indexOf("---\r\n") + 5, parts.get(1).indexOf("--- end"));
+        assertArrayEquals(expected.getBytes(StandardCharsets.US_ASCII), joined);
+    }
+}
+
+/* */
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2026 by Naohide Sano, All rights reserved.
+ *
+ * Programmed by Naohide Sano
+ */
+
+package org.gjt.convert.binhex;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+/**
+ * XXHash64Test.
+ *
+ * @author <a href="mailto:umjammer@gmail.com">Naohide Sano</a> (umjammer)
+ * @version 0.00 2026/10/16 umjammer initial version <br>
+ */
+class XXHash64Test {
+
+    static long hash(byte[] digest) {
+        long h = 0;
+        for (byte b : digest)
+            h = (h << 8) | (b & 0xff);
+        return h;
+    }
+
+    static byte[] counting(int length) {
+        byte[] b = new byte[length];
+        for (int i = 0; i < length; i++)
+            b[i] = (byte) (i * 31 + 7);
+        return b;
+    }
+
+    @Test
+    void testVectors() {
+        XXHash64 xxh = new XXHash64();
+        assertEquals(8, xxh.getDigestLength());
+        assertEquals(0xef46db3751d8e999L, hash(xxh.digest()));
+        assertEquals(0x44bc2cf5ad770999L, hash(xxh.digest("abc".getBytes(StandardCharsets.US_ASCII))));
+        assertEquals(0x5d71d9fc4b676d9fL, hash(xxh.digest(counting(37))));
+        assertEquals(0x99594f4828043d35L, hash(xxh.digest(counting(1000))));
+    }
+
+    @Test
+    void testPieces() {
+        byte[] b = counting(1000);
+        Random random = new Random(5);
+        XXHash64 xxh = new XXHash64();
+        for (int trial = 0; trial < 20; trial++) {
+            int i = 0;
+            while (i < b.length) {
+                if (random.nextBoolean()) {
+                    xxh.update(b[i++]);
+                } else {
+                    int n = Math.min(b.length - i, random.nextInt(70));
+                    xxh.update(b, i, n);
+                    i += n;
+                }
+            }
+            assertEquals(0x99594f4828043d35L, hash(xxh.digest()));
+        }
+    }
+}
+
+/* */